@@ -0,0 +1,118 @@
+package com.zhao.easyJmeter.common.configuration;
+
+import com.zhao.easyJmeter.common.util.CSVUtil;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@ConfigurationProperties(prefix = "jmeter")
+public class JmeterProperties {
+
+    /**
+     * 合并jtl时是否按时间戳做多路归并，保证报告生成器读到的采样时间单调递增
+     */
+    private Boolean orderedMerge = false;
+
+    /**
+     * agent是否上传原始jtl，开启后服务端额外生成html报告，关闭时只上传结果摘要
+     */
+    private Boolean rawJtl = false;
+
+    /**
+     * 运行期间jtl分段上传的分段大小，单位MB
+     */
+    private Integer segmentSize = 64;
+
+    /**
+     * 运行期间检查jtl是否有新分段的间隔，单位秒
+     */
+    private Integer segmentInterval = 10;
+
+    /**
+     * agent本地文件缓存容量，单位MB，为0时不使用缓存
+     */
+    private Integer fileCacheSize = 20480;
+
+    /**
+     * agent下载任务文件的并发数
+     */
+    private Integer downloadThreads = 4;
+
+    /**
+     * csv切分方式：contiguous按字节连续均分，round-robin逐条轮流，hash按列值取哈希
+     */
+    private CSVUtil.SplitMode csvSplitMode = CSVUtil.SplitMode.CONTIGUOUS;
+
+    /**
+     * 切分的csv首行是否为表头，为true时每个分片都保留表头
+     */
+    private Boolean csvHeader = false;
+
+    /**
+     * hash切分时的分区列，从0开始
+     */
+    private Integer csvPartitionColumn = 0;
+
+    /**
+     * csv和jtl的引号字段中是否可能包含换行，为true时引号未闭合的行与后续行拼接为一条记录，默认按行切分
+     */
+    private Boolean multilineRecords = false;
+
+    /**
+     * 实时指标存储：influxdb或embedded，embedded时agent直接写到服务端内存，不需要influxdb
+     */
+    private String realtimeBackend = "influxdb";
+
+    /**
+     * embedded时agent写入实时指标的地址，取服务端的配置随配置命令下发给agent，需要agent能访问到服务端
+     */
+    private String realtimeWriteUrl = "http://127.0.0.1:5000/v1/metrics/write";
+
+    /**
+     * embedded时任务实时指标的保留时间，单位小时
+     */
+    private Integer realtimeRetention = 24;
+
+    /**
+     * embedded时每个任务最多保存的序列数(事务 x 成功/失败)，每个序列约占127KB，超出的新序列丢弃
+     */
+    private Integer realtimeMaxSeries = 500;
+
+    /**
+     * 处理agent环节事件的线程数，同一任务的事件串行处理，不同任务并行
+     */
+    private Integer taskDispatchThreads = 8;
+
+    /**
+     * 服务端同时处理的报告数，超出的任务排队等待
+     */
+    private Integer reportConcurrency = 2;
+
+    /**
+     * 运行中任务的日志、机器和用例状态写入数据库的间隔，单位毫秒
+     */
+    private Integer taskStateFlushInterval = 500;
+
+    /**
+     * 向web端房间推送事件的合并间隔，单位毫秒
+     */
+    private Integer webPushInterval = 200;
+
+    /**
+     * 压测运行进度向web端推送的最小间隔，单位毫秒，进度没有变化时不推送
+     */
+    private Integer progressPushInterval = 1000;
+
+    /**
+     * 压力机超过此时长没有心跳时标记为离线，单位毫秒
+     */
+    private Integer heartbeatTimeout = 180000;
+
+    /**
+     * 压力机上下线、版本变化批量写入数据库的间隔，单位毫秒
+     */
+    private Integer machineFlushInterval = 1000;
+
+}
@@ -0,0 +1,141 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * agent运行时身份：jmeter路径、版本和本机地址
+ * 获取版本需要启动一次jmeter进程，这里只在JMETER_HOME或jmeter安装变化时重新获取；本机地址按固定间隔重新检查网卡
+ */
+@Slf4j
+@Component
+public class AgentContext {
+
+    // 网卡地址重新检查间隔
+    private static final long ADDRESS_REFRESH_MILLIS = 60 * 1000;
+
+    private String path;
+
+    private String version = "";
+
+    // 获取版本时jmeter启动脚本的修改时间，用于判断jmeter是否被替换
+    private long versionStamp;
+
+    private volatile String address;
+
+    private volatile long addressCheckedAt;
+
+    public synchronized String getPath() {
+        String home = System.getenv("JMETER_HOME");
+        if (!Objects.equals(home, this.path)) {
+            this.path = home;
+            this.versionStamp = 0;
+        }
+        return this.path;
+    }
+
+    public synchronized String getVersion() {
+        String home = this.getPath();
+        if (home == null) {
+            return "";
+        }
+        long stamp = new File(Paths.get(home, "/bin/jmeter").toString()).lastModified();
+        if (stamp != this.versionStamp || this.version.isEmpty()) {
+            this.version = readVersion(home);
+            this.versionStamp = stamp;
+            log.info("jmeter路径：{}，版本：{}", home, this.version);
+        }
+        return this.version;
+    }
+
+    public String getAddress() {
+        long now = System.currentTimeMillis();
+        if (this.address == null || now - this.addressCheckedAt > ADDRESS_REFRESH_MILLIS) {
+            String current = localAddress();
+            if (current != null && !current.equals(this.address)) {
+                log.info("本机ip：" + current);
+            }
+            if (current != null) {
+                this.address = current;
+            }
+            this.addressCheckedAt = now;
+        }
+        return this.address;
+    }
+
+    public Boolean getIsOnline() {
+        return !this.getVersion().isEmpty();
+    }
+
+    // 执行jmeter --version，从输出的banner中解析版本号
+    public static String readVersion(String home) {
+        Path jmeterPath = Paths.get(home, "/bin/jmeter");
+        ProcessBuilder processBuilder = new ProcessBuilder(jmeterPath.toString(), "--version");
+        processBuilder.environment().putAll(System.getenv());
+        StringBuilder outputString = new StringBuilder();
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            log.error("获取jmeter版本失败，jmeter路径：" + jmeterPath, e);
+            return "";
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                outputString.append(line).append("\n");
+            }
+            process.waitFor();
+        } catch (InterruptedException | IOException e) {
+            log.error("获取jmeter版本失败", e);
+        } finally {
+            process.destroy();
+        }
+        String versionStr = outputString.toString().replaceAll("[_|\\\\/\\s\\r\\n]", "");
+        Matcher matcher = Pattern.compile(Pattern.quote("<") + "(.*?)" + "Copyright").matcher(versionStr);
+        return matcher.find() ? matcher.group(1).trim() : "";
+    }
+
+    // 取最后一个非回环的内网ipv4地址
+    public static String localAddress() {
+        try {
+            Enumeration<NetworkInterface> allNetInterfaces = NetworkInterface.getNetworkInterfaces();
+            InetAddress addr = null;
+            while (allNetInterfaces.hasMoreElements()) {
+                NetworkInterface netInterface = allNetInterfaces.nextElement();
+                Enumeration<InetAddress> addresses = netInterface.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress ipTmp = addresses.nextElement();
+                    if (ipTmp instanceof Inet4Address
+                            && ipTmp.isSiteLocalAddress()
+                            && !ipTmp.isLoopbackAddress()
+                            && ipTmp.getHostAddress().indexOf(":") == -1) {
+                        addr = ipTmp;
+                    }
+                }
+            }
+            if (addr != null) {
+                return addr.getHostAddress();
+            }
+            log.error("获取本机ip异常");
+        } catch (SocketException e) {
+            log.error("获取本机ip异常", e);
+        }
+        return null;
+    }
+}
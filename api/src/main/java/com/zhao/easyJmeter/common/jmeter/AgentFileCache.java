@@ -0,0 +1,284 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.util.DigestUtil;
+import com.zhao.easyJmeter.dto.task.FileCacheStatDTO;
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.service.JFileService;
+import com.zhao.easyJmeter.vo.CutFileVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * agent本地文件缓存，以文件内容sha256为键，按最近使用淘汰
+ * 命中时硬链接到任务目录，跨文件系统等无法链接的情况退化为复制；jmx会被改写，始终复制
+ */
+@Slf4j
+@Component
+public class AgentFileCache {
+
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    private AgentContext agentContext;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    private ExecutorService executor;
+
+    // 缓存键（文件sha256，分片再加上范围） -> 文件大小，按访问顺序排列
+    private LinkedHashMap<String, Long> index;
+
+    private long totalBytes;
+
+    // 正在放置到任务目录的缓存键 -> 使用次数，淘汰时跳过
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    /**
+     * 并发获取一批文件，key为目标路径；slices中的文件只按范围读取对应分片
+     */
+    public FileCacheStatDTO fetchAll(Map<String, JFileDO> files, Map<String, CutFileVO> slices, JFileService jFileService) {
+        long start = System.currentTimeMillis();
+        AtomicInteger hits = new AtomicInteger();
+        AtomicInteger misses = new AtomicInteger();
+        AtomicLong bytesSaved = new AtomicLong();
+        AtomicLong bytesDownloaded = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, JFileDO> entry : files.entrySet()) {
+            Path target = Paths.get(entry.getKey());
+            JFileDO file = entry.getValue();
+            CutFileVO slice = slices.get(entry.getKey());
+            long bytes = slice != null ? slice.getLength() + Optional.ofNullable(slice.getHeaderLength()).orElse(0L)
+                    : Optional.ofNullable(file.getSize()).orElse(0L);
+            futures.add(this.executor().submit(() -> {
+                if (this.fetch(file, slice, target, jFileService)) {
+                    hits.incrementAndGet();
+                    bytesSaved.addAndGet(bytes);
+                } else {
+                    misses.incrementAndGet();
+                    bytesDownloaded.addAndGet(bytes);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException(e.getCause());
+        }
+        FileCacheStatDTO stat = new FileCacheStatDTO();
+        stat.setHits(hits.get());
+        stat.setMisses(misses.get());
+        stat.setBytesSaved(bytesSaved.get());
+        stat.setBytesDownloaded(bytesDownloaded.get());
+        stat.setCost(System.currentTimeMillis() - start);
+        log.info("文件获取完成，命中：{}，未命中：{}，节省下载：{}字节，耗时：{}ms", stat.getHits(), stat.getMisses(), stat.getBytesSaved(), stat.getCost());
+        return stat;
+    }
+
+    // 返回是否命中缓存
+    private boolean fetch(JFileDO file, CutFileVO slice, Path target, JFileService jFileService) throws IOException {
+        Files.createDirectories(target.getParent());
+        boolean link = !target.getFileName().toString().toLowerCase().endsWith(".jmx");
+        if (slice != null) {
+            return this.fetchSlice(file, slice, target, link, jFileService);
+        }
+        if (!this.enabled()) {
+            jFileService.downloadObject(file, target.toString());
+            return false;
+        }
+        String key = file.getSha256();
+        if (key != null) {
+            Path cached = this.lookup(key);
+            if (cached != null) {
+                this.place(key, cached, target, link);
+                return true;
+            }
+        }
+        Path staging = this.cacheDir().resolve(UUID.randomUUID() + PART_SUFFIX);
+        try {
+            jFileService.downloadObject(file, staging.toString());
+            String sha256 = DigestUtil.sha256Hex(staging);
+            if (key == null) {
+                // 历史文件没有摘要，下载后补齐
+                file.setSha256(sha256);
+                jFileService.updateById(file);
+            } else if (!key.equals(sha256)) {
+                log.warn("文件摘要不一致，不放入缓存，文件：{}，记录：{}，实际：{}", file.getName(), key, sha256);
+                Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING);
+                return false;
+            }
+            this.place(sha256, this.admit(sha256, staging), target, link);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+        return false;
+    }
+
+    // 分片以原文件摘要和范围为键，原文件没有摘要时不缓存
+    private boolean fetchSlice(JFileDO file, CutFileVO slice, Path target, boolean link, JFileService jFileService) throws IOException {
+        if (!this.enabled() || file.getSha256() == null) {
+            jFileService.downloadSlice(file, slice, target.toString());
+            return false;
+        }
+        String key = file.getSha256() + "." + slice.getHeaderLength() + "-" + slice.getOffset() + "-" + slice.getLength();
+        Path cached = this.lookup(key);
+        if (cached != null) {
+            this.place(key, cached, target, link);
+            return true;
+        }
+        Path staging = this.cacheDir().resolve(UUID.randomUUID() + PART_SUFFIX);
+        try {
+            jFileService.downloadSlice(file, slice, staging.toString());
+            this.place(key, this.admit(key, staging), target, link);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+        return false;
+    }
+
+    // 命中时固定该键，放置完成后由place释放
+    private synchronized Path lookup(String key) throws IOException {
+        Long size = this.index().get(key);
+        if (size == null) {
+            return null;
+        }
+        Path cached = this.cacheDir().resolve(key);
+        if (!Files.exists(cached)) {
+            this.index.remove(key);
+            this.totalBytes -= size;
+            return null;
+        }
+        // 修改时间作为重启后的使用顺序
+        Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+        this.pins.merge(key, 1, Integer::sum);
+        return cached;
+    }
+
+    // 放入缓存并固定该键，放置完成后由place释放
+    private synchronized Path admit(String key, Path staging) throws IOException {
+        Path cached = this.cacheDir().resolve(key);
+        boolean present = this.index().containsKey(key) && Files.exists(cached);
+        this.pins.merge(key, 1, Integer::sum);
+        if (present) {
+            return cached;
+        }
+        try {
+            Files.move(staging, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.unpin(key);
+            throw e;
+        }
+        long size = Files.size(cached);
+        this.index.put(key, size);
+        this.totalBytes += size;
+        this.evict();
+        return cached;
+    }
+
+    private synchronized void unpin(String key) {
+        this.pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // 超出容量时淘汰最久未使用的文件，正在放置的文件跳过，已链接到任务目录的文件不受影响
+    private void evict() throws IOException {
+        long maxBytes = this.jmeterProperties.getFileCacheSize() * 1024L * 1024L;
+        Iterator<Map.Entry<String, Long>> iterator = this.index.entrySet().iterator();
+        while (this.totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (this.pins.containsKey(eldest.getKey())) {
+                continue;
+            }
+            Files.deleteIfExists(this.cacheDir().resolve(eldest.getKey()));
+            this.totalBytes -= eldest.getValue();
+            iterator.remove();
+            log.info("淘汰缓存文件：" + eldest.getKey());
+        }
+    }
+
+    private void place(String key, Path cached, Path target, boolean link) throws IOException {
+        try {
+            place(cached, target, link);
+        } finally {
+            this.unpin(key);
+        }
+    }
+
+    private static void place(Path cached, Path target, boolean link) throws IOException {
+        Files.deleteIfExists(target);
+        if (link) {
+            try {
+                Files.createLink(target, cached);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("硬链接失败，改为复制：" + e.getMessage());
+            }
+        }
+        Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // 首次使用时按修改时间恢复索引，并清理上次中断留下的临时文件
+    private LinkedHashMap<String, Long> index() throws IOException {
+        if (this.index != null) {
+            return this.index;
+        }
+        LinkedHashMap<String, Long> loaded = new LinkedHashMap<>(16, 0.75f, true);
+        long total = 0;
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(this.cacheDir())) {
+            paths.map(Path::toFile).filter(File::isFile).forEach(files::add);
+        }
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(PART_SUFFIX)) {
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+            loaded.put(file.getName(), file.length());
+            total += file.length();
+        }
+        this.index = loaded;
+        this.totalBytes = total;
+        log.info("加载文件缓存，文件数：{}，大小：{}字节", loaded.size(), total);
+        return this.index;
+    }
+
+    private Path cacheDir() throws IOException {
+        return Files.createDirectories(Paths.get(this.agentContext.getPath(), "cache"));
+    }
+
+    private boolean enabled() {
+        return this.jmeterProperties.getFileCacheSize() > 0;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (this.executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.jmeterProperties.getDownloadThreads(), r -> {
+                Thread thread = new Thread(r, "fileDownload-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.executor;
+    }
+}
@@ -0,0 +1,208 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * agent端任务环节执行器，环节在专用线程池中执行，按taskId登记当前环节
+ * 同一任务的环节依次执行，上一环节结束(包括被终止)后才开始下一环节；终止时通过取消令牌通知环节，不再按线程名查找和轮询等待
+ * 环节正常结束或失败时由完成回调上报，被终止的环节不再上报
+ */
+@Slf4j
+@Component
+public class AgentPhaseExecutor {
+
+    private final Map<String, PhaseHandle> phases = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    @PreDestroy
+    public void destroy() {
+        phases.values().forEach(handle -> handle.token.cancel());
+        synchronized (this) {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 提交任务的一个环节，在该任务上一环节结束后执行
+     */
+    public void submit(String taskId, JmeterStatusEnum status, LinkStrategy link) {
+        phases.compute(taskId, (key, previous) -> {
+            CancellationToken token = new CancellationToken(this.executor());
+            CompletableFuture<?> after = previous == null ? CompletableFuture.completedFuture(null) : previous.future;
+            CompletableFuture<Boolean> phase = after
+                    .handle((r, e) -> null)
+                    .thenApplyAsync(v -> this.execute(taskId, status, link, token), this.executor());
+            PhaseHandle handle = new PhaseHandle(status, token);
+            handle.future = phase.whenComplete((finished, e) -> this.complete(taskId, handle, link, finished, e));
+            return handle;
+        });
+    }
+
+    /**
+     * 终止任务正在执行的指定环节，立即返回；环节已结束或当前不是该环节时不做处理
+     */
+    public void interrupt(String taskId, JmeterStatusEnum status) {
+        PhaseHandle handle = phases.get(taskId);
+        if (handle != null && handle.status == status && !handle.future.isDone()) {
+            log.info("终止" + taskId + "的" + status.getDesc() + "环节");
+            handle.token.cancel();
+        }
+    }
+
+    private Boolean execute(String taskId, JmeterStatusEnum status, LinkStrategy link, CancellationToken token) {
+        if (token.isCancelled()) {
+            return false;
+        }
+        token.bind(Thread.currentThread());
+        try {
+            log.info("===" + taskId + "_" + status.getDesc() + "===");
+            return link.execute(token);
+        } catch (Exception e) {
+            if (token.isCancelled()) {
+                log.info(taskId + "的" + status.getDesc() + "环节已终止");
+                return false;
+            }
+            throw new CompletionException(e);
+        } finally {
+            token.unbind();
+        }
+    }
+
+    // 完成回调：结束时上报成功，异常时上报失败；被终止的环节由清理环节接手，不上报
+    private void complete(String taskId, PhaseHandle handle, LinkStrategy link, Boolean finished, Throwable e) {
+        try {
+            if (handle.token.isCancelled()) {
+                return;
+            }
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.error(handle.status.getDesc() + "环节发生" + cause.getClass().getName() + "异常：" + cause.getMessage() + "，任务ID：" + taskId);
+                log.error("error", cause);
+                link.reportFail();
+            } else if (Boolean.TRUE.equals(finished)) {
+                link.reportSuccess();
+            }
+        } catch (Exception ex) {
+            log.error("上报" + handle.status.getDesc() + "环节结果失败，任务ID：" + taskId, ex);
+        } finally {
+            if (handle.status == JmeterStatusEnum.CLEAN) {
+                phases.remove(taskId, handle);
+            }
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (this.executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "agentPhase-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.executor;
+    }
+
+    private static class PhaseHandle {
+
+        private final JmeterStatusEnum status;
+
+        private final CancellationToken token;
+
+        private volatile CompletableFuture<?> future;
+
+        PhaseHandle(JmeterStatusEnum status, CancellationToken token) {
+            this.status = status;
+            this.token = token;
+        }
+    }
+
+    /**
+     * 环节取消令牌，环节在耗时步骤之间检查isCancelled，阻塞在进程、网络上的步骤通过onCancel注册终止动作
+     * 取消时同时中断执行线程，使阻塞在IO和sleep上的环节尽快返回；终止动作在环节线程池中执行，不阻塞发起终止的socket事件线程
+     */
+    public static class CancellationToken {
+
+        private final Executor callbackExecutor;
+
+        private volatile boolean cancelled;
+
+        private Thread thread;
+
+        private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+        CancellationToken(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * 注册取消时执行的动作，已取消时立即执行
+         */
+        public void onCancel(Runnable callback) {
+            this.callbacks.add(callback);
+            if (this.cancelled && this.callbacks.remove(callback)) {
+                this.run(callback);
+            }
+        }
+
+        /**
+         * 已取消时抛出异常，结束环节
+         */
+        public void throwIfCancelled() {
+            if (this.cancelled) {
+                throw new CancellationException("环节已终止");
+            }
+        }
+
+        void cancel() {
+            this.cancelled = true;
+            for (Runnable callback : this.callbacks) {
+                if (this.callbacks.remove(callback)) {
+                    this.callbackExecutor.execute(() -> this.run(callback));
+                }
+            }
+            synchronized (this) {
+                if (this.thread != null) {
+                    this.thread.interrupt();
+                }
+            }
+        }
+
+        // 绑定和解绑与中断互斥，线程解绑后不会再被中断
+        synchronized void bind(Thread thread) {
+            this.thread = thread;
+            if (this.cancelled) {
+                thread.interrupt();
+            }
+        }
+
+        synchronized void unbind() {
+            this.thread = null;
+            // 清除取消时留下的中断标记，线程池线程继续复用
+            Thread.interrupted();
+        }
+
+        private void run(Runnable callback) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.error("执行环节终止动作失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.jmeter.summary.JtlSummary;
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.service.JFileService;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 聚合报告百分位数，按接口合并直方图后计算，不再对各时间窗口的百分位数取平均
+ * 优先使用agent上传的结果摘要中的直方图（精确值）；没有摘要时由influxdb中每个窗口的百分位数按请求数加权还原分布（近似值）
+ */
+@Slf4j
+@Component
+public class AggregatePercentiles {
+
+    public static final double[] PERCENTILES = {90.0, 95.0, 99.0};
+
+    // influxdb中每个窗口只有min、pct90、pct95、pct99、max，按分位点之间线性插值还原分布
+    private static final double[] KNOWN_QUANTILES = {0, 0.90, 0.95, 0.99, 1};
+
+    // 每个窗口还原时的取样点数，权重整体放大相同倍数，不影响百分位数
+    private static final int SAMPLE_POINTS = 100;
+
+    private static final int CHUNK_SIZE = 5000;
+
+    private static final long QUERY_TIMEOUT_MINUTES = 5;
+
+    @Autowired
+    private InfluxDB influxDB;
+
+    @Autowired
+    private JFileService jFileService;
+
+    /**
+     * 一次压测窗口内各接口的百分位数，接口 -> 与PERCENTILES对应的值
+     */
+    public Map<String, double[]> percentiles(String application, String tags, String startTime, String endTime) {
+        Map<String, Histogram> histograms = this.fromSummary(application, tags);
+        if (histograms == null) {
+            histograms = this.fromInfluxdb(application, startTime, endTime);
+        }
+        Map<String, double[]> result = new HashMap<>();
+        histograms.forEach((transaction, histogram) -> {
+            double[] values = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values[i] = histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(PERCENTILES[i]);
+            }
+            result.put(transaction, values);
+        });
+        return result;
+    }
+
+    // 结果摘要按agent上传，文件名为agent地址+任务id，与事件的tags、application对应
+    private Map<String, Histogram> fromSummary(String application, String tags) {
+        String name = tags + application + "_result." + JtlSummary.EXTENSION;
+        JFileDO summaryFile = jFileService.searchFileByTaskId(application, JtlSummary.EXTENSION).stream()
+                .filter(file -> name.equals(file.getName()))
+                .findFirst().orElse(null);
+        if (summaryFile == null) {
+            return null;
+        }
+        String filePath = jFileService.downloadFile(summaryFile.getId(), null);
+        try (InputStream inputStream = new FileInputStream(filePath)) {
+            JtlSummary summary = JtlSummary.read(inputStream);
+            Map<String, Histogram> histograms = new HashMap<>();
+            // 与influxdb中的all对应，合并所有label
+            Histogram all = new Histogram(3);
+            summary.getLabels().forEach((label, labelSummary) -> {
+                histograms.put(label, labelSummary.getHistogram());
+                all.add(labelSummary.getHistogram());
+            });
+            histograms.put("all", all);
+            return histograms;
+        } catch (IOException e) {
+            log.error("读取结果摘要失败，使用influxdb数据计算百分位数", e);
+            return null;
+        } finally {
+            new File(filePath).delete();
+        }
+    }
+
+    // 分块读取，只保留每个接口一个直方图，内存占用与窗口数量无关
+    private Map<String, Histogram> fromInfluxdb(String application, String startTime, String endTime) {
+        String query = String.format("SELECT transaction,\"count\",\"min\",\"pct90.0\",\"pct95.0\",\"pct99.0\",\"max\" FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal'",
+                startTime, endTime, application);
+        Map<String, Histogram> histograms = new HashMap<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        influxDB.query(new Query(query), CHUNK_SIZE, (cancellable, queryResult) -> {
+            synchronized (histograms) {
+                this.record(histograms, queryResult);
+            }
+        }, latch::countDown, throwable -> {
+            error.set(throwable);
+            latch.countDown();
+        });
+        try {
+            if (!latch.await(QUERY_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                throw new RuntimeException("查询聚合报告百分位数超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+        synchronized (histograms) {
+            return histograms;
+        }
+    }
+
+    private void record(Map<String, Histogram> histograms, QueryResult queryResult) {
+        if (queryResult.getResults() == null) {
+            return;
+        }
+        for (QueryResult.Result result : queryResult.getResults()) {
+            if (result.getSeries() == null) {
+                continue;
+            }
+            for (QueryResult.Series series : result.getSeries()) {
+                List<String> columns = series.getColumns();
+                int[] index = {columns.indexOf("count"), columns.indexOf("min"), columns.indexOf("pct90.0"),
+                        columns.indexOf("pct95.0"), columns.indexOf("pct99.0"), columns.indexOf("max")};
+                int transactionIndex = columns.indexOf("transaction");
+                for (List<Object> value : series.getValues()) {
+                    long count = toLong(value.get(index[0]));
+                    if (count <= 0) {
+                        continue;
+                    }
+                    double[] known = new double[KNOWN_QUANTILES.length];
+                    for (int i = 0; i < known.length; i++) {
+                        known[i] = toDouble(value.get(index[i + 1]));
+                    }
+                    Histogram histogram = histograms.computeIfAbsent(String.valueOf(value.get(transactionIndex)), k -> new Histogram(3));
+                    record(histogram, known, count);
+                }
+            }
+        }
+    }
+
+    // 在已知分位点之间线性插值，按等间隔分位取样，每个样本的权重为窗口请求数
+    private static void record(Histogram histogram, double[] known, long count) {
+        int segment = 0;
+        for (int i = 0; i < SAMPLE_POINTS; i++) {
+            double quantile = (i + 0.5) / SAMPLE_POINTS;
+            while (segment < KNOWN_QUANTILES.length - 2 && quantile > KNOWN_QUANTILES[segment + 1]) {
+                segment++;
+            }
+            double low = known[segment];
+            double high = Math.max(known[segment + 1], low);
+            double ratio = (quantile - KNOWN_QUANTILES[segment]) / (KNOWN_QUANTILES[segment + 1] - KNOWN_QUANTILES[segment]);
+            histogram.recordValueWithCount(Math.max(0, Math.round(low + (high - low) * ratio)), count);
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
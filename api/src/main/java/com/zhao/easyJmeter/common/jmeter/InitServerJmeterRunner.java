@@ -21,6 +21,10 @@ public class InitServerJmeterRunner implements ApplicationRunner {
 
     @Autowired
     private MachineService machineService;
+
+    @Autowired
+    private ReportPipeline reportPipeline;
+
     @Override
     public void run(ApplicationArguments args) throws IOException, ArchiveException {
         if (enableSocket) {
@@ -32,6 +36,9 @@ public class InitServerJmeterRunner implements ApplicationRunner {
 
             // 启动后重置所有压力机为下线状态
             machineService.setMachineOffline();
+
+            // jmeter解压后继续上次未完成的报告处理
+            reportPipeline.resume();
         }
     }
 }
@@ -1,9 +1,13 @@
 package com.zhao.easyJmeter.common.jmeter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.zhao.easyJmeter.common.configuration.InfluxDBProperties;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.jmeter.summary.JtlSummary;
+import com.zhao.easyJmeter.common.jmeter.summary.JtlSummaryBuilder;
+import com.zhao.easyJmeter.common.jmeter.summary.SummaryReportBuilder;
 import com.zhao.easyJmeter.common.util.ThreadUtil;
 import com.zhao.easyJmeter.common.util.ZipUtil;
+import com.zhao.easyJmeter.dto.task.FileCacheStatDTO;
 import com.zhao.easyJmeter.dto.task.TaskProgressMachineDTO;
 import com.zhao.easyJmeter.model.CaseDO;
 import com.zhao.easyJmeter.model.JFileDO;
@@ -19,8 +23,6 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.config.CSVDataSet;
-import org.apache.jmeter.report.config.ConfigurationException;
-import org.apache.jmeter.report.dashboard.GenerationException;
 import org.apache.jmeter.report.dashboard.ReportGenerator;
 import org.apache.jmeter.reporters.ResultCollector;
 import org.apache.jmeter.reporters.Summariser;
@@ -36,10 +38,6 @@ import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.collections.SearchByClass;
 
 import java.io.*;
-import java.net.Inet4Address;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.net.SocketException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -56,6 +54,9 @@ import static org.apache.jmeter.JMeter.JMETER_REPORT_OUTPUT_DIR_PROPERTY;
 @Slf4j
 public class JmeterExternal {
 
+    // 匹配summariser输出中的时分秒
+    private static final Pattern SUMMARY_TIME_PATTERN = Pattern.compile("\\d{2}:(\\d{2}):(\\d{2})");
+
     private String version;
 
     private String path;
@@ -64,13 +65,18 @@ public class JmeterExternal {
 
     private Boolean isOnline;
 
+    private JmeterProperties jmeterProperties = new JmeterProperties();
+
     private final Socket socket;
 
-    public JmeterExternal(Socket socket) {
+    // 最近一次生成报告时从ReportGenerator上下文中收集的数据
+    private Map<String, Object> reportModel;
+
+    public JmeterExternal(Socket socket, AgentContext agentContext) {
         this.socket = socket;
-        this.path = System.getenv("JMETER_HOME");
-        this.version();
-        this.ipAddress();
+        this.path = agentContext.getPath();
+        this.version = agentContext.getVersion();
+        this.address = agentContext.getAddress();
         this.online();
     }
 
@@ -83,72 +89,13 @@ public class JmeterExternal {
     }
 
     public void serverVersion() {
-        JMeterUtils.setJMeterHome(this.path);
-        JMeterUtils.loadJMeterProperties(Paths.get(this.path, "/bin/jmeter.properties").toString());
+        // 服务端只加载一次jmeter属性，避免覆盖正在生成报告的任务的属性
+        JmeterPropertyContext.load(this.path);
         this.version = JMeterUtils.getJMeterVersion();
     }
 
-    public void version() {
-        Path jmeterPath = Paths.get(this.path, "/bin/jmeter");
-        System.out.println("jmeter path: " + jmeterPath);
-        ProcessBuilder processBuilder = new ProcessBuilder(jmeterPath.toString(), "--version");
-        processBuilder.environment().putAll(System.getenv());
-        StringBuilder outputString = new StringBuilder();
-        Process process = null;
-        try {
-            process = processBuilder.start();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputString.append(line).append("\n");
-            }
-            int exitCode = process.waitFor();
-        } catch (InterruptedException | IOException e) {
-            log.error("获取jmeter版本失败", e);
-        } finally {
-            process.destroy();
-        }
-        String version_str = outputString.toString().replaceAll("[_|\\\\/\\s\\r\\n]", "");
-        String prefix = Pattern.quote("<");
-        String suffix = "Copyright";
-        String regex = prefix + "(.*?)" + suffix;
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(version_str);
-        if (matcher.find()) {
-            version = matcher.group(1).trim();
-        }
-        this.version = version;
-    }
-
     public void ipAddress() {
-        try {
-            Enumeration<NetworkInterface> allNetInterfaces = NetworkInterface.getNetworkInterfaces();
-            InetAddress addr = null;
-            while (allNetInterfaces.hasMoreElements()) {
-                NetworkInterface netInterface = (NetworkInterface) allNetInterfaces.nextElement();
-                //System.out.println(netInterface.getName());
-                Enumeration<InetAddress> addresses = netInterface.getInetAddresses();
-                while (addresses.hasMoreElements()) {
-                    InetAddress ipTmp = (InetAddress) addresses.nextElement();
-                    if (ipTmp != null && ipTmp instanceof Inet4Address
-                            && ipTmp.isSiteLocalAddress()
-                            && !ipTmp.isLoopbackAddress()
-                            && ipTmp.getHostAddress().indexOf(":") == -1) {
-                        addr = ipTmp;
-                    }
-                }
-            }
-            if (addr != null) {
-                this.address = addr.getHostAddress();
-            } else {
-                log.error("获取本机ip异常");
-            }
-        } catch (SocketException e) {
-            log.error("获取本机ip异常", e);
-        }
+        this.address = AgentContext.localAddress();
     }
 
     public void online() {
@@ -197,25 +144,9 @@ public class JmeterExternal {
         JMeterUtils.loadJMeterProperties(Paths.get(this.path, "/bin/jmeter.properties").toString());
     }
 
-    public void initServerJmeterUtils(TaskDO taskDO) {
-        JMeterUtils.setJMeterHome(this.path);
-        JMeterUtils.loadJMeterProperties(Paths.get(this.path, "/bin/jmeter.properties").toString());
-        if (taskDO != null) {
-            Integer granularity = taskDO.getGranularity();
-            if (granularity == 0) {
-                Integer duration = taskDO.getDuration();
-                if (duration / 60 <= 15) {
-                    granularity = 3;
-                } else if (duration / 60 > 15 && duration / 60 <= 30) {
-                    granularity = 6;
-                } else if (duration / 60 > 30 && duration / 60 <= 60) {
-                    granularity = 10;
-                } else {
-                    granularity = 30;
-                }
-            }
-            JMeterUtils.setProperty("jmeter.reportgenerator.overall_granularity", String.valueOf(granularity * 1000));
-        }
+    // 服务端公共属性，调试使用；报告相关的属性在generateReport的属性上下文中设置
+    public void initServerJmeterUtils() {
+        JmeterPropertyContext.load(this.path);
         JMeterUtils.setProperty("jmeter.save.saveservice.output_format", "xml");
         JMeterUtils.setProperty("jmeter.save.saveservice.response_data", "true");
         JMeterUtils.setProperty("jmeter.save.saveservice.response_data.on_error", "true");
@@ -225,7 +156,25 @@ public class JmeterExternal {
         JMeterUtils.setLocale(ENGLISH);
     }
 
-    public void editJmxConfig(TaskDO taskDO, InfluxDBProperties influxDBProperties) throws IOException {
+    // 报告时间粒度（秒），未指定时按压测时长自动选择
+    public static Integer reportGranularity(TaskDO taskDO) {
+        Integer granularity = taskDO.getGranularity();
+        if (granularity == null || granularity == 0) {
+            Integer duration = taskDO.getDuration();
+            if (duration / 60 <= 15) {
+                granularity = 3;
+            } else if (duration / 60 > 15 && duration / 60 <= 30) {
+                granularity = 6;
+            } else if (duration / 60 > 30 && duration / 60 <= 60) {
+                granularity = 10;
+            } else {
+                granularity = 30;
+            }
+        }
+        return granularity;
+    }
+
+    public void editJmxConfig(TaskDO taskDO, String realtimeWriteUrl) throws IOException {
         File directory = new File(Paths.get(this.path, "/tmp/").toString());
         File[] files = directory.listFiles();
         File jmxfile = null;
@@ -278,10 +227,8 @@ public class JmeterExternal {
 
             testPlanTree.add(testPlanTree.getArray()[0], constantThroughputTimer);
 
-            //添加influxdb后置监听器
+            //添加influxdb后置监听器，写入地址由服务端按实时指标存储下发
             if (taskDO.getRealtime()) {
-                String database = influxDBProperties.getDatabase();
-                String url = influxDBProperties.getUrl();
                 String taskId = taskDO.getTaskId();
                 Arguments arguments = new Arguments();
                 arguments.setProperty(new StringProperty(TestElement.GUI_CLASS, "ArgumentsPanel"));
@@ -289,7 +236,7 @@ public class JmeterExternal {
                 arguments.setProperty(new StringProperty(TestElement.NAME, "arguments"));
                 arguments.setEnabled(true);
                 arguments.addArgument("influxdbMetricsSender", "org.apache.jmeter.visualizers.backend.influxdb.HttpMetricsSender", "=");
-                arguments.addArgument("influxdbUrl", url + "/write?db=" + database, "=");
+                arguments.addArgument("influxdbUrl", realtimeWriteUrl, "=");
                 arguments.addArgument("application", taskId, "=");
                 arguments.addArgument("measurement", "jmeter", "=");
                 arguments.addArgument("summaryOnly", "false", "=");
@@ -400,24 +347,27 @@ public class JmeterExternal {
         processBuilder.environment().putAll(System.getenv());
         StringBuilder outputString = new StringBuilder();
         try {
-            Process process = processBuilder.start();
+            JmeterProcessSupervisor supervisor = JmeterProcessSupervisor.start(taskDO.getTaskId(), processBuilder, Paths.get(reportPath));
+            Process process = supervisor.getProcess();
+            // 已上报的进度，整数百分比前进时才上报
+            int lastProcess = 0;
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     outputString.append(line).append("\n");
                     if (Thread.currentThread().isInterrupted()) {
                         log.info("压测中的jmeter线程被中断");
-                        process.destroy();
+                        supervisor.killTreeAsync();
                     }
-                    // 判断是否已经结束但由于开放了beanshell端口导致服务没有停止
-                    File report = new File(reportPath);
-                    if (report.exists() && ThreadUtil.isProcessContainingName(taskDO.getTaskId() + ".jmx")) {
-                        ThreadUtil.killProcessContainingName(taskDO.getTaskId() + ".jmx");
+                    // 压测已结束但由于开放了beanshell端口导致服务没有停止，由supervisor结束进程
+                    if (line.contains("end of run")) {
+                        supervisor.markEndOfRun();
                     }
                     // 向主节点发送进度
-                    Integer machineProcess = this.getMachineProcess(line, taskDO);
-                    if (machineProcess != 0 && !Thread.currentThread().isInterrupted()) {
-                        TaskProgressMachineDTO taskProgressMachineDTO = new TaskProgressMachineDTO(taskDO.getTaskId(), this.getAddress(), machineProcess);
+                    int machineProcess = Math.min(this.getMachineProcess(line, taskDO), 100);
+                    if (machineProcess > lastProcess && !Thread.currentThread().isInterrupted()) {
+                        lastProcess = machineProcess;
+                        TaskProgressMachineDTO taskProgressMachineDTO = new TaskProgressMachineDTO(taskDO.getTaskId(), this.getAddress(), machineProcess, supervisor.cpuMillis(), supervisor.rssBytes());
                         String taskProgressMachine = new ObjectMapper().writeValueAsString(taskProgressMachineDTO);
                         socket.emit("machineTaskProgress", taskProgressMachine);
                     }
@@ -426,19 +376,21 @@ public class JmeterExternal {
             }
             int exitCode = process.waitFor();
 
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            // 环节被终止，进程树已在结束中，属于正常停止
+            log.info("jmeter运行被终止，任务ID：" + taskDO.getTaskId());
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
             log.error("执行jmeter失败", e);
         }
         log.info(outputString.toString());
     }
 
     public Integer getMachineProcess(String line, TaskDO taskDO) {
-        String pattern = "\\d{2}:(\\d{2}):(\\d{2})"; // 正则表达式用于匹配时分秒格式
-        Pattern r = Pattern.compile(pattern);
         if (!line.contains("summary =")) {
             return 0;
         }
-        Matcher m = r.matcher(line);
+        Matcher m = SUMMARY_TIME_PATTERN.matcher(line);
         if (m.find()) {
             String time = m.group(0); // 完整匹配结果，即 "00:00:05"
             String[] parts = time.split(":"); // 使用冒号分割时分秒
@@ -497,8 +449,14 @@ public class JmeterExternal {
     }
 
     public void clean(TaskDO taskDO) throws IOException {
-        // 如果测试进程仍然存在，则杀掉进程
-        if (ThreadUtil.isProcessContainingName(taskDO.getTaskId() + ".jmx")) {
+        // 如果测试进程仍然存在，则结束进程树
+        JmeterProcessSupervisor supervisor = JmeterProcessSupervisor.release(taskDO.getTaskId());
+        if (supervisor != null) {
+            if (supervisor.isAlive()) {
+                supervisor.killTree();
+            }
+        } else if (ThreadUtil.isProcessContainingName(taskDO.getTaskId() + ".jmx")) {
+            // agent重启后没有进程句柄，按进程名查找
             ThreadUtil.killProcessContainingName(taskDO.getTaskId() + ".jmx");
         }
         // 将tmp目录重命名为任务目录
@@ -517,106 +475,117 @@ public class JmeterExternal {
             file.setTaskId(taskDO.getTaskId());
             jFileService.updateById(file);
         }
-        // 上传jtl文件
         File jtlPath = new File(Paths.get(this.path, "tmp", "result.jtl").toString());
-        File newJtlPath = new File(Paths.get(this.path, "tmp", this.address + taskDO.getTaskId() + "_result.jtl").toString());
-        boolean jtlRename = jtlPath.renameTo(newJtlPath);
-        if (jtlRename) {
-            JFileDO file = jFileService.createFile(newJtlPath.getAbsolutePath());
+        // 上传结果摘要
+        File summaryPath = new File(Paths.get(this.path, "tmp", this.address + taskDO.getTaskId() + "_result." + JtlSummary.EXTENSION).toString());
+        if (jtlPath.exists()) {
+            try (OutputStream outputStream = new FileOutputStream(summaryPath)) {
+                JtlSummary summary = new JtlSummaryBuilder(jtlPath.getAbsolutePath(), reportGranularity(taskDO) * 1000L,
+                        this.jmeterProperties.getMultilineRecords()).build();
+                summary.write(outputStream);
+            } catch (IOException e) {
+                log.error("生成结果摘要失败", e);
+                throw new RuntimeException(e);
+            }
+            JFileDO file = jFileService.createFile(summaryPath.getAbsolutePath());
             file.setTaskId(taskDO.getTaskId());
             jFileService.updateById(file);
         }
+        // 上传jtl剩余分段，仅在需要html报告时开启
+        if (this.jmeterProperties.getRawJtl()) {
+            try {
+                this.jtlSegmentUploader(taskDO, jFileService).finish();
+            } catch (IOException e) {
+                log.error("上传jtl分段失败", e);
+                throw new RuntimeException(e);
+            }
+        }
     }
 
-    public void downloadConfigFile(TaskDO taskDO, JFileService jFileService, MachineCutFileVO machineCutFileVO) {
+    public JtlSegmentUploader jtlSegmentUploader(TaskDO taskDO, JFileService jFileService) {
+        long segmentSize = this.jmeterProperties.getSegmentSize() * 1024L * 1024L;
+        return new JtlSegmentUploader(this.path, taskDO.getTaskId(), this.address, jFileService, segmentSize);
+    }
+
+    public FileCacheStatDTO downloadConfigFile(TaskDO taskDO, JFileService jFileService, MachineCutFileVO machineCutFileVO, AgentFileCache agentFileCache) {
         String tmpDir = Paths.get(this.path, "tmp").toString();
         String dependencyDir = Paths.get(this.path, "tmp", "dependencies").toString();
-        // 下载分配给本机的切分文件
+        // 目标路径 -> 文件，统一交给缓存并发获取
+        Map<String, JFileDO> files = new LinkedHashMap<>();
+        // 按范围读取的分片，目标路径 -> 分片范围
+        Map<String, CutFileVO> slices = new HashMap<>();
+        // 分配给本机的切分文件
         if (machineCutFileVO.getMachineDOCutFileVOListMap() != null) {
-            Map<String, List<CutFileVO>> map = machineCutFileVO.getMachineDOCutFileVOListMap();
-            for (Map.Entry<String, List<CutFileVO>> entry : map.entrySet()) {
-                if (entry.getKey().equals(new JmeterExternal(socket).getAddress())) {
-                    jFileService.downloadCutFile(entry.getValue(), tmpDir);
+            List<CutFileVO> cutFileVOList = machineCutFileVO.getMachineDOCutFileVOListMap().get(this.address);
+            if (cutFileVOList != null) {
+                for (CutFileVO cutFileVO : cutFileVOList) {
+                    String filePath = Paths.get(tmpDir, cutFileVO.getOriginName()).toString();
+                    files.put(filePath, jFileService.searchById(cutFileVO.getId()));
+                    if (cutFileVO.getLength() != null) {
+                        slices.put(filePath, cutFileVO);
+                    }
                 }
             }
         }
-        // 下载无需切分的文件
+        // 无需切分的文件
         String[] csvFileIds = (taskDO.getCsv() != null && !taskDO.getCsv().isEmpty()) ? taskDO.getCsv().split(",") : new String[]{};
         for (String csvFileId : csvFileIds) {
             JFileDO jFileCsvDO = jFileService.searchById(Integer.valueOf(csvFileId));
             if (!jFileCsvDO.getCut()) {
-                jFileService.downloadFile(Integer.valueOf(csvFileId), tmpDir);
+                files.put(Paths.get(tmpDir, jFileCsvDO.getName()).toString(), jFileCsvDO);
             }
         }
         String[] jmxFileIds = (taskDO.getJmx() != null && !taskDO.getJmx().isEmpty()) ? taskDO.getJmx().split(",") : new String[]{};
         for (String jmxFileId : jmxFileIds) {
-            jFileService.downloadFile(Integer.valueOf(jmxFileId), tmpDir);
+            JFileDO jFileJmxDO = jFileService.searchById(Integer.valueOf(jmxFileId));
+            files.put(Paths.get(tmpDir, jFileJmxDO.getName()).toString(), jFileJmxDO);
         }
         String[] jarFileIds = (taskDO.getJar() != null && !taskDO.getJar().isEmpty()) ? taskDO.getJar().split(",") : new String[]{};
         for (String jarFileId : jarFileIds) {
-            jFileService.downloadFile(Integer.valueOf(jarFileId), dependencyDir);
+            JFileDO jFileJarDO = jFileService.searchById(Integer.valueOf(jarFileId));
+            files.put(Paths.get(dependencyDir, jFileJarDO.getName()).toString(), jFileJarDO);
         }
+        FileCacheStatDTO stat = agentFileCache.fetchAll(files, slices, jFileService);
+        stat.setTaskId(taskDO.getTaskId());
+        stat.setMachineIp(this.address);
+        return stat;
     }
 
     public String mergeJtlFile(TaskDO taskDO, JFileService jFileService) {
+        boolean segmented = !JtlSegmentManifest.of(taskDO.getTaskId(), jFileService).isEmpty();
+        return this.mergeJtlFile(taskDO, this.fetchJtlFile(taskDO, jFileService), segmented, jFileService);
+    }
+
+    /**
+     * 下载合并所需的jtl，运行期间分段上传时返回每个agent按序号排列的分段，否则只有一组完整的jtl
+     */
+    public List<List<String>> fetchJtlFile(TaskDO taskDO, JFileService jFileService) {
+        JtlSegmentManifest manifest = JtlSegmentManifest.of(taskDO.getTaskId(), jFileService);
+        if (!manifest.isEmpty()) {
+            return manifest.download(jFileService);
+        }
         List<JFileDO> jFileDOS = jFileService.searchJtlByTaskId(taskDO.getTaskId());
         List<String> filePaths = new ArrayList<>();
         for (JFileDO file : jFileDOS) {
             String filePath = jFileService.downloadFile(file.getId(), null);
             filePaths.add(filePath);
         }
-        // 获取文件首行
-        String firstLine = "";
-        if (!filePaths.isEmpty()) {
-            ProcessBuilder processBuilder = new ProcessBuilder("head", "-1", filePaths.get(0));
-            processBuilder.environment().putAll(System.getenv());
-            try {
-                Process process = processBuilder.start();
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    firstLine = reader.readLine();
-                }
-                int exitCode = process.waitFor();
-            } catch (IOException | InterruptedException e) {
-                log.error("获取jtl文件首行失败", e);
-            }
-        }
-        // 所有文件去除首行
-        for (String filePath : filePaths) {
-            ProcessBuilder processBuilder = new ProcessBuilder("sed", "-i", "1d", filePath);
-            processBuilder.environment().putAll(System.getenv());
-            try {
-                Process process = processBuilder.start();
-                int exitCode = process.waitFor();
-            } catch (IOException | InterruptedException e) {
-                log.error("删除jtl文件首行失败", e);
-            }
-        }
-        // 加入文件第一行
+        return List.of(filePaths);
+    }
+
+    public String mergeJtlFile(TaskDO taskDO, List<List<String>> files, boolean segmented, JFileService jFileService) {
         String newJtlPath = Paths.get(jFileService.getStoreDir(), taskDO.getTaskId() + ".jtl").toString();
-        File newJtlFile = new File(newJtlPath);
+        boolean ordered = this.jmeterProperties.getOrderedMerge();
+        boolean multiline = this.jmeterProperties.getMultilineRecords();
+        // 分段直接解压合并
+        JtlMerger jtlMerger = segmented ? JtlMerger.ofSegments(files, newJtlPath, ordered, multiline)
+                : new JtlMerger(files.get(0), newJtlPath, ordered, multiline);
+        // 流式合并所有文件，只保留一个表头
         try {
-            newJtlFile.createNewFile();
-        } catch (IOException e) {
-            log.error("创建jtl文件失败");
-        }
-        try (PrintWriter writer = new PrintWriter(newJtlFile)) {
-            writer.println(firstLine);
+            jtlMerger.merge();
         } catch (IOException e) {
-            log.error("写入首行失败", e);
-        }
-        // 合并所有文件
-        filePaths.add(0, "cat");
-        filePaths.add(">>");
-        filePaths.add(newJtlPath);
-        String commandString = String.join(" ", filePaths);
-        ProcessBuilder processBuilder = new ProcessBuilder("sh", "-c", commandString);
-        processBuilder.environment().putAll(System.getenv());
-        try {
-            Process process = processBuilder.start();
-            List<String> command = processBuilder.command();
-            int exitCode = process.waitFor();
-        } catch (IOException | InterruptedException e) {
             log.error("jtl文件聚合失败", e);
+            throw new RuntimeException(e);
         }
         log.info("合并jtl成功");
         return newJtlPath;
@@ -625,13 +594,26 @@ public class JmeterExternal {
     public String generateReport(TaskDO taskDO, String jtlPath, JFileService jFileService) {
         // 设置报告输出路径
         String outputReportPath = Paths.get(jFileService.getStoreDir(), "report_" + taskDO.getTaskId()).toString();
-        JMeterUtils.setProperty(JMETER_REPORT_OUTPUT_DIR_PROPERTY, outputReportPath);
-
+        // 报告属性只在本线程的属性上下文中生效，多个任务可以同时生成报告
+        Map<String, String> properties = new HashMap<>();
+        properties.put(JMETER_REPORT_OUTPUT_DIR_PROPERTY, outputReportPath);
+        properties.put("jmeter.reportgenerator.temp_dir", Paths.get(jFileService.getStoreDir(), "report_temp_" + taskDO.getTaskId()).toString());
+        properties.put("jmeter.reportgenerator.overall_granularity", String.valueOf(reportGranularity(taskDO) * 1000));
+        properties.put("jmeter.save.saveservice.output_format", "csv");
+        properties.put(ReportModelExporter.CLASSNAME_PROPERTY, ReportModelExporter.class.getName());
         try {
-            JMeterUtils.setProperty("jmeter.save.saveservice.output_format", "csv");
-            ReportGenerator generator = new ReportGenerator(jtlPath, null);
-            generator.generate();
-        } catch (ConfigurationException | GenerationException e) {
+            this.reportModel = JmeterPropertyContext.call(properties, () -> {
+                ReportGenerator generator = new ReportGenerator(jtlPath, null);
+                ReportModelExporter.begin();
+                try {
+                    generator.generate();
+                } catch (Exception e) {
+                    ReportModelExporter.end();
+                    throw e;
+                }
+                return ReportModelExporter.end();
+            });
+        } catch (Exception e) {
             log.error("生成报告失败", e);
             throw new RuntimeException(e);
         }
@@ -640,27 +622,74 @@ public class JmeterExternal {
     }
 
     public JFileDO compressReportAndUpload(TaskDO taskDO, String reportPath, JFileService jFileService) {
-        String reportZipPath = Paths.get(jFileService.getStoreDir(), "report_" + taskDO.getTaskId() + ".zip").toString();
-        try {
-            ZipUtil.zipFolderWithArchiveOutputStream(reportPath, reportZipPath);
+        // 边压缩边分段上传到minio，不在本地生成压缩文件
+        JFileDO file;
+        try (InputStream inputStream = ZipUtil.zipFolderStream(reportPath)) {
+            file = jFileService.createFile("report_" + taskDO.getTaskId() + ".zip", inputStream);
         } catch (IOException e) {
             log.error("压缩报告失败", e);
             throw new RuntimeException(e);
         }
-        // 上传压缩文件到minio
-        JFileDO file = jFileService.createFile(reportZipPath);
         file.setTaskId(taskDO.getTaskId());
         jFileService.updateById(file);
         log.info("压缩上传报告成功");
         return file;
     }
 
+    public JtlSummary mergeSummaryFile(TaskDO taskDO, JFileService jFileService) {
+        List<JFileDO> jFileDOS = jFileService.searchFileByTaskId(taskDO.getTaskId(), JtlSummary.EXTENSION);
+        if (jFileDOS.isEmpty()) {
+            return null;
+        }
+        JtlSummary summary = new JtlSummary(reportGranularity(taskDO) * 1000L);
+        for (JFileDO file : jFileDOS) {
+            String filePath = jFileService.downloadFile(file.getId(), null);
+            try (InputStream inputStream = new FileInputStream(filePath)) {
+                summary.merge(JtlSummary.read(inputStream));
+            } catch (IOException e) {
+                log.error("读取结果摘要失败", e);
+                throw new RuntimeException(e);
+            }
+        }
+        log.info("合并结果摘要成功，摘要数：" + jFileDOS.size());
+        return summary;
+    }
+
+    /**
+     * 服务端是否需要生成html报告，agent上传了原始jtl时才生成
+     */
+    public boolean hasRawJtl(TaskDO taskDO, JFileService jFileService) {
+        return !JtlSegmentManifest.of(taskDO.getTaskId(), jFileService).isEmpty()
+                || !jFileService.searchJtlByTaskId(taskDO.getTaskId()).isEmpty();
+    }
+
     public void serverCollect(TaskDO taskDO, JFileService jFileService, ReportRepository reportRepository) {
-        this.initServerJmeterUtils(taskDO);
-        String jtlPath = this.mergeJtlFile(taskDO, jFileService);
-        String outputReportPath = this.generateReport(taskDO, jtlPath, jFileService);
-        JFileDO jFileDO = this.compressReportAndUpload(taskDO, outputReportPath, jFileService);
-        ReportDO data = new ReportDataProcess().getData(taskDO, outputReportPath, jFileDO);
+        JFileDO jFileDO = null;
+        String outputReportPath = null;
+        if (this.hasRawJtl(taskDO, jFileService)) {
+            this.initServerJmeterUtils();
+            String jtlPath = this.mergeJtlFile(taskDO, jFileService);
+            outputReportPath = this.generateReport(taskDO, jtlPath, jFileService);
+            jFileDO = this.compressReportAndUpload(taskDO, outputReportPath, jFileService);
+        }
+        this.saveReportData(taskDO, outputReportPath, jFileDO, jFileService, reportRepository);
+    }
+
+    /**
+     * 优先使用结果摘要，其次是生成报告时导出的数据，最后解析报告目录
+     */
+    public void saveReportData(TaskDO taskDO, String outputReportPath, JFileDO jFileDO, JFileService jFileService, ReportRepository reportRepository) {
+        JtlSummary summary = this.mergeSummaryFile(taskDO, jFileService);
+        ReportDO data;
+        if (summary != null) {
+            data = new SummaryReportBuilder(summary).getData(taskDO, jFileDO);
+        } else if (this.reportModel != null && !this.reportModel.isEmpty()) {
+            data = new ReportDataProcess().getData(taskDO, this.reportModel, jFileDO);
+        } else if (outputReportPath != null) {
+            data = new ReportDataProcess().getData(taskDO, outputReportPath, jFileDO);
+        } else {
+            throw new RuntimeException("任务没有可用的结果文件，任务ID：" + taskDO.getTaskId());
+        }
         // 数据保存至mongodb
         reportRepository.save(data);
         log.info("report上传mongodb成功");
@@ -0,0 +1,209 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 持有jmeter子进程及其后代进程，监听进程退出和报告目录生成，按进程树精确结束进程
+ * jmeter开启beanshell服务端口后，压测结束也不会自动退出，需要在报告生成后主动结束
+ */
+@Slf4j
+public class JmeterProcessSupervisor {
+
+    private static final Map<String, JmeterProcessSupervisor> SUPERVISORS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jmeterProcessSupervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 输出结束标志后等待进程自行退出的时间
+    private static final long END_OF_RUN_GRACE_SECONDS = 5;
+
+    // 报告目录出现后等待报告生成完成的最长时间
+    private static final long REPORT_GRACE_SECONDS = 120;
+
+    // 发送结束信号后等待退出的时间，超时强制结束
+    private static final long DESTROY_TIMEOUT_SECONDS = 10;
+
+    private final String taskId;
+
+    private final Process process;
+
+    private final Path reportPath;
+
+    private WatchService watchService;
+
+    private volatile boolean endOfRun = false;
+
+    private JmeterProcessSupervisor(String taskId, Process process, Path reportPath) {
+        this.taskId = taskId;
+        this.process = process;
+        this.reportPath = reportPath;
+    }
+
+    public static JmeterProcessSupervisor start(String taskId, ProcessBuilder processBuilder, Path reportPath) throws IOException {
+        Process process = processBuilder.start();
+        JmeterProcessSupervisor supervisor = new JmeterProcessSupervisor(taskId, process, reportPath);
+        SUPERVISORS.put(taskId, supervisor);
+        process.onExit().thenRun(() -> {
+            log.info("jmeter进程已退出，任务ID：{}，退出码：{}", taskId, process.exitValue());
+            // 清理环节未执行（如agent异常）时也不再持有已退出的进程，只移除本次启动的实例
+            SUPERVISORS.remove(taskId, supervisor);
+            supervisor.close();
+        });
+        supervisor.watchReport();
+        log.info("jmeter进程已启动，任务ID：{}，pid：{}", taskId, process.pid());
+        return supervisor;
+    }
+
+    public static JmeterProcessSupervisor get(String taskId) {
+        return SUPERVISORS.get(taskId);
+    }
+
+    // 清理环节调用，之后不再持有该任务的进程
+    public static JmeterProcessSupervisor release(String taskId) {
+        JmeterProcessSupervisor supervisor = SUPERVISORS.remove(taskId);
+        if (supervisor != null) {
+            supervisor.close();
+        }
+        return supervisor;
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    // jmeter输出“end of run”后压测及报告均已完成，宽限期后仍未退出则结束进程
+    public void markEndOfRun() {
+        if (endOfRun) {
+            return;
+        }
+        endOfRun = true;
+        SCHEDULER.schedule(() -> {
+            if (process.isAlive()) {
+                log.info("压测已结束但jmeter进程未退出，结束进程，任务ID：" + taskId);
+                this.killTree();
+            }
+        }, END_OF_RUN_GRACE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // 结束进程树并等待退出，清理环节需要在进程退出后移动目录
+    public void killTree() {
+        try {
+            this.killTreeAsync().get();
+        } catch (ExecutionException e) {
+            log.error("结束jmeter进程失败，任务ID：" + taskId, e);
+        } catch (InterruptedException e) {
+            Stream.concat(process.descendants(), Stream.of(process.toHandle())).forEach(ProcessHandle::destroyForcibly);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 先结束后代进程再结束jmeter启动脚本进程，立即返回，超时未退出时异步强制结束
+    public CompletableFuture<Void> killTreeAsync() {
+        List<ProcessHandle> handles = Stream.concat(process.descendants(), Stream.of(process.toHandle()))
+                .collect(Collectors.toList());
+        handles.forEach(ProcessHandle::destroy);
+        CompletableFuture<?>[] exits = handles.stream().map(ProcessHandle::onExit).toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(exits)
+                .orTimeout(DESTROY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(e -> {
+                    log.warn("jmeter进程未在{}秒内退出，强制结束，任务ID：{}", DESTROY_TIMEOUT_SECONDS, taskId);
+                    handles.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+                    return null;
+                });
+    }
+
+    // 进程树累计cpu时间，毫秒
+    public long cpuMillis() {
+        return Stream.concat(Stream.of(process.toHandle()), process.descendants())
+                .map(handle -> handle.info().totalCpuDuration().map(Duration::toMillis).orElse(0L))
+                .reduce(0L, Long::sum);
+    }
+
+    // 进程树常驻内存，字节，仅linux下可用
+    public long rssBytes() {
+        return Stream.concat(Stream.of(process.toHandle()), process.descendants())
+                .mapToLong(handle -> rss(handle.pid()))
+                .sum();
+    }
+
+    private static long rss(long pid) {
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(status, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // 进程已退出
+        }
+        return 0;
+    }
+
+    // 监听报告目录生成，防止未输出结束标志时进程一直驻留
+    private void watchReport() {
+        Path dir = reportPath.getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            log.error("监听报告目录失败，任务ID：" + taskId, e);
+            return;
+        }
+        Thread watcher = new Thread(() -> {
+            try {
+                while (process.isAlive()) {
+                    WatchKey key = watchService.take();
+                    boolean created = key.pollEvents().stream()
+                            .anyMatch(event -> reportPath.getFileName().equals(event.context()));
+                    key.reset();
+                    if (created) {
+                        SCHEDULER.schedule(() -> {
+                            if (process.isAlive()) {
+                                log.info("报告已生成但jmeter进程未退出，结束进程，任务ID：" + taskId);
+                                this.killTree();
+                            }
+                        }, REPORT_GRACE_SECONDS, TimeUnit.SECONDS);
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // 进程退出后关闭监听
+            }
+        }, taskId + "_reportWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.error("关闭报告目录监听失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jmeter.util.JMeterUtils;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 服务端jmeter属性的线程级上下文，JMeterUtils的属性只加载一次并替换为按线程区分的Properties
+ * 在上下文中执行时，读写的是基础属性的副本加上本次覆盖的属性，多个任务同时生成报告互不影响；上下文外读写基础属性
+ */
+@Slf4j
+public class JmeterPropertyContext {
+
+    private static final ThreadLocal<Properties> CONTEXT = new ThreadLocal<>();
+
+    private static volatile ContextProperties properties;
+
+    /**
+     * 加载jmeter.properties并安装线程级属性，重复调用只设置jmeter目录，不会覆盖已安装的属性
+     */
+    public static synchronized void load(String jmeterHome) {
+        JMeterUtils.setJMeterHome(jmeterHome);
+        if (properties != null) {
+            return;
+        }
+        JMeterUtils.loadJMeterProperties(Paths.get(jmeterHome, "/bin/jmeter.properties").toString());
+        ContextProperties contextProperties = new ContextProperties();
+        contextProperties.putAllBase(JMeterUtils.getJMeterProperties());
+        try {
+            Field field = JMeterUtils.class.getDeclaredField("appProperties");
+            field.setAccessible(true);
+            field.set(null, contextProperties);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("安装jmeter线程级属性失败", e);
+        }
+        properties = contextProperties;
+        log.info("jmeter属性加载完成，报告生成使用线程级属性");
+    }
+
+    /**
+     * 在独立的属性上下文中执行，overrides只对当前线程生效，执行结束后丢弃
+     */
+    public static <T> T call(Map<String, String> overrides, Callable<T> callable) throws Exception {
+        if (properties == null) {
+            throw new IllegalStateException("jmeter属性未加载");
+        }
+        if (CONTEXT.get() != null) {
+            throw new IllegalStateException("不支持嵌套的jmeter属性上下文");
+        }
+        Properties context = properties.snapshot();
+        context.putAll(overrides);
+        CONTEXT.set(context);
+        try {
+            return callable.call();
+        } finally {
+            CONTEXT.remove();
+        }
+    }
+
+    /**
+     * 根据当前线程是否在上下文中，读写上下文副本或基础属性
+     * Properties自身的表始终为空，Map、Hashtable和Properties的公开方法都要转发，漏掉的方法会读写到空表
+     */
+    private static class ContextProperties extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        // 与JMeterUtils加载时一致，以系统属性作为默认值
+        private final Properties base = new Properties(System.getProperties());
+
+        // 转发的方法由副本或基础属性自身保证线程安全，只有整体读写基础属性时在此加锁
+        synchronized void putAllBase(Properties source) {
+            base.putAll(source);
+        }
+
+        synchronized Properties snapshot() {
+            Properties copy = new Properties(System.getProperties());
+            copy.putAll(base);
+            return copy;
+        }
+
+        private Properties current() {
+            Properties context = CONTEXT.get();
+            return context != null ? context : base;
+        }
+
+        @Override
+        public String getProperty(String key) {
+            return current().getProperty(key);
+        }
+
+        @Override
+        public String getProperty(String key, String defaultValue) {
+            return current().getProperty(key, defaultValue);
+        }
+
+        @Override
+        public Object setProperty(String key, String value) {
+            return current().setProperty(key, value);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return current().get(key);
+        }
+
+        @Override
+        public Object getOrDefault(Object key, Object defaultValue) {
+            return current().getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            return current().put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<?, ?> t) {
+            current().putAll(t);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return current().remove(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return current().containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return current().containsValue(value);
+        }
+
+        @Override
+        public int size() {
+            return current().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return current().isEmpty();
+        }
+
+        @Override
+        public Set<Object> keySet() {
+            return current().keySet();
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return current().entrySet();
+        }
+
+        @Override
+        public Collection<Object> values() {
+            return current().values();
+        }
+
+        @Override
+        public Enumeration<Object> keys() {
+            return current().keys();
+        }
+
+        @Override
+        public Enumeration<Object> elements() {
+            return current().elements();
+        }
+
+        @Override
+        public Enumeration<?> propertyNames() {
+            return current().propertyNames();
+        }
+
+        @Override
+        public Set<String> stringPropertyNames() {
+            return current().stringPropertyNames();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super Object, ? super Object> action) {
+            current().forEach(action);
+        }
+
+        @Override
+        public void load(InputStream inStream) throws IOException {
+            current().load(inStream);
+        }
+
+        @Override
+        public void load(Reader reader) throws IOException {
+            current().load(reader);
+        }
+
+        @Override
+        public void list(PrintStream out) {
+            current().list(out);
+        }
+
+        @Override
+        public String toString() {
+            return current().toString();
+        }
+
+        @Override
+        public Object putIfAbsent(Object key, Object value) {
+            return current().putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return current().remove(key, value);
+        }
+
+        @Override
+        public boolean replace(Object key, Object oldValue, Object newValue) {
+            return current().replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public Object replace(Object key, Object value) {
+            return current().replace(key, value);
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+            current().replaceAll(function);
+        }
+
+        @Override
+        public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+            return current().computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            return current().computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            return current().compute(key, remappingFunction);
+        }
+
+        @Override
+        public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            return current().merge(key, value, remappingFunction);
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return current().contains(value);
+        }
+
+        @Override
+        public void clear() {
+            current().clear();
+        }
+
+        // 复制当前线程看到的属性，副本不再跟随上下文切换
+        @Override
+        public Object clone() {
+            return current().clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || current().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return current().hashCode();
+        }
+
+        @Override
+        public void loadFromXML(InputStream in) throws IOException {
+            current().loadFromXML(in);
+        }
+
+        @Override
+        public void store(Writer writer, String comments) throws IOException {
+            current().store(writer, comments);
+        }
+
+        @Override
+        public void store(OutputStream out, String comments) throws IOException {
+            current().store(out, comments);
+        }
+
+        @Override
+        public void storeToXML(OutputStream os, String comment) throws IOException {
+            current().storeToXML(os, comment);
+        }
+
+        @Override
+        public void storeToXML(OutputStream os, String comment, String encoding) throws IOException {
+            current().storeToXML(os, comment, encoding);
+        }
+
+        @Override
+        public void storeToXML(OutputStream os, String comment, Charset charset) throws IOException {
+            current().storeToXML(os, comment, charset);
+        }
+
+        @Override
+        public void list(PrintWriter out) {
+            current().list(out);
+        }
+    }
+}
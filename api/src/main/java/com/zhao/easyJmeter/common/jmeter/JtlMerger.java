@@ -0,0 +1,297 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * jtl文件合并，只保留一个表头，不调用外部命令也不改写源文件
+ */
+@Slf4j
+public class JtlMerger {
+
+    private static final int BUFFER_SIZE = 1024 * 256;
+
+    // ISO-8859-1 与字节一一对应，读写时不会改变原始内容
+    private static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+    private static final String TIMESTAMP_COLUMN = "timeStamp";
+
+    private final List<String> sources;
+
+    // 每个agent按序号排列的gzip分段，不为空时代替sources
+    private final List<List<String>> segments;
+
+    private final String target;
+
+    private final boolean ordered;
+
+    // 归并时引号内的换行是否属于同一条记录
+    private final boolean multiline;
+
+    public JtlMerger(List<String> sources, String target, boolean ordered, boolean multiline) {
+        this(sources, null, target, ordered, multiline);
+    }
+
+    private JtlMerger(List<String> sources, List<List<String>> segments, String target, boolean ordered, boolean multiline) {
+        this.sources = sources;
+        this.segments = segments;
+        this.target = target;
+        this.ordered = ordered;
+        this.multiline = multiline;
+    }
+
+    public static JtlMerger ofSegments(List<List<String>> segments, String target, boolean ordered, boolean multiline) {
+        return new JtlMerger(null, segments, target, ordered, multiline);
+    }
+
+    public long merge() throws IOException {
+        long start = System.currentTimeMillis();
+        if (ordered && orderedMerge()) {
+            log.info("jtl按时间戳归并完成");
+        } else if (segments != null) {
+            concatSegments();
+        } else {
+            concat();
+        }
+        long bytes = Files.size(Paths.get(target));
+        long cost = Math.max(System.currentTimeMillis() - start, 1);
+        log.info("合并jtl完成，文件数：{}，大小：{}字节，耗时：{}ms，吞吐：{}MB/s", size(), bytes, cost,
+                String.format("%.2f", bytes / 1024.0 / 1024.0 / (cost / 1000.0)));
+        return bytes;
+    }
+
+    // 顺序拼接：第一个文件整体写入，其余文件跳过首行后直接通过通道传输
+    private void concat() throws IOException {
+        try (FileChannel out = FileChannel.open(Paths.get(target), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            boolean headerWritten = false;
+            for (String source : sources) {
+                try (FileChannel in = FileChannel.open(Paths.get(source), READ)) {
+                    long size = in.size();
+                    if (size == 0) {
+                        continue;
+                    }
+                    long position = headerWritten ? headerLength(in) : 0;
+                    transfer(in, position, size - position, out);
+                    headerWritten = true;
+                    // 源文件末尾没有换行时补一个，避免与下一个文件的首条记录粘连
+                    if (size > position && lastByte(in) != '\n') {
+                        out.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                    }
+                }
+            }
+        }
+    }
+
+    // 分段拼接：逐个解压分段顺序写出，除第一个agent外跳过表头
+    private void concatSegments() throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(target)), BUFFER_SIZE)) {
+            boolean headerWritten = false;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (List<String> agentSegments : segments) {
+                try (InputStream in = new BufferedInputStream(openSegments(agentSegments), BUFFER_SIZE)) {
+                    if (headerWritten) {
+                        int b;
+                        while ((b = in.read()) != -1 && b != '\n') {
+                            // 跳过表头
+                        }
+                    }
+                    boolean written = false;
+                    byte last = '\n';
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (read > 0) {
+                            out.write(buffer, 0, read);
+                            last = buffer[read - 1];
+                            written = true;
+                        }
+                    }
+                    if (written) {
+                        headerWritten = true;
+                        if (last != '\n') {
+                            out.write('\n');
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // 多路归并：按timeStamp列输出，表头中找不到该列时返回false，由调用方退化为顺序拼接
+    private boolean orderedMerge() throws IOException {
+        List<JtlCursor> cursors = new ArrayList<>();
+        try {
+            String header = null;
+            for (int i = 0; i < size(); i++) {
+                JtlRecordReader reader = segments != null
+                        ? new JtlRecordReader(openSegments(segments.get(i)), CHARSET, multiline)
+                        : new JtlRecordReader(Paths.get(sources.get(i)), CHARSET, multiline);
+                JtlCursor cursor = new JtlCursor(i, reader);
+                cursors.add(cursor);
+                String firstLine = cursor.getReader().readRecord();
+                if (header == null && firstLine != null) {
+                    header = firstLine;
+                }
+            }
+            if (header == null) {
+                return false;
+            }
+            int column = JtlRecordReader.columnIndex(header, TIMESTAMP_COLUMN);
+            if (column < 0) {
+                log.warn("jtl表头中没有timeStamp列，按文件顺序合并");
+                return false;
+            }
+
+            PriorityQueue<JtlCursor> queue = new PriorityQueue<>(
+                    Comparator.comparingLong(JtlCursor::getTimestamp).thenComparingInt(JtlCursor::getIndex));
+            for (JtlCursor cursor : cursors) {
+                if (cursor.advance(column)) {
+                    queue.add(cursor);
+                }
+            }
+            try (BufferedWriter writer = new BufferedWriter(
+                    Channels.newWriter(FileChannel.open(Paths.get(target), CREATE, TRUNCATE_EXISTING, WRITE), CHARSET.newEncoder(), -1), BUFFER_SIZE)) {
+                writer.write(header);
+                writer.write('\n');
+                while (!queue.isEmpty()) {
+                    JtlCursor cursor = queue.poll();
+                    writer.write(cursor.getRecord());
+                    writer.write('\n');
+                    if (cursor.advance(column)) {
+                        queue.add(cursor);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            for (JtlCursor cursor : cursors) {
+                try {
+                    cursor.getReader().close();
+                } catch (IOException e) {
+                    log.error("关闭jtl文件失败", e);
+                }
+            }
+        }
+    }
+
+    private int size() {
+        return segments != null ? segments.size() : sources.size();
+    }
+
+    private static InputStream openSegments(List<String> paths) {
+        Iterator<String> iterator = paths.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return new GZIPInputStream(new FileInputStream(iterator.next()), BUFFER_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private static long headerLength(FileChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = 0;
+        long size = in.size();
+        while (position < size) {
+            buffer.clear();
+            int read = in.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long transferred = in.transferTo(position, count, out);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static byte lastByte(FileChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        in.read(buffer, in.size() - 1);
+        return buffer.get(0);
+    }
+
+    private static class JtlCursor {
+
+        private final int index;
+
+        private final JtlRecordReader reader;
+
+        private String record;
+
+        private long timestamp = Long.MIN_VALUE;
+
+        JtlCursor(int index, JtlRecordReader reader) {
+            this.index = index;
+            this.reader = reader;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        JtlRecordReader getReader() {
+            return reader;
+        }
+
+        String getRecord() {
+            return record;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        boolean advance(int column) throws IOException {
+            do {
+                record = reader.readRecord();
+            } while (record != null && record.isEmpty());
+            if (record == null) {
+                return false;
+            }
+            String value = JtlRecordReader.field(record, column);
+            if (value != null) {
+                try {
+                    timestamp = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    // 无法解析时沿用上一条记录的时间戳，保持该文件内的原有顺序
+                }
+            }
+            return true;
+        }
+    }
+}
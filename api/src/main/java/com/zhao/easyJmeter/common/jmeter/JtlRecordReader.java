@@ -0,0 +1,138 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * 按记录读取csv格式的jtl文件，引号内的逗号属于同一字段
+ * 默认一行一条记录；multiline为true时(jmeter.multiline-records)引号未闭合的行与后续行拼接为一条记录
+ */
+public class JtlRecordReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 256;
+
+    private final BufferedReader reader;
+
+    private final boolean multiline;
+
+    public JtlRecordReader(Path path, Charset charset, boolean multiline) throws IOException {
+        this.multiline = multiline;
+        this.reader = new BufferedReader(Channels.newReader(FileChannel.open(path, READ),
+                charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), BUFFER_SIZE);
+    }
+
+    public JtlRecordReader(InputStream inputStream, Charset charset, boolean multiline) {
+        this.multiline = multiline;
+        this.reader = new BufferedReader(new InputStreamReader(inputStream,
+                charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)), BUFFER_SIZE);
+    }
+
+    public String readRecord() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        if (!this.multiline || quotes(line) % 2 == 0) {
+            return line;
+        }
+        StringBuilder builder = new StringBuilder(line);
+        int quotes = quotes(line);
+        String next;
+        while (quotes % 2 != 0 && (next = reader.readLine()) != null) {
+            builder.append('\n').append(next);
+            quotes += quotes(next);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    public static List<String> split(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // 取第column列的原始值，不做反转义
+    public static String field(String record, int column) {
+        int current = 0;
+        int begin = 0;
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                if (current == column) {
+                    return record.substring(begin, i);
+                }
+                current++;
+                begin = i + 1;
+            }
+        }
+        return current == column ? record.substring(begin) : null;
+    }
+
+    public static int columnIndex(String header, String name) {
+        List<String> columns = split(header);
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).trim().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int quotes(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
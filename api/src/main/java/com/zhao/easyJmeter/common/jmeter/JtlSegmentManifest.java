@@ -0,0 +1,75 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.service.JFileService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * 任务的jtl分段清单：按agent地址分组，组内按序号排列，合并前校验序号连续
+ */
+@Slf4j
+public class JtlSegmentManifest {
+
+    private final String taskId;
+
+    // agent地址 -> 序号 -> 分段文件
+    private final Map<String, TreeMap<Integer, JFileDO>> segments = new TreeMap<>();
+
+    public JtlSegmentManifest(String taskId, List<JFileDO> files) {
+        this.taskId = taskId;
+        String suffix = "." + JtlSegmentUploader.EXTENSION;
+        for (JFileDO file : files) {
+            String name = file.getName();
+            int index = name.lastIndexOf('_');
+            if (index < 0 || !name.endsWith(suffix)) {
+                log.warn("无法识别的jtl分段文件：" + name);
+                continue;
+            }
+            String address = name.substring(0, index);
+            int seq;
+            try {
+                seq = Integer.parseInt(name.substring(index + 1, name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                log.warn("无法识别的jtl分段文件：" + name);
+                continue;
+            }
+            // 重试上传可能产生同序号的记录，保留id最大即最后上传的一次
+            segments.computeIfAbsent(address, k -> new TreeMap<>()).merge(seq, file,
+                    (old, current) -> current.getId() > old.getId() ? current : old);
+        }
+    }
+
+    public static JtlSegmentManifest of(String taskId, JFileService jFileService) {
+        return new JtlSegmentManifest(taskId, jFileService.searchFileByTaskId(taskId, JtlSegmentUploader.EXTENSION));
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    public void validate() {
+        for (Map.Entry<String, TreeMap<Integer, JFileDO>> entry : segments.entrySet()) {
+            TreeMap<Integer, JFileDO> series = entry.getValue();
+            if (series.firstKey() != 0 || series.lastKey() != series.size() - 1) {
+                throw new RuntimeException("jtl分段不连续，任务ID：" + taskId + "，节点：" + entry.getKey() + "，序号：" + series.keySet());
+            }
+        }
+    }
+
+    // 下载全部分段，返回每个agent按序号排列的本地路径
+    public List<List<String>> download(JFileService jFileService) {
+        this.validate();
+        List<List<String>> paths = new ArrayList<>();
+        for (TreeMap<Integer, JFileDO> series : segments.values()) {
+            List<String> agentPaths = new ArrayList<>();
+            for (JFileDO file : series.values()) {
+                agentPaths.add(jFileService.downloadFile(file.getId(), null));
+            }
+            paths.add(agentPaths);
+        }
+        log.info("下载jtl分段完成，任务ID：{}，节点数：{}", taskId, segments.size());
+        return paths;
+    }
+}
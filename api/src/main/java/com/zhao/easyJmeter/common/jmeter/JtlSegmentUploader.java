@@ -0,0 +1,202 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.service.JFileService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * 压测过程中持续读取result.jtl，按固定大小、行对齐切成gzip分段上传，收集环节只需上传剩余部分
+ * 上传进度记录在tmp/segments/state中，运行环节与收集环节通过该文件交接
+ */
+@Slf4j
+public class JtlSegmentUploader {
+
+    public static final String EXTENSION = "jtlseg";
+
+    private static final int BUFFER_SIZE = 1024 * 256;
+
+    private final Path jtlPath;
+
+    private final Path segmentDir;
+
+    private final Path statePath;
+
+    private final String taskId;
+
+    private final String address;
+
+    private final JFileService jFileService;
+
+    private final long segmentSize;
+
+    private ScheduledExecutorService executor;
+
+    // 已上传到的jtl字节位置
+    private long offset;
+
+    // 下一个分段序号
+    private int seq;
+
+    public JtlSegmentUploader(String jmeterPath, String taskId, String address, JFileService jFileService, long segmentSize) {
+        this.jtlPath = Paths.get(jmeterPath, "tmp", "result.jtl");
+        this.segmentDir = Paths.get(jmeterPath, "tmp", "segments");
+        this.statePath = segmentDir.resolve("state");
+        this.taskId = taskId;
+        this.address = address;
+        this.jFileService = jFileService;
+        this.segmentSize = segmentSize;
+    }
+
+    public void start(long intervalSeconds) {
+        this.loadState();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, taskId + "_jtlSegment"));
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                this.upload(false);
+            } catch (Exception e) {
+                // 本轮上传失败不推进位置，下一轮重试
+                log.error("jtl分段上传失败，任务ID：" + taskId, e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        log.info("开始分段上传jtl，任务ID：{}，分段大小：{}字节", taskId, segmentSize);
+    }
+
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 上传剩余部分，包括不足一个分段的尾部
+    public int finish() throws IOException {
+        this.loadState();
+        this.upload(true);
+        log.info("jtl分段上传完成，任务ID：{}，分段数：{}，总大小：{}字节", taskId, seq, offset);
+        return seq;
+    }
+
+    private synchronized void upload(boolean last) throws IOException {
+        if (!Files.exists(jtlPath)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(jtlPath, READ)) {
+            long size = in.size();
+            while (size - offset >= segmentSize || (last && size > offset)) {
+                long length = Math.min(segmentSize, size - offset);
+                if (!last || length == segmentSize) {
+                    // 切在最后一个换行处，未写完的行留给下一个分段
+                    long lineEnd = lastLineEnd(in, offset, length);
+                    if (lineEnd > 0) {
+                        length = lineEnd;
+                    } else if (!last) {
+                        break;
+                    }
+                }
+                Path segment = this.writeSegment(in, offset, length);
+                JFileDO file = jFileService.createFile(segment.toString());
+                file.setTaskId(taskId);
+                jFileService.updateById(file);
+                Files.deleteIfExists(segment);
+                offset += length;
+                seq++;
+                this.saveState();
+            }
+        }
+    }
+
+    private Path writeSegment(FileChannel in, long position, long length) throws IOException {
+        Files.createDirectories(segmentDir);
+        Path segment = segmentDir.resolve(segmentName(address, seq));
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(segment.toFile()), BUFFER_SIZE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long end = position + length;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = in.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                out.write(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+        return segment;
+    }
+
+    // 返回[offset, offset+length)内最后一个换行之后的相对长度，没有换行时返回0
+    private static long lastLineEnd(FileChannel in, long offset, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = offset + length;
+        while (end > offset) {
+            long begin = Math.max(offset, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - begin));
+            int read = in.read(buffer, begin);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = read - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return begin + i + 1 - offset;
+                }
+            }
+            end = begin;
+        }
+        return 0;
+    }
+
+    private void loadState() {
+        offset = 0;
+        seq = 0;
+        if (!Files.exists(statePath)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(statePath, StandardCharsets.UTF_8);
+            String[] state = lines.isEmpty() ? new String[0] : lines.get(0).split(",");
+            if (state.length == 3 && state[0].equals(taskId)) {
+                offset = Long.parseLong(state[1]);
+                seq = Integer.parseInt(state[2]);
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("读取jtl分段上传进度失败", e);
+        }
+    }
+
+    private void saveState() throws IOException {
+        Files.createDirectories(segmentDir);
+        Path tmp = segmentDir.resolve("state.tmp");
+        Files.write(tmp, (taskId + "," + offset + "," + seq).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String segmentName(String address, int seq) {
+        return address + "_" + seq + "." + EXTENSION;
+    }
+}
@@ -7,10 +7,14 @@ public interface LinkStrategy {
 
     void setTask(TaskDO taskDO);
 
+    /**
+     * 执行环节，由AgentPhaseExecutor在环节线程池中调用
+     * 返回true时由执行器上报完成，返回false表示环节交由服务端继续处理(如切分文件)，不上报
+     */
+    Boolean execute(AgentPhaseExecutor.CancellationToken token) throws Exception;
+
     Boolean reportSuccess() throws JsonProcessingException;
 
     Boolean reportFail();
 
-    Boolean interruptThread();
-
 }
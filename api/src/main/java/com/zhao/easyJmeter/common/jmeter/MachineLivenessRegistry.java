@@ -0,0 +1,258 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.dto.machine.HeartBeatMachineDTO;
+import com.zhao.easyJmeter.model.MachineDO;
+import com.zhao.easyJmeter.service.MachineService;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压力机存活登记处，按客户端会话记录最后心跳时间、版本和在线状态，同时记录压力机的jmeter状态
+ * 心跳只更新内存，上下线、版本和路径变化时才记为待写入，按jmeter.machine-flush-interval批量写入数据库
+ * 心跳超时由时间轮检测，超过jmeter.heartbeat-timeout没有心跳的会话标记为离线；创建任务时从这里判断压力机是否可用
+ */
+@Slf4j
+@Component
+public class MachineLivenessRegistry {
+
+    @Autowired
+    private MachineService machineService;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    // 客户端会话 -> 存活信息
+    private final Map<String, Liveness> sessions = new ConcurrentHashMap<>();
+
+    // 压力机id -> 当前会话，压力机重连后旧会话的断开和超时不影响新会话
+    private final Map<Integer, Liveness> machines = new HashMap<>();
+
+    // 压力机id -> jmeter状态
+    private final Map<Integer, JmeterStatusEnum> jmeterStatuses = new HashMap<>();
+
+    // 待写入的上线信息和下线压力机
+    private final Map<Integer, MachineDO> dirtyOnline = new HashMap<>();
+
+    private final Set<Integer> dirtyOffline = new HashSet<>();
+
+    private HashedWheelTimer timer;
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        this.timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "heartbeatTimeout");
+            thread.setDaemon(true);
+            return thread;
+        }, 1, TimeUnit.SECONDS);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "machineLivenessFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = jmeterProperties.getMachineFlushInterval();
+        this.flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.timer.stop();
+        this.flusher.shutdown();
+        this.flush();
+    }
+
+    /**
+     * 收到心跳，会话第一次心跳时按地址查找压力机；地址未在web端维护时忽略
+     * 返回true表示压力机的新会话第一次登记(服务重启或agent重连)
+     */
+    public boolean heartBeat(String clientId, HeartBeatMachineDTO heartBeatMachineDTO) {
+        Liveness liveness = sessions.get(clientId);
+        MachineDO machineDO = null;
+        if (liveness == null) {
+            machineDO = machineService.getByAddress(heartBeatMachineDTO.getAddress());
+            if (machineDO == null) {
+                log.info("压力机地址未在web端维护：" + heartBeatMachineDTO.getAddress());
+                return false;
+            }
+        }
+        boolean registered = false;
+        synchronized (this) {
+            if (liveness == null) {
+                liveness = sessions.computeIfAbsent(clientId, k -> new Liveness(clientId));
+            }
+            if (liveness.machineId == null) {
+                liveness.machineId = machineDO.getId();
+                Liveness previous = machines.put(liveness.machineId, liveness);
+                if (previous != null && previous != liveness) {
+                    sessions.remove(previous.clientId, previous);
+                    previous.cancelTimeout();
+                }
+                jmeterStatuses.putIfAbsent(liveness.machineId, Optional.ofNullable(machineDO.getJmeterStatus()).orElse(JmeterStatusEnum.IDLE));
+                registered = true;
+            }
+            liveness.lastSeen = System.currentTimeMillis();
+            boolean online = Boolean.TRUE.equals(heartBeatMachineDTO.getIsOnline());
+            if (liveness.online != online || !Objects.equals(liveness.path, heartBeatMachineDTO.getPath())
+                    || !Objects.equals(liveness.version, heartBeatMachineDTO.getVersion())) {
+                liveness.online = online;
+                liveness.path = heartBeatMachineDTO.getPath();
+                liveness.version = heartBeatMachineDTO.getVersion();
+                dirtyOffline.remove(liveness.machineId);
+                dirtyOnline.put(liveness.machineId, liveness.toMachineDO());
+            }
+            liveness.cancelTimeout();
+            Liveness current = liveness;
+            liveness.timeout = timer.newTimeout(t -> this.expire(current), jmeterProperties.getHeartbeatTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return registered;
+    }
+
+    /**
+     * 客户端断开，是压力机会话时标记为离线并返回true
+     */
+    public synchronized boolean disconnect(String clientId) {
+        Liveness liveness = sessions.remove(clientId);
+        if (liveness == null) {
+            return false;
+        }
+        liveness.cancelTimeout();
+        this.offline(liveness);
+        return true;
+    }
+
+    /**
+     * 任务环节变化时同步压力机的jmeter状态
+     */
+    public synchronized void updateJmeterStatus(Integer machineId, JmeterStatusEnum status) {
+        jmeterStatuses.put(machineId, status);
+    }
+
+    /**
+     * 在线且空闲的压力机id，按id排序
+     */
+    public synchronized List<Integer> executable() {
+        List<Integer> ids = new ArrayList<>();
+        for (Integer machineId : machines.keySet()) {
+            if (this.isExecutable(machineId)) {
+                ids.add(machineId);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    public synchronized boolean isExecutable(Integer machineId) {
+        Liveness liveness = machines.get(machineId);
+        return liveness != null && liveness.online && jmeterStatuses.get(machineId) == JmeterStatusEnum.IDLE;
+    }
+
+    /**
+     * 压力机当前的客户端会话，离线时返回null
+     */
+    public synchronized String clientId(Integer machineId) {
+        Liveness liveness = machines.get(machineId);
+        return liveness == null ? null : liveness.clientId;
+    }
+
+    private synchronized void expire(Liveness liveness) {
+        if (sessions.get(liveness.clientId) != liveness
+                || System.currentTimeMillis() - liveness.lastSeen < jmeterProperties.getHeartbeatTimeout()) {
+            return;
+        }
+        sessions.remove(liveness.clientId);
+        this.offline(liveness);
+        log.info("压力机心跳超时，标记为离线：" + liveness.clientId);
+    }
+
+    // 在锁内执行，会话已被新会话替换时不处理
+    private void offline(Liveness liveness) {
+        if (liveness.machineId == null || !machines.remove(liveness.machineId, liveness)) {
+            return;
+        }
+        jmeterStatuses.put(liveness.machineId, JmeterStatusEnum.IDLE);
+        dirtyOnline.remove(liveness.machineId);
+        dirtyOffline.add(liveness.machineId);
+    }
+
+    // 锁外写入数据库，写入失败时没有被更新的变化放回，下次重试
+    private void flush() {
+        List<MachineDO> online;
+        List<Integer> offline;
+        synchronized (this) {
+            if (dirtyOnline.isEmpty() && dirtyOffline.isEmpty()) {
+                return;
+            }
+            online = new ArrayList<>(dirtyOnline.values());
+            offline = new ArrayList<>(dirtyOffline);
+            dirtyOnline.clear();
+            dirtyOffline.clear();
+        }
+        try {
+            machineService.updateMachineLiveness(online);
+            machineService.setMachineOffline(offline);
+        } catch (Exception e) {
+            log.error("写入压力机在线状态失败", e);
+            synchronized (this) {
+                for (MachineDO machineDO : online) {
+                    if (!dirtyOffline.contains(machineDO.getId())) {
+                        dirtyOnline.putIfAbsent(machineDO.getId(), machineDO);
+                    }
+                }
+                for (Integer machineId : offline) {
+                    if (!dirtyOnline.containsKey(machineId)) {
+                        dirtyOffline.add(machineId);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Liveness {
+
+        private final String clientId;
+
+        private Integer machineId;
+
+        private String path;
+
+        private String version;
+
+        private boolean online;
+
+        private volatile long lastSeen;
+
+        private Timeout timeout;
+
+        Liveness(String clientId) {
+            this.clientId = clientId;
+        }
+
+        void cancelTimeout() {
+            if (this.timeout != null) {
+                this.timeout.cancel();
+                this.timeout = null;
+            }
+        }
+
+        // 只带心跳相关字段，jmeter状态为空不会被更新
+        MachineDO toMachineDO() {
+            MachineDO machineDO = MachineDO.builder().path(this.path).version(this.version).isOnline(this.online).clientId(this.clientId).build();
+            machineDO.setId(this.machineId);
+            return machineDO;
+        }
+    }
+}
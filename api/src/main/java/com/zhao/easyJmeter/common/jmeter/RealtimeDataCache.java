@@ -0,0 +1,424 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.zhao.easyJmeter.common.jmeter.metrics.RealtimeBatch;
+import com.zhao.easyJmeter.common.jmeter.metrics.RealtimeMetricsBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务实时数据缓存，按任务保存已获取的时间桶，每次只从指标存储增量获取尚未稳定的数据
+ * 一次合并查询同时刷新事件、吞吐量、错误和错误信息，各类型的实时数据都从同一份缓存生成
+ */
+@Slf4j
+@Component
+public class RealtimeDataCache {
+
+    // 实时图表最多返回的点数，超过时自动放大时间粒度
+    public static final int MAX_POINTS = 360;
+
+    public static final long[] STEPS = {5, 10, 15, 30, 60, 120, 300, 600, 1800, 3600};
+
+    // 距当前时间在此范围内的数据可能仍在写入，每次刷新重新获取
+    private static final long SETTLE_MS = 15000;
+
+    // 同一任务两次查询指标存储的最小间隔，期间的请求直接使用缓存数据
+    private static final long REFRESH_INTERVAL_MS = 2000;
+
+    private static final ZoneOffset OFFSET = ZoneOffset.ofHours(8);
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+
+    private static final DateTimeFormatter NEW_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Autowired
+    private RealtimeMetricsBackend metricsBackend;
+
+    @Autowired
+    private Cache<String, Object> caffeineCache;
+
+    // 有页面订阅推送的任务
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+    public Map<String, Object> times(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return times(task);
+        }
+    }
+
+    public Map<String, Object> sampleCounts(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return sampleCounts(task);
+        }
+    }
+
+    public Map<String, Object> throughputGraph(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return throughputGraph(task, Long.MIN_VALUE);
+        }
+    }
+
+    public Map<String, Object> errorGraph(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return errorGraph(task, Long.MIN_VALUE);
+        }
+    }
+
+    public Map<String, Object> errorInfo(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return errorInfo(task);
+        }
+    }
+
+    public static String room(String taskId) {
+        return "realtime:" + taskId;
+    }
+
+    public void subscribe(String taskId) {
+        subscriptions.add(taskId);
+    }
+
+    public void unsubscribe(String taskId) {
+        subscriptions.remove(taskId);
+    }
+
+    public Set<String> subscriptions() {
+        return subscriptions;
+    }
+
+    // 加入房间时下发的全量数据
+    public Map<String, Object> snapshot(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            return payload(task, true);
+        }
+    }
+
+    /**
+     * 上次推送以来的变化：只包含重新获取过的时间桶对应的点，计数和错误信息体积小，整体下发
+     * 粒度变化后时间点全部改变，此时下发全量；没有变化时返回null
+     */
+    public Map<String, Object> delta(String taskId) {
+        TaskRealtime task = this.refresh(taskId);
+        synchronized (task) {
+            if (task.startMs < 0 || (!task.changed && !task.full)) {
+                return null;
+            }
+            Map<String, Object> payload = payload(task, task.full);
+            task.changed = false;
+            task.full = false;
+            task.changedFrom = Long.MAX_VALUE;
+            return payload;
+        }
+    }
+
+    // 推送的时间统一转为字符串，不依赖socket序列化对java.time的支持
+    private static Map<String, Object> payload(TaskRealtime task, boolean full) {
+        long since = full ? Long.MIN_VALUE : task.changedFrom;
+        Map<String, Object> times = new HashMap<>(times(task));
+        times.remove("points");
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("taskId", task.taskId);
+        payload.put("full", full);
+        if (!full) {
+            // 页面丢弃晚于该时间的点后拼接推送的点
+            payload.put("from", OffsetDateTime.ofInstant(Instant.ofEpochMilli(since), OFFSET).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        }
+        payload.put("times", times);
+        payload.put("count", sampleCounts(task));
+        payload.put("throughput", wire(throughputGraph(task, since)));
+        payload.put("error", wire(errorGraph(task, since)));
+        payload.put("errorInfo", errorInfo(task));
+        return payload;
+    }
+
+    private static Map<String, Object> wire(Map<String, Object> graph) {
+        Map<String, Object> map = new HashMap<>();
+        graph.forEach((key, data) -> {
+            List<Object> points = new ArrayList<>();
+            for (Object item : (List<?>) data) {
+                List<?> point = (List<?>) item;
+                points.add(List.of(((OffsetDateTime) point.get(0)).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME), point.get(1)));
+            }
+            map.put(key, points);
+        });
+        return map;
+    }
+
+    private static Map<String, Object> times(TaskRealtime task) {
+        if (task.startMs < 0) {
+            return Map.of("startTime", "", "endTime", "", "start", "", "end", "");
+        }
+        OffsetDateTime startTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(task.startMs), OFFSET);
+        OffsetDateTime endTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(task.endMs()), OFFSET);
+        return Map.of("startTime", startTime.format(FORMATTER), "endTime", endTime.format(FORMATTER), "points", task.points(),
+                "start", startTime.format(NEW_FORMATTER), "end", endTime.format(NEW_FORMATTER));
+    }
+
+    private static Map<String, Object> sampleCounts(TaskRealtime task) {
+        if (task.startMs < 0) {
+            return Map.of("count", 0, "countError", 0);
+        }
+        Map<String, Double> countMap = new HashMap<>();
+        task.throughput.forEach((transaction, buckets) -> countMap.put(transaction, sum(buckets)));
+        Map<String, Double> errorCountMap = new HashMap<>();
+        task.errors.forEach((transaction, buckets) -> errorCountMap.put(transaction, sum(buckets)));
+        if (!task.errorAll.isEmpty()) {
+            errorCountMap.put("all", sum(task.errorAll));
+        }
+        return Map.of("count", countMap, "countError", errorCountMap);
+    }
+
+    private static Map<String, Object> throughputGraph(TaskRealtime task, long since) {
+        Map<String, Object> map = new HashMap<>();
+        if (task.startMs < 0) {
+            return map;
+        }
+        List<OffsetDateTime> points = task.points(since);
+        task.throughput.forEach((transaction, buckets) -> map.put(transaction, series(buckets, points, task.step, true)));
+        return map;
+    }
+
+    private static Map<String, Object> errorGraph(TaskRealtime task, long since) {
+        Map<String, Object> map = new HashMap<>();
+        if (task.startMs < 0) {
+            return map;
+        }
+        List<OffsetDateTime> points = task.points(since);
+        task.errors.forEach((transaction, buckets) -> map.put(transaction, series(buckets, points, task.step, false)));
+        if (!task.errorAll.isEmpty()) {
+            map.put("all", series(task.errorAll, points, task.step, false));
+        }
+        return map;
+    }
+
+    private static Map<String, Object> errorInfo(TaskRealtime task) {
+        Map<String, Map<List<String>, Long>> merged = new TreeMap<>();
+        for (Map<String, Map<List<String>, Long>> source : List.of(task.errorInfo, task.errorInfoTail)) {
+            source.forEach((transaction, codes) -> codes.forEach((code, count) ->
+                    merged.computeIfAbsent(transaction, k -> new HashMap<>()).merge(code, count, Long::sum)));
+        }
+        Map<String, Object> map = new HashMap<>();
+        if (merged.isEmpty()) {
+            return map;
+        }
+        List<Object> count = new ArrayList<>();
+        List<Object> transactionList = new ArrayList<>();
+        merged.forEach((transaction, codes) -> {
+            List<Object> infoResult = new ArrayList<>();
+            long sum = 0;
+            for (Map.Entry<List<String>, Long> entry : codes.entrySet()) {
+                infoResult.add(Map.of("responseCode", entry.getKey().get(0), "responseMessage", entry.getKey().get(1), "count", entry.getValue()));
+                sum += entry.getValue();
+            }
+            count.add(Map.of("transaction", transaction, "sum", sum));
+            transactionList.add(Map.of("transaction", transaction, "count", infoResult));
+        });
+        map.put("count", count);
+        map.put("transaction", transactionList);
+        return map;
+    }
+
+    // 任务进入终态后清除，之后的请求重新完整获取一次，保证包含最后写入的数据
+    public void evict(String taskId) {
+        caffeineCache.invalidate(key(taskId));
+    }
+
+    // 时间粒度（秒），保证点数不超过MAX_POINTS
+    public static long resolution(long startMs, long endMs) {
+        long range = Math.max(0, endMs - startMs) / 1000;
+        for (long step : STEPS) {
+            if (range / step <= MAX_POINTS) {
+                return step;
+            }
+        }
+        return STEPS[STEPS.length - 1];
+    }
+
+    /**
+     * 把以开始时间为键的时间桶映射到图表时间点，一次线性遍历
+     * 每个时间点取以它结束（结束时间取所在）的时间桶，rate为true时按桶的实际时长换算为每秒值
+     */
+    public static List<Object> series(Map<Long, Double> buckets, List<OffsetDateTime> points, long step, boolean rate) {
+        long stepMs = step * 1000;
+        List<Object> data = new ArrayList<>(points.size());
+        for (OffsetDateTime point : points) {
+            long pointMs = point.toInstant().toEpochMilli();
+            long bucketStart = Math.floorDiv(pointMs - 1, stepMs) * stepMs;
+            double count = buckets.getOrDefault(bucketStart, 0D);
+            data.add(List.of(point, rate ? count / (Math.max(1000, pointMs - bucketStart) / 1000.0) : count));
+        }
+        return data;
+    }
+
+    private static double sum(Map<Long, Double> buckets) {
+        double sum = 0;
+        for (Double value : buckets.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static String key(String taskId) {
+        return taskId + "_REALTIME";
+    }
+
+    private TaskRealtime refresh(String taskId) {
+        TaskRealtime task = (TaskRealtime) caffeineCache.get(key(taskId), k -> new TaskRealtime(taskId));
+        synchronized (task) {
+            long now = System.currentTimeMillis();
+            if (now - task.lastRefresh < REFRESH_INTERVAL_MS || task.isSettled()) {
+                return task;
+            }
+            if (task.startMs < 0) {
+                // 开始事件还未写入时只查询事件
+                applyEvents(task, metricsBackend.events(taskId, task.eventSince()));
+                if (task.startMs < 0) {
+                    task.lastRefresh = now;
+                    return task;
+                }
+            }
+            long step = resolution(task.startMs, task.endMs());
+            if (step != task.step) {
+                // 测试时间变长后粒度放大，已缓存的时间桶全部作废
+                task.reset(step);
+            }
+            task.changedFrom = Math.min(task.changedFrom, task.settledMs);
+            task.changed = true;
+            long settled = Math.max(task.settledMs, Math.floorDiv(now - SETTLE_MS, step * 1000) * step * 1000);
+            long errorSettled = Math.max(task.errorSettledMs, now - SETTLE_MS);
+            RealtimeBatch batch = metricsBackend.fetch(taskId, task.eventSince(), task.settledMs,
+                    Math.max(task.errorSettledMs, task.startMs), now, step);
+            applyEvents(task, batch);
+            // 查询范围内的时间桶整体替换
+            batch.getThroughput().forEach((transaction, buckets) -> task.throughput.computeIfAbsent(transaction, k -> new HashMap<>()).putAll(buckets));
+            batch.getErrors().forEach((transaction, buckets) -> task.errors.computeIfAbsent(transaction, k -> new HashMap<>()).putAll(buckets));
+            task.errorAll.putAll(batch.getErrorAll());
+            task.errorInfoTail.clear();
+            for (RealtimeBatch.ErrorRow row : batch.getErrorRows()) {
+                Map<String, Map<List<String>, Long>> target = row.getTime() < errorSettled ? task.errorInfo : task.errorInfoTail;
+                List<String> code = Arrays.asList(row.getResponseCode(), row.getResponseMessage());
+                target.computeIfAbsent(row.getTransaction(), k -> new HashMap<>()).merge(code, row.getCount(), Long::sum);
+            }
+            task.settledMs = settled;
+            task.errorSettledMs = errorSettled;
+            task.lastRefresh = now;
+            log.debug("刷新实时数据，任务：{}，粒度：{}s，耗时：{}ms", taskId, step, System.currentTimeMillis() - now);
+            return task;
+        }
+    }
+
+    private static void applyEvents(TaskRealtime task, RealtimeBatch batch) {
+        for (int i = 0; i < batch.getEventTimes().size(); i++) {
+            long time = batch.getEventTimes().get(i);
+            String text = batch.getEventTexts().get(i);
+            if (text.contains("started") && (task.startMs < 0 || time < task.startMs)) {
+                task.startMs = time;
+            }
+            if (text.contains("ended") && time > task.endMs) {
+                task.endMs = time;
+            }
+            task.eventMs = Math.max(task.eventMs, time);
+        }
+    }
+
+    private static class TaskRealtime {
+
+        private final String taskId;
+
+        private long startMs = -1;
+
+        private long endMs = -1;
+
+        private long eventMs = 0;
+
+        private long step = 0;
+
+        // 早于该时间的时间桶已经稳定，不再查询
+        private long settledMs = 0;
+
+        private long errorSettledMs = 0;
+
+        private long lastRefresh = 0;
+
+        // 上次推送以来重新获取过的最早时间桶，以及是否有变化、是否需要全量推送
+        private long changedFrom = Long.MAX_VALUE;
+
+        private boolean changed = false;
+
+        private boolean full = true;
+
+        private final Map<String, Map<Long, Double>> throughput = new HashMap<>();
+
+        private final Map<String, Map<Long, Double>> errors = new HashMap<>();
+
+        private final Map<Long, Double> errorAll = new HashMap<>();
+
+        // 错误信息：接口 -> [响应码, 响应信息] -> 次数
+        private final Map<String, Map<List<String>, Long>> errorInfo = new HashMap<>();
+
+        private final Map<String, Map<List<String>, Long>> errorInfoTail = new HashMap<>();
+
+        TaskRealtime(String taskId) {
+            this.taskId = taskId;
+        }
+
+        // 未结束时以当前时间为结束时间
+        long endMs() {
+            return this.endMs > 0 ? this.endMs : System.currentTimeMillis();
+        }
+
+        // 已结束且结束时间之前的数据都已稳定
+        boolean isSettled() {
+            return this.endMs > 0 && this.settledMs > this.endMs && this.errorSettledMs > this.endMs;
+        }
+
+        void reset(long step) {
+            this.step = step;
+            this.full = true;
+            long stepMs = step * 1000;
+            this.settledMs = Math.floorDiv(this.startMs, stepMs) * stepMs;
+            this.throughput.clear();
+            this.errors.clear();
+            this.errorAll.clear();
+        }
+
+        List<OffsetDateTime> points() {
+            return this.points(Long.MIN_VALUE);
+        }
+
+        // 只返回所在时间桶不早于since的时间点
+        List<OffsetDateTime> points(long since) {
+            long stepMs = this.step * 1000;
+            long end = this.endMs();
+            List<OffsetDateTime> points = new ArrayList<>();
+            long first = (this.startMs / stepMs + 1) * stepMs;
+            if (since != Long.MIN_VALUE) {
+                first = Math.max(first, since + stepMs);
+            }
+            for (long point = first; point < end; point += stepMs) {
+                points.add(OffsetDateTime.ofInstant(Instant.ofEpochMilli(point), OFFSET));
+            }
+            points.add(OffsetDateTime.ofInstant(Instant.ofEpochMilli(end), OFFSET));
+            return points;
+        }
+
+        // 事件很少，从上次见到的事件往前留出写入延迟重复查询，开始和结束时间取极值不受重复影响
+        long eventSince() {
+            return Math.max(0, this.eventMs - SETTLE_MS);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.model.TaskDO;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 报告流水线的断点，每完成一个阶段写入一次，服务重启后从最后完成的阶段之后继续
+ */
+@Data
+public class ReportCheckpoint {
+
+    private TaskDO taskDO;
+
+    // 最后完成的阶段，为空表示还未开始
+    private ReportPipeline.Stage stage;
+
+    // 是否有原始jtl需要生成html报告
+    private Boolean rawJtl;
+
+    private Boolean segmented;
+
+    private List<List<String>> files;
+
+    private String jtlPath;
+
+    private String reportPath;
+
+    private JFileDO reportFile;
+
+    private Long updateTime;
+}
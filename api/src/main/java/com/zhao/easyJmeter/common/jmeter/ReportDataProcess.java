@@ -1,6 +1,5 @@
 package com.zhao.easyJmeter.common.jmeter;
 
-import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.zhao.easyJmeter.model.JFileDO;
@@ -52,11 +51,32 @@ public class ReportDataProcess {
         }
         String jsStr = contentBuilder.toString();
 
-        Map<String, List<JSONObject>> map = new HashMap<>();
+        JSONObject statistics = null;
+        JSONObject errors = null;
+        JSONObject top5Errors = null;
         Pattern statisticsPattern = Pattern.compile("createTable\\(\\$\\(\"#statisticsTable\"\\),([\\s\\S]*?), function\\(index, item\\)\\{");
         Matcher statisticsPatternMatcher = statisticsPattern.matcher(jsStr);
         if (statisticsPatternMatcher.find()) {
-            JSONObject statistics = JSONObject.parseObject(statisticsPatternMatcher.group(1));
+            statistics = JSONObject.parseObject(statisticsPatternMatcher.group(1));
+        }
+
+        Pattern errorsPattern = Pattern.compile("createTable\\(\\$\\(\"#errorsTable\"\\),([\\s\\S]*?), function\\(index, item\\)\\{");
+        Matcher errorsPatternMatcher = errorsPattern.matcher(jsStr);
+        if (errorsPatternMatcher.find()) {
+            errors = JSONObject.parseObject(errorsPatternMatcher.group(1));
+        }
+
+        Pattern top5ErrorsPattern = Pattern.compile("createTable\\(\\$\\(\"#top5ErrorsBySamplerTable\"\\),([\\s\\S]*?), function\\(index, item\\)\\{");
+        Matcher top5ErrorsPatternMatcher = top5ErrorsPattern.matcher(jsStr);
+        if (top5ErrorsPatternMatcher.find()) {
+            top5Errors = JSONObject.parseObject(top5ErrorsPatternMatcher.group(1));
+        }
+        return this.getDashBoardData(statistics, errors, top5Errors);
+    }
+
+    public Map<String, List<JSONObject>> getDashBoardData(JSONObject statistics, JSONObject errors, JSONObject top5Errors) {
+        Map<String, List<JSONObject>> map = new HashMap<>();
+        if (statistics != null) {
             List<String> titlesList = List.of("label", "samples", "fail", "error", "average", "min", "max", "median", "90th", "95th", "99th", "transactions", "received", "Sent");
             statistics.put("titles", titlesList);
             List<JSONObject> combinedList = new ArrayList<>(statistics.getJSONArray("overall").toJavaList(JSONObject.class));
@@ -64,23 +84,14 @@ public class ReportDataProcess {
             statistics.put("items", combinedList);
             List<JSONObject> statisticsTable = matchList(statistics);
             map.put("statisticsTable", statisticsTable);
-
         }
-
-        Pattern errorsPattern = Pattern.compile("createTable\\(\\$\\(\"#errorsTable\"\\),([\\s\\S]*?), function\\(index, item\\)\\{");
-        Matcher errorsPatternMatcher = errorsPattern.matcher(jsStr);
-        if (errorsPatternMatcher.find()) {
-            JSONObject errors = JSONObject.parseObject(errorsPatternMatcher.group(1));
+        if (errors != null) {
             List<String> titlesList = List.of("type", "number", "currentPercent", "allPercent");
             errors.put("titles", titlesList);
             List<JSONObject> errorsTable = matchList(errors);
             map.put("errorsTable", errorsTable);
         }
-
-        Pattern top5ErrorsPattern = Pattern.compile("createTable\\(\\$\\(\"#top5ErrorsBySamplerTable\"\\),([\\s\\S]*?), function\\(index, item\\)\\{");
-        Matcher top5ErrorsPatternMatcher = top5ErrorsPattern.matcher(jsStr);
-        if (top5ErrorsPatternMatcher.find()) {
-            JSONObject top5Errors = JSONObject.parseObject(top5ErrorsPatternMatcher.group(1));
+        if (top5Errors != null) {
             List<String> titlesList = List.of("sample", "samples", "errors", "errorA", "errorsA", "errorB", "errorsB", "errorC", "errorsC", "errorD", "errorsD", "errorE", "errorsE");
             top5Errors.put("titles", titlesList);
             List<JSONObject> combinedList = new ArrayList<>(top5Errors.getJSONArray("overall").toJavaList(JSONObject.class));
@@ -92,13 +103,14 @@ public class ReportDataProcess {
         log.info("获取DashBoardData完成");
         return map;
     }
+
     public List<JSONObject> matchList(JSONObject jsonObject) {
         List<String> titles = jsonObject.getJSONArray("titles").toJavaList(String.class);
         List<JSONObject> items = jsonObject.getJSONArray("items").toJavaList(JSONObject.class);
-        List<Map<String, Object>> resultList = new ArrayList<>();
+        List<JSONObject> resultList = new ArrayList<>();
 
         for (JSONObject item : items) {
-            Map<String, Object> resultMap = new LinkedHashMap<>();
+            JSONObject resultMap = new JSONObject();
             JSONArray data = item.getJSONArray("data");
             for (int i = 0; i < titles.size(); i++) {
                 if (i < data.size()) {
@@ -107,10 +119,7 @@ public class ReportDataProcess {
             }
             resultList.add(resultMap);
         }
-
-        String jsonString = JSON.toJSONString(resultList);
-        List<JSONObject> list = JSON.parseArray(jsonString, JSONObject.class);
-        return list;
+        return resultList;
     }
 
     public Map<String, JSONObject> getGraphData(String jsPath) {
@@ -146,6 +155,34 @@ public class ReportDataProcess {
         return this.dealGraphData(map);
     }
 
+    // 图表数据直接取自报告生成上下文，key与graph.js中的变量名一致
+    public Map<String, JSONObject> getGraphData(Map<String, Object> model) {
+        Map<String, JSONObject> map = new HashMap<>();
+        for (Map.Entry<String, Object> entry : model.entrySet()) {
+            if (entry.getValue() instanceof JSONObject && ((JSONObject) entry.getValue()).containsKey("series")) {
+                map.put(entry.getKey() + "Infos", (JSONObject) entry.getValue());
+            }
+        }
+        log.info("获取GraphData完成");
+        return this.dealGraphData(map);
+    }
+
+    public ReportDO getData(TaskDO taskDO, Map<String, Object> model, JFileDO jFileDO) {
+        Map<String, List<JSONObject>> dashBoardData = this.getDashBoardData((JSONObject) model.get("statisticsSummary"),
+                (JSONObject) model.get("errorsSummary"), (JSONObject) model.get("top5ErrorsBySampler"));
+        Map<String, JSONObject> graphData = this.getGraphData(model);
+        ReportDO reportDO = new ReportDO();
+        reportDO.setTaskId(taskDO.getTaskId());
+        reportDO.setGraphData(graphData);
+        reportDO.setDashBoardData(dashBoardData);
+        reportDO.setFile(jFileDO);
+        reportDO.setCaseId(taskDO.getJmeterCase());
+        reportDO.setCreateTime(taskDO.getCreateTime());
+        reportDO.setResult(taskDO.getResult());
+
+        return reportDO;
+    }
+
     public ReportDO getData(TaskDO taskDO, String reportPath, JFileDO jFileDO) {
         Map<String, List<JSONObject>> dashBoardData = this.getDashBoardData(new File(reportPath, "content/js/dashboard.js").toString());
         Map<String, JSONObject> graphData = this.getGraphData(new File(reportPath, "content/js/graph.js").toString());
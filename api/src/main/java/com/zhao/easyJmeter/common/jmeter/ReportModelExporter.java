@@ -0,0 +1,96 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jmeter.report.config.ReportGeneratorConfiguration;
+import org.apache.jmeter.report.dashboard.DataExporter;
+import org.apache.jmeter.report.processor.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 随html报告一起注册到ReportGenerator的导出器，直接从报告生成上下文中取出统计表和图表数据
+ * 数据按ReportGenerator所在线程交接，避免生成js文件后再用正则解析
+ */
+@Slf4j
+public class ReportModelExporter implements DataExporter {
+
+    public static final String NAME = "model";
+
+    public static final String CLASSNAME_PROPERTY = "jmeter.reportgenerator.exporter." + NAME + ".classname";
+
+    private static final ThreadLocal<Map<String, Object>> MODEL = new ThreadLocal<>();
+
+    private static final ResultDataVisitor<Object> CONVERTER = new ResultDataVisitor<Object>() {
+        @Override
+        public Object visitListResult(ListResultData listResult) {
+            JSONArray array = new JSONArray(listResult.getSize());
+            for (int i = 0; i < listResult.getSize(); i++) {
+                array.add(listResult.get(i).accept(this));
+            }
+            return array;
+        }
+
+        @Override
+        public Object visitMapResult(MapResultData mapResult) {
+            JSONObject object = new JSONObject();
+            for (Map.Entry<String, ResultData> entry : mapResult.getEntries()) {
+                object.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().accept(this));
+            }
+            return object;
+        }
+
+        @Override
+        public Object visitValueResult(ValueResultData valueResult) {
+            Object value = valueResult.getValue();
+            // 与解析js得到的数值类型保持一致，小数统一为BigDecimal
+            if (value instanceof Double || value instanceof Float) {
+                double number = ((Number) value).doubleValue();
+                return Double.isFinite(number) ? BigDecimal.valueOf(number) : BigDecimal.ZERO;
+            }
+            return value;
+        }
+    };
+
+    private String name;
+
+    // 在调用ReportGenerator.generate的线程上开始收集
+    public static void begin() {
+        MODEL.set(new HashMap<>());
+    }
+
+    // 返回收集到的数据，key为消费者名称，如statisticsSummary、responseTimesOverTime
+    public static Map<String, Object> end() {
+        Map<String, Object> model = MODEL.get();
+        MODEL.remove();
+        return model;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void export(SampleContext context, File file, ReportGeneratorConfiguration reportConfig) {
+        Map<String, Object> model = MODEL.get();
+        if (model == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : context.getData().entrySet()) {
+            if (entry.getValue() instanceof ResultData) {
+                model.put(entry.getKey(), ((ResultData) entry.getValue()).accept(CONVERTER));
+            }
+        }
+        log.info("收集报告数据完成，数据项：" + model.keySet());
+    }
+}
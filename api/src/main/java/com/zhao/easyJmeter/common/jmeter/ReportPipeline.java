@@ -0,0 +1,243 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.serializer.DeserializerObjectMapper;
+import com.zhao.easyJmeter.model.TaskDO;
+import com.zhao.easyJmeter.module.file.FileProperties;
+import com.zhao.easyJmeter.repository.ReportRepository;
+import com.zhao.easyJmeter.service.JFileService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 服务端报告处理流水线，收集环节全部完成后提交，不占用socket事件线程
+ * 按下载、合并、生成、打包、保存五个阶段执行，每个阶段完成后写入断点并向web端推送进度
+ * 同时处理的任务数由jmeter.report-concurrency限制，超出的任务排队等待；生成阶段使用线程级的jmeter属性，多个任务可同时生成
+ */
+@Slf4j
+@Component
+public class ReportPipeline {
+
+    public enum Stage {
+        FETCH("下载jtl"),
+        MERGE("合并jtl"),
+        GENERATE("生成报告"),
+        PACKAGE("打包上传报告"),
+        PERSIST("保存报告数据");
+
+        private final String desc;
+
+        Stage(String desc) {
+            this.desc = desc;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+    }
+
+    /**
+     * 流水线结束后的回调，在任务事件信箱中执行
+     */
+    public interface Listener {
+
+        void reportFinish(TaskDO taskDO);
+
+        void reportFail(TaskDO taskDO, Throwable e);
+    }
+
+    private static final String CHECKPOINT_DIR = "report-pipeline";
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    @Autowired
+    private FileProperties fileProperties;
+
+    @Autowired
+    private JFileService jFileService;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private WebRoomPublisher webRoomPublisher;
+
+    @Autowired
+    private TaskEventDispatcher taskEventDispatcher;
+
+    private Listener listener;
+
+    private ExecutorService executor;
+
+    // 已提交的任务，避免重复提交
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        int concurrency = jmeterProperties.getReportConcurrency();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "reportPipeline-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.executor.shutdownNow();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void submit(TaskDO taskDO) {
+        ReportCheckpoint checkpoint = new ReportCheckpoint();
+        checkpoint.setTaskDO(taskDO);
+        this.saveCheckpoint(checkpoint);
+        this.start(checkpoint);
+    }
+
+    /**
+     * 服务启动后继续执行未完成的流水线
+     */
+    public void resume() {
+        Path dir = this.checkpointDir();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(path -> path.toString().endsWith(".json")).forEach(path -> {
+                try {
+                    ReportCheckpoint checkpoint = DeserializerObjectMapper.getObjectMapper().readValue(path.toFile(), ReportCheckpoint.class);
+                    log.info("继续未完成的报告处理，任务：" + checkpoint.getTaskDO().getTaskId() + "，已完成阶段：" + checkpoint.getStage());
+                    this.start(checkpoint);
+                } catch (IOException e) {
+                    log.error("读取报告断点失败：" + path, e);
+                }
+            });
+        } catch (IOException e) {
+            log.error("读取报告断点目录失败", e);
+        }
+    }
+
+    private void start(ReportCheckpoint checkpoint) {
+        String taskId = checkpoint.getTaskDO().getTaskId();
+        if (!running.add(taskId)) {
+            log.info("任务报告已在处理中：" + taskId);
+            return;
+        }
+        executor.execute(() -> {
+            TaskDO taskDO = checkpoint.getTaskDO();
+            try {
+                this.process(checkpoint);
+                this.deleteCheckpoint(taskId);
+                this.notify(taskDO, l -> l.reportFinish(taskDO));
+            } catch (Exception e) {
+                log.error("报告处理失败，任务：" + taskId, e);
+                this.deleteCheckpoint(taskId);
+                this.progress(taskId, null, "fail", 0);
+                this.notify(taskDO, l -> l.reportFail(taskDO, e));
+            } finally {
+                running.remove(taskId);
+            }
+        });
+    }
+
+    private void process(ReportCheckpoint checkpoint) {
+        TaskDO taskDO = checkpoint.getTaskDO();
+        JmeterExternal jmeterExternal = new JmeterExternal();
+        jmeterExternal.setJmeterProperties(jmeterProperties);
+        if (checkpoint.getRawJtl() == null) {
+            checkpoint.setRawJtl(jmeterExternal.hasRawJtl(taskDO, jFileService));
+        }
+        if (checkpoint.getRawJtl()) {
+            this.stage(checkpoint, Stage.FETCH, () -> {
+                checkpoint.setSegmented(!JtlSegmentManifest.of(taskDO.getTaskId(), jFileService).isEmpty());
+                checkpoint.setFiles(jmeterExternal.fetchJtlFile(taskDO, jFileService));
+            });
+            this.stage(checkpoint, Stage.MERGE, () ->
+                    checkpoint.setJtlPath(jmeterExternal.mergeJtlFile(taskDO, checkpoint.getFiles(), checkpoint.getSegmented(), jFileService)));
+            // 报告属性在线程级上下文中设置，多个任务可以同时生成
+            this.stage(checkpoint, Stage.GENERATE, () -> {
+                jmeterExternal.initServerJmeterUtils();
+                checkpoint.setReportPath(jmeterExternal.generateReport(taskDO, checkpoint.getJtlPath(), jFileService));
+            });
+            this.stage(checkpoint, Stage.PACKAGE, () ->
+                    checkpoint.setReportFile(jmeterExternal.compressReportAndUpload(taskDO, checkpoint.getReportPath(), jFileService)));
+        }
+        // 从断点恢复时生成报告导出的数据已丢失，由报告目录解析
+        this.stage(checkpoint, Stage.PERSIST, () ->
+                jmeterExternal.saveReportData(taskDO, checkpoint.getReportPath(), checkpoint.getReportFile(), jFileService, reportRepository));
+    }
+
+    // 已完成的阶段直接跳过
+    private void stage(ReportCheckpoint checkpoint, Stage stage, Runnable runnable) {
+        String taskId = checkpoint.getTaskDO().getTaskId();
+        if (checkpoint.getStage() != null && checkpoint.getStage().ordinal() >= stage.ordinal()) {
+            return;
+        }
+        this.progress(taskId, stage, "running", 0);
+        long start = System.currentTimeMillis();
+        runnable.run();
+        long cost = System.currentTimeMillis() - start;
+        checkpoint.setStage(stage);
+        this.saveCheckpoint(checkpoint);
+        log.info("任务{}报告阶段{}完成，耗时：{}ms", taskId, stage.getDesc(), cost);
+        this.progress(taskId, stage, "done", cost);
+    }
+
+    private void progress(String taskId, Stage stage, String status, long cost) {
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("taskId", taskId);
+        progress.put("stage", stage == null ? null : stage.name());
+        progress.put("stageDesc", stage == null ? null : stage.getDesc());
+        progress.put("status", status);
+        progress.put("cost", cost);
+        webRoomPublisher.publishLatest(WebRoomPublisher.taskRoom(taskId), "reportProgress", progress);
+    }
+
+    private void notify(TaskDO taskDO, Consumer<Listener> callback) {
+        if (listener != null) {
+            taskEventDispatcher.dispatch(taskDO.getTaskId(), "reportPipeline", () -> callback.accept(listener));
+        }
+    }
+
+    private Path checkpointDir() {
+        return Paths.get(fileProperties.getStoreDir(), CHECKPOINT_DIR).toAbsolutePath();
+    }
+
+    private void saveCheckpoint(ReportCheckpoint checkpoint) {
+        checkpoint.setUpdateTime(System.currentTimeMillis());
+        Path dir = this.checkpointDir();
+        Path target = dir.resolve(checkpoint.getTaskDO().getTaskId() + ".json");
+        try {
+            Files.createDirectories(dir);
+            // 先写临时文件再替换，进程中途退出时不会留下不完整的断点
+            Path tmp = dir.resolve(checkpoint.getTaskDO().getTaskId() + ".json.tmp");
+            new ObjectMapper().writeValue(tmp.toFile(), checkpoint);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("保存报告断点失败，任务：" + checkpoint.getTaskDO().getTaskId(), e);
+        }
+    }
+
+    private void deleteCheckpoint(String taskId) {
+        new File(this.checkpointDir().toFile(), taskId + ".json").delete();
+    }
+}
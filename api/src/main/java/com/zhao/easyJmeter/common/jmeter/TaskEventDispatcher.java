@@ -0,0 +1,161 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按taskId分发agent上报的环节事件，每个任务一个信箱，同一任务的事件按到达顺序串行处理，不同任务在线程池中并行
+ * 取代原先所有任务共用的synchronized处理方法，某个任务生成报告时不再阻塞其他任务的环节流转
+ */
+@Slf4j
+@Component
+public class TaskEventDispatcher {
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    private ExecutorService executor;
+
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final Map<String, EventStat> stats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(jmeterProperties.getTaskDispatchThreads(), r -> {
+            Thread thread = new Thread(r, "taskEvent-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * 放入任务信箱后立即返回，事件在该任务之前的事件处理完后执行
+     */
+    public void dispatch(String taskId, String event, Runnable handler) {
+        EventStat stat = stats.computeIfAbsent(event, k -> new EventStat());
+        stat.queued.incrementAndGet();
+        long enqueued = System.nanoTime();
+        Runnable task = () -> {
+            long start = System.nanoTime();
+            stat.queued.decrementAndGet();
+            try {
+                handler.run();
+            } catch (Exception e) {
+                stat.failed.incrementAndGet();
+                log.error("处理任务事件失败，任务：" + taskId + "，事件：" + event, e);
+            } finally {
+                stat.record(start - enqueued, System.nanoTime() - start);
+            }
+        };
+        // 信箱在compute中创建和入队，与drain结束时的移除互斥，不会把事件放进已移除的信箱
+        Mailbox[] scheduled = new Mailbox[1];
+        mailboxes.compute(taskId, (key, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+            }
+            mailbox.queue.add(task);
+            if (!mailbox.running) {
+                mailbox.running = true;
+                scheduled[0] = mailbox;
+            }
+            return mailbox;
+        });
+        if (scheduled[0] != null) {
+            executor.execute(() -> this.drain(taskId, scheduled[0]));
+        }
+    }
+
+    private void drain(String taskId, Mailbox mailbox) {
+        while (true) {
+            Runnable task = mailbox.queue.poll();
+            if (task == null) {
+                // 再次确认为空后释放信箱，期间到达的事件由本线程继续处理
+                boolean[] done = {false};
+                mailboxes.computeIfPresent(taskId, (key, current) -> {
+                    if (current != mailbox || !mailbox.queue.isEmpty()) {
+                        return current;
+                    }
+                    done[0] = true;
+                    return null;
+                });
+                if (done[0]) {
+                    return;
+                }
+                continue;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * 各事件类型的排队数、处理数、失败数和耗时，以及各任务信箱中等待的事件数
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> events = new TreeMap<>();
+        stats.forEach((event, stat) -> events.put(event, stat.toMap()));
+        Map<String, Integer> queues = new TreeMap<>();
+        mailboxes.forEach((taskId, mailbox) -> queues.put(taskId, mailbox.queue.size()));
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("events", events);
+        metrics.put("queues", queues);
+        return metrics;
+    }
+
+    private static class Mailbox {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+        // 只在mailboxes.compute中读写
+        private boolean running;
+    }
+
+    private static class EventStat {
+
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private final AtomicLong handled = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong waitNanos = new AtomicLong();
+
+        private final AtomicLong handleNanos = new AtomicLong();
+
+        private final AtomicLong maxHandleNanos = new AtomicLong();
+
+        void record(long wait, long handle) {
+            handled.incrementAndGet();
+            waitNanos.addAndGet(wait);
+            handleNanos.addAndGet(handle);
+            maxHandleNanos.accumulateAndGet(handle, Math::max);
+        }
+
+        Map<String, Object> toMap() {
+            long count = handled.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("queued", queued.get());
+            map.put("handled", count);
+            map.put("failed", failed.get());
+            map.put("avgWaitMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count));
+            map.put("avgHandleMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(handleNanos.get() / count));
+            map.put("maxHandleMs", TimeUnit.NANOSECONDS.toMillis(maxHandleNanos.get()));
+            return map;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.model.TaskLogDO;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * task日志时间线，按环节分组，环节时间取该环节最早的日志时间
+ * 数据库查询和内存中的任务状态使用同一分组方式，返回给web端的结构一致
+ */
+public class TaskLogTimeline {
+
+    public static List<Map<String, Object>> group(Collection<TaskLogDO> taskLogs) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Map<JmeterStatusEnum, List<TaskLogDO>> groups = new TreeMap<>(Comparator.comparing(JmeterStatusEnum::getValue));
+        for (TaskLogDO taskLog : taskLogs) {
+            groups.computeIfAbsent(taskLog.getStatus(), k -> new ArrayList<>()).add(copy(taskLog));
+        }
+        List<Map<String, Object>> levelList = new ArrayList<>();
+        groups.forEach((status, logs) -> {
+            Map<String, Object> level = new HashMap<>();
+            level.put("status", status);
+            logs.stream().map(TaskLogDO::getCreateTime).filter(Objects::nonNull).min(Date::compareTo)
+                    .ifPresent(time -> level.put("create_time", format.format(time)));
+            level.put("logs", logs);
+            levelList.add(level);
+        });
+        return levelList;
+    }
+
+    // 返回副本，推送和缓存的数据不受之后的修改影响
+    public static TaskLogDO copy(TaskLogDO taskLog) {
+        TaskLogDO copy = new TaskLogDO(taskLog.getTaskId(), taskLog.getJCase(), taskLog.getStatus(), taskLog.getResult(), taskLog.getAddress(), taskLog.getMachine());
+        copy.setId(taskLog.getId());
+        copy.setCreateTime(taskLog.getCreateTime());
+        copy.setUpdateTime(taskLog.getUpdateTime());
+        return copy;
+    }
+}
@@ -0,0 +1,139 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.enumeration.TaskResultEnum;
+import com.zhao.easyJmeter.vo.TaskProgressVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 压测运行进度汇总，每个任务一张按机器下标存放进度的表，agent上报时只做一次原子更新
+ * 按jmeter.progress-push-interval检查，进度有变化的任务才向web端推送，取代每条summariser输出都广播整个进度表
+ */
+@Slf4j
+@Component
+public class TaskProgressAggregator {
+
+    @Autowired
+    private WebRoomPublisher webRoomPublisher;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    private final Map<String, ProgressTable> tables = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService emitter;
+
+    @PostConstruct
+    public void init() {
+        this.emitter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "taskProgress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = jmeterProperties.getProgressPushInterval();
+        this.emitter.scheduleWithFixedDelay(this::emitAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.emitter.shutdown();
+    }
+
+    /**
+     * 进入运行环节时初始化进度表，所有机器进度为0
+     */
+    public void start(String taskId, Integer caseId, List<String> addresses) {
+        tables.put(taskId, new ProgressTable(caseId, addresses));
+    }
+
+    /**
+     * agent上报进度，进度只增不减
+     */
+    public void update(String taskId, String address, int progress) {
+        ProgressTable table = tables.get(taskId);
+        if (table == null) {
+            log.debug("任务不在运行环节，忽略进度：" + taskId);
+            return;
+        }
+        Integer index = table.index.get(address);
+        if (index == null) {
+            return;
+        }
+        if (table.progress.getAndAccumulate(index, progress, Math::max) < progress) {
+            table.changed.set(true);
+        }
+    }
+
+    /**
+     * 当前进度，机器地址 -> 进度；任务不在运行环节时返回null
+     */
+    public HashMap<String, Integer> snapshot(String taskId) {
+        ProgressTable table = tables.get(taskId);
+        return table == null ? null : table.snapshot();
+    }
+
+    /**
+     * 运行环节结束，移除进度表
+     */
+    public void finish(String taskId) {
+        tables.remove(taskId);
+    }
+
+    private void emitAll() {
+        tables.forEach((taskId, table) -> {
+            if (!table.changed.getAndSet(false)) {
+                return;
+            }
+            try {
+                TaskProgressVO taskProgressVO = new TaskProgressVO(taskId, JmeterStatusEnum.RUN, table.snapshot(), TaskResultEnum.IN_PROGRESS);
+                webRoomPublisher.publishTaskProgress(table.caseId, taskProgressVO);
+            } catch (Exception e) {
+                log.error("推送任务进度失败，任务：" + taskId, e);
+            }
+        });
+    }
+
+    private static class ProgressTable {
+
+        private final Integer caseId;
+
+        private final String[] addresses;
+
+        // 机器地址 -> 下标，创建后只读
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private final AtomicIntegerArray progress;
+
+        private final AtomicBoolean changed = new AtomicBoolean(false);
+
+        ProgressTable(Integer caseId, List<String> addresses) {
+            this.caseId = caseId;
+            this.addresses = addresses.toArray(new String[0]);
+            for (int i = 0; i < this.addresses.length; i++) {
+                this.index.put(this.addresses[i], i);
+            }
+            this.progress = new AtomicIntegerArray(this.addresses.length);
+        }
+
+        HashMap<String, Integer> snapshot() {
+            HashMap<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < this.addresses.length; i++) {
+                map.put(this.addresses[i], this.progress.get(i));
+            }
+            return map;
+        }
+    }
+}
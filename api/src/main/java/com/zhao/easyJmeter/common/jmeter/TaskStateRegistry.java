@@ -0,0 +1,350 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.model.CaseDO;
+import com.zhao.easyJmeter.model.MachineDO;
+import com.zhao.easyJmeter.model.TaskDO;
+import com.zhao.easyJmeter.model.TaskLogDO;
+import com.zhao.easyJmeter.service.CaseService;
+import com.zhao.easyJmeter.service.MachineService;
+import com.zhao.easyJmeter.service.TaskLogService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行中任务的状态登记处，任务的用例、机器和task日志在第一次收到环节事件时从数据库加载，之后在内存中读写
+ * 变更记录为脏数据，按jmeter.task-state-flush-interval批量写入数据库；任务清理完成时立即写入并移出内存
+ */
+@Slf4j
+@Component
+public class TaskStateRegistry {
+
+    // 长时间没有事件的任务(agent失联等)写入后移出内存，下次事件时重新加载
+    private static final long EXPIRE_MS = TimeUnit.MINUTES.toMillis(30);
+
+    @Autowired
+    private CaseService caseService;
+
+    @Autowired
+    private MachineService machineService;
+
+    @Autowired
+    private TaskLogService taskLogService;
+
+    @Autowired
+    private MachineLivenessRegistry machineLivenessRegistry;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    private final Map<String, TaskState> states = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "taskStateFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = jmeterProperties.getTaskStateFlushInterval();
+        this.flusher.scheduleWithFixedDelay(this::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.flusher.shutdown();
+        this.flushAll();
+    }
+
+    /**
+     * 更新机器在某一环节的日志结果，没有日志时(发生异常后进入此环节)插入一条
+     */
+    public void finishLog(TaskDO taskDO, JmeterStatusEnum status, String address, Boolean result) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            TaskLogDO taskLog = state.findLog(status, address);
+            if (taskLog == null) {
+                MachineDO machineDO = state.machine(address, machineService);
+                taskLog = state.addLog(new TaskLogDO(taskDO.getTaskId(), taskDO.getJmeterCase(), status, result, machineDO.getAddress(), machineDO.getId()));
+            } else {
+                taskLog.setResult(result);
+            }
+            state.markLog(taskLog);
+        }
+    }
+
+    /**
+     * 将某一环节所有机器的日志标记为失败
+     */
+    public void failLogs(TaskDO taskDO, JmeterStatusEnum status) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            for (TaskLogDO taskLog : state.logs) {
+                if (taskLog.getStatus() == status) {
+                    taskLog.setResult(false);
+                    state.markLog(taskLog);
+                }
+            }
+        }
+    }
+
+    /**
+     * 为任务的每台机器插入进入某一环节的日志，返回任务的机器
+     */
+    public List<MachineDO> createLogs(TaskDO taskDO, JmeterStatusEnum status) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            for (MachineDO machineDO : state.machines.values()) {
+                state.markLog(state.addLog(new TaskLogDO(taskDO.getTaskId(), taskDO.getJmeterCase(), status, null, machineDO.getAddress(), machineDO.getId())));
+            }
+            return new ArrayList<>(state.machines.values());
+        }
+    }
+
+    /**
+     * 某一环节已完成的机器数
+     */
+    public int countFinished(TaskDO taskDO, JmeterStatusEnum status) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            return (int) state.logs.stream().filter(taskLog -> taskLog.getStatus() == status && Boolean.TRUE.equals(taskLog.getResult())).count();
+        }
+    }
+
+    public void updateMachineStatus(TaskDO taskDO, String address, JmeterStatusEnum status) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            MachineDO machineDO = state.machine(address, machineService);
+            machineDO.setJmeterStatus(status);
+            state.dirtyMachines.put(machineDO.getId(), status);
+            machineLivenessRegistry.updateJmeterStatus(machineDO.getId(), status);
+        }
+    }
+
+    public void updateCaseStatus(TaskDO taskDO, JmeterStatusEnum status) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            state.caseDO.setStatus(status);
+            state.caseDirty = true;
+        }
+    }
+
+    public JmeterStatusEnum caseStatus(TaskDO taskDO) {
+        TaskState state = this.state(taskDO);
+        synchronized (state) {
+            return state.caseDO.getStatus();
+        }
+    }
+
+    /**
+     * 内存中任务所属的用例，任务不在内存中时返回null
+     */
+    public Integer caseId(String taskId) {
+        TaskState state = states.get(taskId);
+        return state == null ? null : state.caseDO.getId();
+    }
+
+    /**
+     * 内存中的task日志，格式与TaskService.getTaskLogByTaskId一致；任务不在内存中时返回null
+     */
+    public List<Map<String, Object>> taskLogs(String taskId) {
+        TaskState state = states.get(taskId);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            return TaskLogTimeline.group(state.logs);
+        }
+    }
+
+    /**
+     * 取出上次取出后有变化的task日志，web端按环节和机器地址合并到时间线；没有变化时返回null
+     */
+    public Map<String, Object> takeLogDiff(String taskId) {
+        TaskState state = states.get(taskId);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            if (state.changedLogs.isEmpty()) {
+                return null;
+            }
+            List<TaskLogDO> logs = new ArrayList<>();
+            for (TaskLogDO taskLog : state.changedLogs) {
+                logs.add(TaskLogTimeline.copy(taskLog));
+            }
+            state.changedLogs.clear();
+            Map<String, Object> diff = new HashMap<>();
+            diff.put("taskId", taskId);
+            diff.put("logs", logs);
+            return diff;
+        }
+    }
+
+    /**
+     * 处于清理环节且该压力机还未完成清理的任务，压力机重连后重新下发清理命令
+     */
+    public List<TaskDO> pendingClean(String address) {
+        List<TaskDO> tasks = new ArrayList<>();
+        for (TaskState state : states.values()) {
+            synchronized (state) {
+                if (state.caseDO.getStatus() != JmeterStatusEnum.CLEAN || !state.machines.containsKey(address)) {
+                    continue;
+                }
+                TaskLogDO taskLog = state.findLog(JmeterStatusEnum.CLEAN, address);
+                if (taskLog != null && taskLog.getResult() == null) {
+                    tasks.add(state.taskDO);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * 立即写入任务状态并移出内存；写入失败时保留在内存中，由定时写入重试，过期后再移出
+     */
+    public void release(String taskId) {
+        TaskState state = states.get(taskId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (this.flush(state)) {
+                states.remove(taskId, state);
+            }
+        }
+    }
+
+    // 在compute内更新访问时间，与过期移除互斥，刚取到的状态不会被移出内存
+    private TaskState state(TaskDO taskDO) {
+        return states.compute(taskDO.getTaskId(), (k, state) -> {
+            TaskState current = state == null ? this.load(taskDO) : state;
+            current.lastAccess = System.currentTimeMillis();
+            return current;
+        });
+    }
+
+    private TaskState load(TaskDO taskDO) {
+        TaskState state = new TaskState();
+        state.taskDO = taskDO;
+        state.caseDO = caseService.getById(taskDO.getJmeterCase());
+        for (String m : taskDO.getMachine().split(",")) {
+            MachineDO machineDO = machineService.getById(Integer.valueOf(m));
+            state.machines.put(machineDO.getAddress(), machineDO);
+        }
+        state.logs.addAll(taskLogService.getTaskLogs(taskDO.getTaskId()));
+        log.info("加载任务状态：" + taskDO.getTaskId());
+        return state;
+    }
+
+    private void flushAll() {
+        long now = System.currentTimeMillis();
+        states.forEach((taskId, state) -> {
+            boolean flushed;
+            synchronized (state) {
+                flushed = this.flush(state);
+            }
+            // 写入失败的任务不移出，保留脏数据下次重试
+            if (!flushed || now - state.lastAccess <= EXPIRE_MS) {
+                return;
+            }
+            // 移除前在同一把锁内重新检查访问时间，期间被访问过的任务保留
+            states.computeIfPresent(taskId, (k, current) -> {
+                if (current != state || System.currentTimeMillis() - current.lastAccess <= EXPIRE_MS) {
+                    return current;
+                }
+                log.info("任务长时间没有环节事件，移出内存：" + taskId);
+                return null;
+            });
+        });
+    }
+
+    // 在任务锁内执行，新日志插入后回填id，之后的修改按id更新；写入失败时保留脏数据下次重试，返回是否全部写入
+    private boolean flush(TaskState state) {
+        try {
+            List<TaskLogDO> inserts = new ArrayList<>();
+            List<TaskLogDO> updates = new ArrayList<>();
+            for (TaskLogDO taskLog : state.dirtyLogs) {
+                (taskLog.getId() == null ? inserts : updates).add(taskLog);
+            }
+            taskLogService.createTaskLogs(inserts);
+            taskLogService.updateTaskLogs(updates);
+            state.dirtyLogs.clear();
+            Map<JmeterStatusEnum, List<Integer>> machines = new HashMap<>();
+            state.dirtyMachines.forEach((id, status) -> machines.computeIfAbsent(status, k -> new ArrayList<>()).add(id));
+            machines.forEach((status, ids) -> machineService.updateMachineStatus(ids, status));
+            state.dirtyMachines.clear();
+            if (state.caseDirty) {
+                // 只更新状态，不覆盖用例的其他字段
+                CaseDO caseDO = new CaseDO();
+                caseDO.setId(state.caseDO.getId());
+                caseService.updateCaseStatus(caseDO, state.caseDO.getStatus());
+                state.caseDirty = false;
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("写入任务状态失败，任务：" + state.taskDO.getTaskId(), e);
+            return false;
+        }
+    }
+
+    private static class TaskState {
+
+        private TaskDO taskDO;
+
+        private CaseDO caseDO;
+
+        // 机器地址 -> 机器
+        private final Map<String, MachineDO> machines = new LinkedHashMap<>();
+
+        private final List<TaskLogDO> logs = new ArrayList<>();
+
+        // TaskLogDO的equals按字段比较，脏数据按对象区分
+        private final Set<TaskLogDO> dirtyLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // 还未推送给web端的变化
+        private final Set<TaskLogDO> changedLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private final Map<Integer, JmeterStatusEnum> dirtyMachines = new HashMap<>();
+
+        private boolean caseDirty;
+
+        private volatile long lastAccess;
+
+        TaskLogDO findLog(JmeterStatusEnum status, String address) {
+            for (TaskLogDO taskLog : this.logs) {
+                if (taskLog.getStatus() == status && address.equals(taskLog.getAddress())) {
+                    return taskLog;
+                }
+            }
+            return null;
+        }
+
+        void markLog(TaskLogDO taskLog) {
+            this.dirtyLogs.add(taskLog);
+            this.changedLogs.add(taskLog);
+        }
+
+        TaskLogDO addLog(TaskLogDO taskLog) {
+            taskLog.setCreateTime(new Date());
+            this.logs.add(taskLog);
+            return taskLog;
+        }
+
+        MachineDO machine(String address, MachineService machineService) {
+            return this.machines.computeIfAbsent(address, machineService::getByAddress);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.corundumstudio.socketio.BroadcastOperations;
+import com.corundumstudio.socketio.SocketIOServer;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.vo.TaskProgressVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 向web端按主题房间推送事件，web端按需加入task:任务id、case:用例id、debug:调试id房间，不再向所有页面广播
+ * 每个房间一个缓冲区，按jmeter.web-push-interval合并发送：状态类事件只保留最新一条，其余事件按顺序发送
+ * 发送前序列化一次，房间内所有客户端共用序列化结果；房间内没有客户端时直接丢弃
+ */
+@Slf4j
+@Component
+public class WebRoomPublisher {
+
+    public static final String[] ROOM_PREFIXES = {"task:", "case:", "debug:"};
+
+    // 与netty-socketio默认的序列化配置一致
+    private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Autowired
+    private SocketIOServer socketServer;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    private final Map<String, RoomBuffer> buffers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "webRoomPush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = jmeterProperties.getWebPushInterval();
+        this.flusher.scheduleWithFixedDelay(this::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.flusher.shutdown();
+    }
+
+    public static String taskRoom(String taskId) {
+        return "task:" + taskId;
+    }
+
+    public static String caseRoom(Integer caseId) {
+        return "case:" + caseId;
+    }
+
+    public static String debugRoom(Long debugId) {
+        return "debug:" + debugId;
+    }
+
+    public static boolean isWebRoom(String room) {
+        return room != null && Arrays.stream(ROOM_PREFIXES).anyMatch(room::startsWith);
+    }
+
+    /**
+     * 按顺序发送，不合并
+     */
+    public void publish(String room, String event, Object data) {
+        this.buffer(room, buffer -> buffer.queued.add(new AbstractMap.SimpleEntry<>(event, data)));
+    }
+
+    /**
+     * 同一房间同一事件在一个推送周期内只发送最新的一条
+     */
+    public void publishLatest(String room, String event, Object data) {
+        this.buffer(room, buffer -> buffer.latest.put(event, data));
+    }
+
+    /**
+     * 任务进度同时推送到任务房间(详情页)和用例房间(用例列表)
+     */
+    public void publishTaskProgress(Integer caseId, TaskProgressVO taskProgressVO) {
+        this.publishLatest(taskRoom(taskProgressVO.getTaskId()), "taskProgress", taskProgressVO);
+        if (caseId != null) {
+            this.publishLatest(caseRoom(caseId), "taskProgress", taskProgressVO);
+        }
+    }
+
+    // 缓冲区在compute中创建和写入，与清理空缓冲区互斥，不会写进已移除的缓冲区
+    private void buffer(String room, Consumer<RoomBuffer> action) {
+        buffers.compute(room, (key, buffer) -> {
+            if (buffer == null) {
+                buffer = new RoomBuffer();
+            }
+            synchronized (buffer) {
+                action.accept(buffer);
+            }
+            return buffer;
+        });
+    }
+
+    private void flushAll() {
+        buffers.forEach((room, buffer) -> {
+            List<Map.Entry<String, Object>> events = new ArrayList<>();
+            synchronized (buffer) {
+                events.addAll(buffer.queued);
+                buffer.latest.forEach((event, data) -> events.add(new AbstractMap.SimpleEntry<>(event, data)));
+                buffer.queued.clear();
+                buffer.latest.clear();
+            }
+            if (events.isEmpty()) {
+                buffers.computeIfPresent(room, (key, current) -> {
+                    synchronized (current) {
+                        return current.queued.isEmpty() && current.latest.isEmpty() ? null : current;
+                    }
+                });
+                return;
+            }
+            BroadcastOperations operations = socketServer.getRoomOperations(room);
+            if (operations.getClients().isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, Object> event : events) {
+                try {
+                    operations.sendEvent(event.getKey(), new RawValue(MAPPER.writeValueAsString(event.getValue())));
+                } catch (JsonProcessingException e) {
+                    log.error("推送web端事件失败，房间：" + room + "，事件：" + event.getKey(), e);
+                }
+            }
+        });
+    }
+
+    private static class RoomBuffer {
+
+        private final List<Map.Entry<String, Object>> queued = new ArrayList<>();
+
+        private final Map<String, Object> latest = new LinkedHashMap<>();
+    }
+}
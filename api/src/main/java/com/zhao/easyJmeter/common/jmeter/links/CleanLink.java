@@ -3,6 +3,8 @@ package com.zhao.easyJmeter.common.jmeter.links;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
+import com.zhao.easyJmeter.common.jmeter.AgentPhaseExecutor;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
 import com.zhao.easyJmeter.common.jmeter.LinkStrategy;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
@@ -11,15 +13,19 @@ import io.socket.client.Socket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+
 @Slf4j
 @Service
-public class CleanLink extends Thread implements LinkStrategy {
+public class CleanLink implements LinkStrategy {
 
     private final Socket socket;
+    private final AgentContext agentContext;
     private TaskDO taskDO;
 
-    public CleanLink(Socket socket) {
+    public CleanLink(Socket socket, AgentContext agentContext) {
         this.socket = socket;
+        this.agentContext = agentContext;
     }
 
     @Override
@@ -28,23 +34,16 @@ public class CleanLink extends Thread implements LinkStrategy {
     }
 
     @Override
-    public void run() {
-        try {
-            log.info("===" + this.taskDO.getTaskId() + "_" + JmeterStatusEnum.CLEAN.getDesc() + "===");
-            new JmeterExternal(socket).clean(this.taskDO);
-            this.reportSuccess();
-        } catch (Exception e) {
-            log.error("清理环节发生" + e.getClass().getName() + "异常：" +e.getMessage() + "，任务ID：" + this.taskDO.getTaskId());
-            log.error("error", e);
-            this.reportFail();
-        }
+    public Boolean execute(AgentPhaseExecutor.CancellationToken token) throws IOException {
+        new JmeterExternal(socket, agentContext).clean(this.taskDO);
+        return true;
     }
 
     @Override
     public Boolean reportSuccess() throws JsonProcessingException {
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(true);
         String message = new ObjectMapper().writeValueAsString(taskMachineDTO);
         socket.emit("cleanFinish", message);
@@ -56,7 +55,7 @@ public class CleanLink extends Thread implements LinkStrategy {
         // 发送失败消息
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(false);
         taskMachineDTO.setStatus(JmeterStatusEnum.CLEAN.getValue());
         try {
@@ -67,19 +66,4 @@ public class CleanLink extends Thread implements LinkStrategy {
         }
         return true;
     }
-
-    @Override
-    public Boolean interruptThread() {
-        // 终止线程
-        ThreadGroup currentGroup = Thread.currentThread().getThreadGroup();
-        int noThreads = currentGroup.activeCount();
-        Thread[] lstThreads = new Thread[noThreads];
-        currentGroup.enumerate(lstThreads);
-        for (int i = 0; i < noThreads; i++) {
-            if (lstThreads[i].getName().equals(taskDO.getTaskId()+"_"+ JmeterStatusEnum.CLEAN.getDesc())) {
-                lstThreads[i].interrupt();
-            }
-        }
-        return true;
-    }
 }
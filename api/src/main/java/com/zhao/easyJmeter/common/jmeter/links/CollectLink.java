@@ -2,7 +2,10 @@ package com.zhao.easyJmeter.common.jmeter.links;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
+import com.zhao.easyJmeter.common.jmeter.AgentPhaseExecutor;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
 import com.zhao.easyJmeter.common.jmeter.LinkStrategy;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
@@ -14,15 +17,19 @@ import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
-public class CollectLink extends Thread implements LinkStrategy {
+public class CollectLink implements LinkStrategy {
 
     private final JFileService jFileService;
+    private final JmeterProperties jmeterProperties;
     private final Socket socket;
+    private final AgentContext agentContext;
     private TaskDO taskDO;
 
-    public CollectLink(Socket socket, JFileService jFileService) {
+    public CollectLink(Socket socket, JFileService jFileService, JmeterProperties jmeterProperties, AgentContext agentContext) {
         this.socket = socket;
         this.jFileService = jFileService;
+        this.jmeterProperties = jmeterProperties;
+        this.agentContext = agentContext;
     }
 
     @Override
@@ -31,23 +38,18 @@ public class CollectLink extends Thread implements LinkStrategy {
     }
 
     @Override
-    public void run() {
-        try {
-            log.info("===" + this.taskDO.getTaskId() + "_" + JmeterStatusEnum.COLLECT.getDesc() + "===");
-            new JmeterExternal(socket).collect(this.taskDO, jFileService);
-            this.reportSuccess();
-        } catch (Exception e) {
-            log.error("收集环节发生" + e.getClass().getName() + "异常：" +e.getMessage() + "，任务ID：" + this.taskDO.getTaskId());
-            log.error("error", e);
-            this.reportFail();
-        }
+    public Boolean execute(AgentPhaseExecutor.CancellationToken token) {
+        JmeterExternal jmeterExternal = new JmeterExternal(socket, agentContext);
+        jmeterExternal.setJmeterProperties(jmeterProperties);
+        jmeterExternal.collect(this.taskDO, jFileService);
+        return true;
     }
 
     @Override
     public Boolean reportSuccess() throws JsonProcessingException {
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(true);
         String message = new ObjectMapper().writeValueAsString(taskMachineDTO);
         socket.emit("collectFinish", message);
@@ -59,7 +61,7 @@ public class CollectLink extends Thread implements LinkStrategy {
         // 发送失败消息
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(false);
         taskMachineDTO.setStatus(JmeterStatusEnum.COLLECT.getValue());
         try {
@@ -70,19 +72,4 @@ public class CollectLink extends Thread implements LinkStrategy {
         }
         return true;
     }
-
-    @Override
-    public Boolean interruptThread() {
-        // 终止线程
-        ThreadGroup currentGroup = Thread.currentThread().getThreadGroup();
-        int noThreads = currentGroup.activeCount();
-        Thread[] lstThreads = new Thread[noThreads];
-        currentGroup.enumerate(lstThreads);
-        for (int i = 0; i < noThreads; i++) {
-            if (lstThreads[i].getName().equals(taskDO.getTaskId()+"_"+ JmeterStatusEnum.COLLECT.getDesc())) {
-                lstThreads[i].interrupt();
-            }
-        }
-        return true;
-    }
 }
@@ -3,9 +3,14 @@ package com.zhao.easyJmeter.common.jmeter.links;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zhao.easyJmeter.common.configuration.InfluxDBProperties;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
+import com.zhao.easyJmeter.common.jmeter.AgentPhaseExecutor;
+import com.zhao.easyJmeter.common.jmeter.AgentFileCache;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
 import com.zhao.easyJmeter.common.jmeter.LinkStrategy;
+import com.zhao.easyJmeter.dto.task.FileCacheStatDTO;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
 import com.zhao.easyJmeter.model.TaskDO;
 import com.zhao.easyJmeter.service.JFileService;
@@ -16,7 +21,7 @@ import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
-public class ConfigureLink extends Thread implements LinkStrategy {
+public class ConfigureLink implements LinkStrategy {
 
     private final JFileService jFileService;
 
@@ -28,14 +33,23 @@ public class ConfigureLink extends Thread implements LinkStrategy {
 
     private final InfluxDBProperties influxDBProperties;
 
+    private final JmeterProperties jmeterProperties;
+
+    private final AgentContext agentContext;
+
+    private final AgentFileCache agentFileCache;
+
     public void setMachineCutFileVO(MachineCutFileVO machineCutFileVO) {
         this.machineCutFileVO = machineCutFileVO;
     }
 
-    public ConfigureLink(Socket socket, JFileService jFileService, InfluxDBProperties influxDBProperties) {
+    public ConfigureLink(Socket socket, JFileService jFileService, InfluxDBProperties influxDBProperties, JmeterProperties jmeterProperties, AgentContext agentContext, AgentFileCache agentFileCache) {
         this.socket = socket;
         this.jFileService = jFileService;
         this.influxDBProperties = influxDBProperties;
+        this.jmeterProperties = jmeterProperties;
+        this.agentContext = agentContext;
+        this.agentFileCache = agentFileCache;
     }
 
     @Override
@@ -44,37 +58,41 @@ public class ConfigureLink extends Thread implements LinkStrategy {
     }
 
     @Override
-    public void run() {
-        try {
-            log.info("===" + this.taskDO.getTaskId() + "_" + JmeterStatusEnum.CONFIGURE.getDesc() + "===");
-            // 判断给到的数据是否还需要server端去切分，没有切分文件和已经切分都为false，需要切分且未切分为true
-            if (!this.machineCutFileVO.getNeedCut()){
-                JmeterExternal jmeterExternal = new JmeterExternal(socket);
-                // 下载运行依赖文件
-                jmeterExternal.downloadConfigFile(this.taskDO,jFileService,this.machineCutFileVO);
-                //jmeter jmx文件修改 添加properties
-                jmeterExternal.initJMeterUtils();
-                jmeterExternal.editJmxConfig(taskDO, influxDBProperties);
-                jmeterExternal.addProperties();
-
-                this.reportSuccess();
-            } else {
-                String message = new ObjectMapper().writeValueAsString(taskDO);
-                socket.emit("cutCsv", message);
-            }
-
-        } catch (Exception e) {
-            log.error("配置环节发生" + e.getClass().getName() + "异常：" +e.getMessage() + "，任务ID：" + this.taskDO.getTaskId());
-            log.error("error", e);
-            this.reportFail();
+    public Boolean execute(AgentPhaseExecutor.CancellationToken token) throws Exception {
+        // 判断给到的数据是否还需要server端去切分，没有切分文件和已经切分都为false，需要切分且未切分为true
+        if (!this.machineCutFileVO.getNeedCut()){
+            JmeterExternal jmeterExternal = new JmeterExternal(socket, agentContext);
+            // 下载运行依赖文件，并向主节点报告缓存命中情况
+            FileCacheStatDTO fileCacheStatDTO = jmeterExternal.downloadConfigFile(this.taskDO, jFileService, this.machineCutFileVO, agentFileCache);
+            socket.emit("fileCacheStat", new ObjectMapper().writeValueAsString(fileCacheStatDTO));
+            token.throwIfCancelled();
+            //jmeter jmx文件修改 添加properties
+            jmeterExternal.initJMeterUtils();
+            jmeterExternal.setJmeterProperties(jmeterProperties);
+            jmeterExternal.editJmxConfig(taskDO, this.realtimeWriteUrl());
+            jmeterExternal.addProperties();
+            return true;
+        }
+        // 由server端切分后重新下发配置命令
+        String message = new ObjectMapper().writeValueAsString(taskDO);
+        socket.emit("cutCsv", message);
+        return false;
+    }
+
+    // 实时指标写入地址由服务端下发，服务端未下发时按本地influxdb配置
+    private String realtimeWriteUrl() {
+        if (this.machineCutFileVO.getRealtimeWriteUrl() != null) {
+            return this.machineCutFileVO.getRealtimeWriteUrl();
         }
+        log.warn("服务端未下发实时指标写入地址，使用本地influxdb配置，任务ID：" + this.taskDO.getTaskId());
+        return influxDBProperties.getUrl() + "/write?db=" + influxDBProperties.getDatabase();
     }
 
     @Override
     public Boolean reportSuccess() throws JsonProcessingException {
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(true);
         String message = new ObjectMapper().writeValueAsString(taskMachineDTO);
         socket.emit("configureFinish", message);
@@ -86,7 +104,7 @@ public class ConfigureLink extends Thread implements LinkStrategy {
         // 发送失败消息
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(false);
         taskMachineDTO.setStatus(JmeterStatusEnum.CONFIGURE.getValue());
         try {
@@ -97,19 +115,4 @@ public class ConfigureLink extends Thread implements LinkStrategy {
         }
         return true;
     }
-
-    @Override
-    public Boolean interruptThread() {
-        // 终止线程
-        ThreadGroup currentGroup = Thread.currentThread().getThreadGroup();
-        int noThreads = currentGroup.activeCount();
-        Thread[] lstThreads = new Thread[noThreads];
-        currentGroup.enumerate(lstThreads);
-        for (int i = 0; i < noThreads; i++) {
-            if (lstThreads[i].getName().equals(taskDO.getTaskId()+"_"+ JmeterStatusEnum.CONFIGURE.getDesc())) {
-                lstThreads[i].interrupt();
-            }
-        }
-        return true;
-    }
 }
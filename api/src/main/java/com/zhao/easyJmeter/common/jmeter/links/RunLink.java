@@ -2,11 +2,17 @@ package com.zhao.easyJmeter.common.jmeter.links;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
+import com.zhao.easyJmeter.common.jmeter.AgentPhaseExecutor;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
+import com.zhao.easyJmeter.common.jmeter.JmeterProcessSupervisor;
+import com.zhao.easyJmeter.common.jmeter.JtlSegmentUploader;
 import com.zhao.easyJmeter.common.jmeter.LinkStrategy;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
 import com.zhao.easyJmeter.model.TaskDO;
+import com.zhao.easyJmeter.service.JFileService;
 import io.socket.client.Socket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -16,13 +22,22 @@ import java.nio.file.Paths;
 
 @Slf4j
 @Service
-public class RunLink extends Thread implements LinkStrategy {
+public class RunLink implements LinkStrategy {
     private final Socket socket;
 
+    private final JFileService jFileService;
+
+    private final JmeterProperties jmeterProperties;
+
+    private final AgentContext agentContext;
+
     private TaskDO taskDO;
 
-    public RunLink(Socket socket) {
+    public RunLink(Socket socket, JFileService jFileService, JmeterProperties jmeterProperties, AgentContext agentContext) {
         this.socket = socket;
+        this.jFileService = jFileService;
+        this.jmeterProperties = jmeterProperties;
+        this.agentContext = agentContext;
     }
 
     @Override
@@ -31,27 +46,40 @@ public class RunLink extends Thread implements LinkStrategy {
     }
 
     @Override
-    public void run() {
+    public Boolean execute(AgentPhaseExecutor.CancellationToken token) {
+        JmeterExternal jmeterExternal = new JmeterExternal(socket, agentContext);
+        jmeterExternal.setJmeterProperties(jmeterProperties);
+        // 终止时结束jmeter进程，运行线程不再阻塞在读取输出上
+        token.onCancel(() -> {
+            JmeterProcessSupervisor supervisor = JmeterProcessSupervisor.get(taskDO.getTaskId());
+            if (supervisor != null) {
+                supervisor.killTreeAsync();
+            }
+        });
+        // 需要原始jtl时，运行期间即开始分段上传
+        JtlSegmentUploader uploader = null;
+        if (jmeterProperties.getRawJtl()) {
+            uploader = jmeterExternal.jtlSegmentUploader(taskDO, jFileService);
+            uploader.start(jmeterProperties.getSegmentInterval());
+        }
         try {
-            log.info("===" + this.taskDO.getTaskId() + "_" + JmeterStatusEnum.RUN.getDesc() + "===");
-            JmeterExternal jmeterExternal = new JmeterExternal(socket);
             jmeterExternal.runJmeter(taskDO);
-            this.reportSuccess();
-        } catch (Exception e) {
-            log.error("运行环节发生" + e.getClass().getName() + "异常：" +e.getMessage() + "，任务ID：" + this.taskDO.getTaskId());
-            log.error("error", e);
-            this.reportFail();
+        } finally {
+            if (uploader != null) {
+                uploader.stop();
+            }
         }
+        return true;
     }
 
     @Override
     public Boolean reportSuccess() throws JsonProcessingException {
-        String reportPath = Paths.get(System.getenv("JMETER_HOME"), "/tmp/report").toString();
+        String reportPath = Paths.get(agentContext.getPath(), "/tmp/report").toString();
         File report = new File(reportPath);
         if (report.exists()){
             TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
             taskMachineDTO.setTaskDO(taskDO);
-            taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+            taskMachineDTO.setMachineIp(agentContext.getAddress());
             taskMachineDTO.setResult(true);
             String message = new ObjectMapper().writeValueAsString(taskMachineDTO);
             socket.emit("runFinish", message);
@@ -65,7 +93,7 @@ public class RunLink extends Thread implements LinkStrategy {
         // 发送失败消息
         TaskMachineDTO taskMachineDTO = new TaskMachineDTO();
         taskMachineDTO.setTaskDO(taskDO);
-        taskMachineDTO.setMachineIp(new JmeterExternal(socket).getAddress());
+        taskMachineDTO.setMachineIp(agentContext.getAddress());
         taskMachineDTO.setResult(false);
         taskMachineDTO.setStatus(JmeterStatusEnum.RUN.getValue());
         try {
@@ -76,19 +104,4 @@ public class RunLink extends Thread implements LinkStrategy {
         }
         return true;
     }
-
-    @Override
-    public Boolean interruptThread() {
-        // 终止线程
-        ThreadGroup currentGroup = Thread.currentThread().getThreadGroup();
-        int noThreads = currentGroup.activeCount();
-        Thread[] lstThreads = new Thread[noThreads];
-        currentGroup.enumerate(lstThreads);
-        for (int i = 0; i < noThreads; i++) {
-            if (lstThreads[i].getName().equals(taskDO.getTaskId()+"_"+ JmeterStatusEnum.RUN.getDesc())) {
-                lstThreads[i].interrupt();
-            }
-        }
-        return true;
-    }
 }
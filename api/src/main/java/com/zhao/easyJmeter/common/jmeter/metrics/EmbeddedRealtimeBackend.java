@@ -0,0 +1,335 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.enumeration.TaskResultEnum;
+import com.zhao.easyJmeter.mapper.TaskMapper;
+import com.zhao.easyJmeter.model.TaskDO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置实时指标存储，agent的BackendListener按influxdb行协议直接写到服务端，不依赖influxdb
+ * 每个序列按5s/60s/600s三档时间桶保存在定长环形数组中，写入时同时累加到各档，超出容量的旧桶被覆盖
+ * 写入接口不需要登录，只接收进行中的实时任务的数据，每个任务的序列数不超过jmeter.realtime-max-series
+ * 只替代实时曲线，聚合报告仍从influxdb查询
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jmeter.realtime-backend", havingValue = "embedded")
+public class EmbeddedRealtimeBackend implements RealtimeMetricsBackend {
+
+    // 各档时间桶粒度（秒）和容量：5s保留3小时，60s保留60小时，600s保留15天
+    private static final long[] TIER_STEPS = {5, 60, 600};
+
+    private static final int[] TIER_SIZES = {2160, 3600, 2160};
+
+    private static final long CLEAN_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int MAX_EVENTS = 10000;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    @Autowired
+    private TaskMapper taskMapper;
+
+    private final Map<String, TaskStore> tasks = new ConcurrentHashMap<>();
+
+    // 被拒绝的application，短时间内不再查库
+    private final Cache<String, Boolean> rejected = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+
+    private volatile long lastClean = 0;
+
+    @PostConstruct
+    public void init() {
+        log.warn("实时指标使用内置存储，聚合报告查询不可用，需要聚合报告时使用influxdb");
+    }
+
+    @Override
+    public String writeUrl() {
+        return jmeterProperties.getRealtimeWriteUrl();
+    }
+
+    /**
+     * 写入一批行协议数据，返回写入的点数
+     */
+    public int write(String body, String precision) {
+        long now = System.currentTimeMillis();
+        List<LineProtocol.Point> points = LineProtocol.parse(body, precision, now);
+        for (LineProtocol.Point point : points) {
+            String application = point.getTags().get("application");
+            if (application == null) {
+                continue;
+            }
+            TaskStore store = this.store(application);
+            if (store == null) {
+                continue;
+            }
+            synchronized (store) {
+                store.lastWrite = now;
+                if ("events".equals(point.getMeasurement())) {
+                    if (store.eventTimes.size() < MAX_EVENTS) {
+                        Object text = point.getFields().get("text");
+                        store.eventTimes.add(point.getTime());
+                        store.eventTexts.add(text == null ? "" : text.toString());
+                    }
+                } else {
+                    store.add(point);
+                }
+            }
+        }
+        this.clean(now);
+        return points.size();
+    }
+
+    // 第一次写入时确认是进行中的实时任务，之后直接使用已有的存储
+    private TaskStore store(String application) {
+        TaskStore store = tasks.get(application);
+        if (store != null) {
+            return store;
+        }
+        if (rejected.getIfPresent(application) != null) {
+            return null;
+        }
+        QueryWrapper<TaskDO> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("task_id", application);
+        TaskDO taskDO = taskMapper.selectOne(queryWrapper);
+        if (taskDO == null || !Boolean.TRUE.equals(taskDO.getRealtime()) || taskDO.getResult() != TaskResultEnum.IN_PROGRESS) {
+            log.debug("不是进行中的实时任务，忽略实时指标：" + application);
+            rejected.put(application, Boolean.TRUE);
+            return null;
+        }
+        return tasks.computeIfAbsent(application, k -> new TaskStore(application, jmeterProperties.getRealtimeMaxSeries()));
+    }
+
+    @Override
+    public RealtimeBatch events(String taskId, long since) {
+        RealtimeBatch batch = new RealtimeBatch();
+        TaskStore store = tasks.get(taskId);
+        if (store == null) {
+            return batch;
+        }
+        synchronized (store) {
+            store.events(batch, since);
+        }
+        return batch;
+    }
+
+    @Override
+    public RealtimeBatch fetch(String taskId, long eventSince, long from, long errorFrom, long to, long step) {
+        RealtimeBatch batch = new RealtimeBatch();
+        TaskStore store = tasks.get(taskId);
+        if (store == null) {
+            return batch;
+        }
+        synchronized (store) {
+            store.events(batch, eventSince);
+            int tier = tier(step, to - from);
+            long stepMs = step * 1000;
+            store.throughput.forEach((transaction, tiers) -> batch.getThroughput().put(transaction, tiers[tier].sum(from, to, stepMs)));
+            store.errors.forEach((transaction, tiers) -> batch.getErrors().put(transaction, tiers[tier].sum(from, to, stepMs)));
+            if (store.errorAll != null) {
+                batch.setErrorAll(store.errorAll[tier].sum(from, to, stepMs));
+            }
+            for (RealtimeBatch.ErrorRow row : store.errorRows) {
+                if (row.getTime() >= errorFrom && row.getTime() <= to) {
+                    batch.getErrorRows().add(row);
+                }
+            }
+        }
+        return batch;
+    }
+
+    // 选择能整除查询粒度且覆盖查询范围的最细一档
+    static int tier(long step, long range) {
+        for (int i = 0; i < TIER_STEPS.length; i++) {
+            if (step % TIER_STEPS[i] == 0 && TIER_STEPS[i] * 1000 * TIER_SIZES[i] >= range) {
+                return i;
+            }
+        }
+        return TIER_STEPS.length - 1;
+    }
+
+    // 超过保留时间未写入的任务整体删除
+    private void clean(long now) {
+        if (now - lastClean < CLEAN_INTERVAL_MS) {
+            return;
+        }
+        lastClean = now;
+        long expire = TimeUnit.HOURS.toMillis(jmeterProperties.getRealtimeRetention());
+        tasks.entrySet().removeIf(entry -> {
+            boolean expired = now - entry.getValue().lastWrite > expire;
+            if (expired) {
+                log.info("清除过期实时数据，任务：" + entry.getKey());
+            }
+            return expired;
+        });
+    }
+
+    private static Ring[] newTiers() {
+        Ring[] tiers = new Ring[TIER_STEPS.length];
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = new Ring(TIER_STEPS[i] * 1000, TIER_SIZES[i]);
+        }
+        return tiers;
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static class TaskStore {
+
+        private final String taskId;
+
+        private final int maxSeries;
+
+        private boolean seriesFull;
+
+        private long lastWrite;
+
+        private final List<Long> eventTimes = new ArrayList<>();
+
+        private final List<String> eventTexts = new ArrayList<>();
+
+        private final Map<String, Ring[]> throughput = new HashMap<>();
+
+        private final Map<String, Ring[]> errors = new HashMap<>();
+
+        private Ring[] errorAll;
+
+        // 错误明细数量少，按写入顺序保存，超出上限时丢弃最早的
+        private final ArrayDeque<RealtimeBatch.ErrorRow> errorRows = new ArrayDeque<>();
+
+        private static final int MAX_ERROR_ROWS = 100000;
+
+        TaskStore(String taskId, int maxSeries) {
+            this.taskId = taskId;
+            this.maxSeries = maxSeries;
+        }
+
+        void add(LineProtocol.Point point) {
+            String transaction = point.getTags().get("transaction");
+            if (transaction == null) {
+                return;
+            }
+            String statut = point.getTags().getOrDefault("statut", "");
+            Map<String, Object> fields = point.getFields();
+            long time = point.getTime();
+            if ("all".equals(statut)) {
+                add(this.series(this.throughput, transaction), time, number(fields.get("count")));
+                if ("all".equals(transaction)) {
+                    if (this.errorAll == null) {
+                        this.errorAll = newTiers();
+                    }
+                    add(this.errorAll, time, number(fields.get("countError")));
+                }
+            } else if ("ko".equals(statut)) {
+                if (!"all".equals(transaction)) {
+                    add(this.series(this.errors, transaction), time, number(fields.get("count")));
+                }
+            } else if (statut.isEmpty() && !"internal".equals(transaction)) {
+                this.errorRows.addLast(new RealtimeBatch.ErrorRow(time, transaction, point.getTags().getOrDefault("responseCode", ""),
+                        point.getTags().getOrDefault("responseMessage", ""), (long) number(fields.get("count"))));
+                if (this.errorRows.size() > MAX_ERROR_ROWS) {
+                    this.errorRows.removeFirst();
+                }
+            }
+        }
+
+        void events(RealtimeBatch batch, long since) {
+            for (int i = 0; i < this.eventTimes.size(); i++) {
+                if (this.eventTimes.get(i) > since) {
+                    batch.addEvent(this.eventTimes.get(i), this.eventTexts.get(i));
+                }
+            }
+        }
+
+        // 序列数达到上限后不再创建新序列，返回null
+        private Ring[] series(Map<String, Ring[]> map, String transaction) {
+            Ring[] tiers = map.get(transaction);
+            if (tiers == null) {
+                if (this.throughput.size() + this.errors.size() >= this.maxSeries) {
+                    if (!this.seriesFull) {
+                        this.seriesFull = true;
+                        log.warn("实时指标序列数超过" + this.maxSeries + "，丢弃新的事务，任务：" + this.taskId);
+                    }
+                    return null;
+                }
+                tiers = newTiers();
+                map.put(transaction, tiers);
+            }
+            return tiers;
+        }
+
+        private static void add(Ring[] tiers, long time, double value) {
+            if (tiers == null) {
+                return;
+            }
+            for (Ring ring : tiers) {
+                ring.add(time, value);
+            }
+        }
+    }
+
+    /**
+     * 以时间桶序号对容量取模定位的环形数组，starts记录槽位当前对应的时间桶，不一致说明已被覆盖
+     */
+    static class Ring {
+
+        private final long stepMs;
+
+        private final long[] starts;
+
+        private final double[] values;
+
+        Ring(long stepMs, int size) {
+            this.stepMs = stepMs;
+            this.starts = new long[size];
+            this.values = new double[size];
+            Arrays.fill(this.starts, Long.MIN_VALUE);
+        }
+
+        void add(long time, double value) {
+            long start = Math.floorDiv(time, this.stepMs) * this.stepMs;
+            int index = (int) Math.floorMod(start / this.stepMs, (long) this.starts.length);
+            if (this.starts[index] != start) {
+                if (this.starts[index] > start) {
+                    // 槽位已被更新的时间桶占用，数据过旧
+                    return;
+                }
+                this.starts[index] = start;
+                this.values[index] = 0;
+            }
+            this.values[index] += value;
+        }
+
+        // 按查询粒度汇总[from, to]内的时间桶，没有数据的桶补0，与influxdb的fill(0)一致
+        Map<Long, Double> sum(long from, long to, long stepMs) {
+            Map<Long, Double> buckets = new HashMap<>();
+            for (long bucket = Math.floorDiv(from, stepMs) * stepMs; bucket <= to; bucket += stepMs) {
+                buckets.put(bucket, 0D);
+            }
+            for (long start = Math.floorDiv(from, this.stepMs) * this.stepMs; start <= to; start += this.stepMs) {
+                int index = (int) Math.floorMod(start / this.stepMs, (long) this.starts.length);
+                if (this.starts[index] == start) {
+                    buckets.merge(Math.floorDiv(start, stepMs) * stepMs, this.values[index], Double::sum);
+                }
+            }
+            return buckets;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import com.zhao.easyJmeter.common.configuration.InfluxDBProperties;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从influxdb读取BackendListener写入的数据，分桶在influxdb中完成，多条语句合并为一次请求
+ */
+@Component
+@ConditionalOnProperty(name = "jmeter.realtime-backend", havingValue = "influxdb", matchIfMissing = true)
+public class InfluxRealtimeBackend implements RealtimeMetricsBackend {
+
+    @Autowired
+    private InfluxDB influxDB;
+
+    @Autowired
+    private InfluxDBProperties influxDBProperties;
+
+    @Override
+    public String writeUrl() {
+        return influxDBProperties.getUrl() + "/write?db=" + influxDBProperties.getDatabase();
+    }
+
+    @Override
+    public RealtimeBatch events(String taskId, long since) {
+        RealtimeBatch batch = new RealtimeBatch();
+        applyEvents(batch, this.query(eventsQuery(taskId, since)).get(0));
+        return batch;
+    }
+
+    @Override
+    public RealtimeBatch fetch(String taskId, long eventSince, long from, long errorFrom, long to, long step) {
+        List<QueryResult.Result> results = this.query(String.join(";", eventsQuery(taskId, eventSince),
+                bucketQuery(taskId, "sum(count)", "statut='all'", true, from, to, step),
+                bucketQuery(taskId, "sum(count)", "statut='ko' AND transaction!='all'", true, from, to, step),
+                bucketQuery(taskId, "sum(countError)", "statut='all' AND transaction='all'", false, from, to, step),
+                String.format("SELECT count,responseCode,responseMessage FROM jmeter WHERE statut='' AND application='%s' AND transaction!='internal' AND time >= %dms AND time <= %dms GROUP BY transaction",
+                        taskId, errorFrom, to)));
+        RealtimeBatch batch = new RealtimeBatch();
+        applyEvents(batch, results.get(0));
+        applyBuckets(batch.getThroughput(), results.get(1), null);
+        applyBuckets(batch.getErrors(), results.get(2), null);
+        Map<String, Map<Long, Double>> errorAll = new HashMap<>();
+        errorAll.put("all", batch.getErrorAll());
+        applyBuckets(errorAll, results.get(3), "all");
+        if (results.get(4).getSeries() != null) {
+            for (QueryResult.Series series : results.get(4).getSeries()) {
+                String transaction = series.getTags().get("transaction");
+                for (List<Object> value : series.getValues()) {
+                    batch.getErrorRows().add(new RealtimeBatch.ErrorRow(((Number) value.get(0)).longValue(), transaction,
+                            String.valueOf(value.get(2)), String.valueOf(value.get(3)), ((Number) value.get(1)).longValue()));
+                }
+            }
+        }
+        return batch;
+    }
+
+    private List<QueryResult.Result> query(String query) {
+        return influxDB.query(new Query(query), TimeUnit.MILLISECONDS).getResults();
+    }
+
+    private static String eventsQuery(String taskId, long since) {
+        return String.format("SELECT text FROM events WHERE application='%s' AND time > %dms", taskId, since);
+    }
+
+    private static String bucketQuery(String taskId, String field, String condition, boolean byTransaction, long from, long to, long step) {
+        return String.format("SELECT %s FROM jmeter WHERE %s AND application='%s' AND time >= %dms AND time <= %dms GROUP BY time(%ds)%s fill(0)",
+                field, condition, taskId, from, to, step, byTransaction ? ", transaction" : "");
+    }
+
+    private static void applyEvents(RealtimeBatch batch, QueryResult.Result result) {
+        if (result.getSeries() == null) {
+            return;
+        }
+        for (List<Object> value : result.getSeries().get(0).getValues()) {
+            batch.addEvent(((Number) value.get(0)).longValue(), String.valueOf(value.get(1)));
+        }
+    }
+
+    private static void applyBuckets(Map<String, Map<Long, Double>> target, QueryResult.Result result, String key) {
+        if (result.getSeries() == null) {
+            return;
+        }
+        for (QueryResult.Series series : result.getSeries()) {
+            Map<Long, Double> buckets = target.computeIfAbsent(key != null ? key : series.getTags().get("transaction"), k -> new HashMap<>());
+            for (List<Object> value : series.getValues()) {
+                buckets.put(((Number) value.get(0)).longValue(), value.get(1) == null ? 0D : ((Number) value.get(1)).doubleValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * influxdb行协议解析，只覆盖BackendListener写入用到的部分：measurement,tag=v field=v 时间戳
+ */
+public class LineProtocol {
+
+    @Data
+    public static class Point {
+
+        private String measurement;
+
+        private Map<String, String> tags = new HashMap<>();
+
+        private Map<String, Object> fields = new HashMap<>();
+
+        // 毫秒时间戳
+        private long time;
+    }
+
+    public static List<Point> parse(String body, String precision, long now) {
+        List<Point> points = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Point point = parseLine(line, precision, now);
+            if (point != null) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    private static Point parseLine(String line, String precision, long now) {
+        // 按未转义、不在引号内的空格分为三段
+        List<String> parts = split(line, ' ', 3);
+        if (parts.size() < 2) {
+            return null;
+        }
+        Point point = new Point();
+        List<String> keys = split(parts.get(0), ',', Integer.MAX_VALUE);
+        point.setMeasurement(unescape(keys.get(0)));
+        for (int i = 1; i < keys.size(); i++) {
+            List<String> kv = split(keys.get(i), '=', 2);
+            if (kv.size() == 2) {
+                point.getTags().put(unescape(kv.get(0)), unescape(kv.get(1)));
+            }
+        }
+        for (String field : split(parts.get(1), ',', Integer.MAX_VALUE)) {
+            List<String> kv = split(field, '=', 2);
+            if (kv.size() == 2) {
+                point.getFields().put(unescape(kv.get(0)), value(kv.get(1)));
+            }
+        }
+        point.setTime(parts.size() > 2 ? toMillis(Long.parseLong(parts.get(2).trim()), precision) : now);
+        return point;
+    }
+
+    private static Object value(String value) {
+        if (value.startsWith("\"")) {
+            return unquote(value);
+        }
+        if (value.equals("t") || value.equals("true") || value.equals("T") || value.equals("TRUE")) {
+            return true;
+        }
+        if (value.equals("f") || value.equals("false") || value.equals("F") || value.equals("FALSE")) {
+            return false;
+        }
+        if (value.endsWith("i") || value.endsWith("u")) {
+            return Long.parseLong(value.substring(0, value.length() - 1));
+        }
+        return Double.parseDouble(value);
+    }
+
+    private static long toMillis(long time, String precision) {
+        if (precision == null || precision.isEmpty() || precision.equals("ns") || precision.equals("n")) {
+            return TimeUnit.NANOSECONDS.toMillis(time);
+        }
+        switch (precision) {
+            case "u":
+            case "us":
+                return TimeUnit.MICROSECONDS.toMillis(time);
+            case "s":
+                return TimeUnit.SECONDS.toMillis(time);
+            case "m":
+                return TimeUnit.MINUTES.toMillis(time);
+            case "h":
+                return TimeUnit.HOURS.toMillis(time);
+            default:
+                return time;
+        }
+    }
+
+    private static List<String> split(String text, char separator, int limit) {
+        List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < text.length() && parts.size() < limit - 1; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    // 字符串字段只转义双引号和反斜杠，其他反斜杠按原样保留
+    private static String unquote(String value) {
+        String text = value.substring(1, Math.max(1, value.length() - 1));
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && (text.charAt(i + 1) == '"' || text.charAt(i + 1) == '\\')) {
+                c = text.charAt(++i);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = text.charAt(++i);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
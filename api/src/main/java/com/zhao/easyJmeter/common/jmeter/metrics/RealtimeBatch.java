@@ -0,0 +1,48 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class RealtimeBatch {
+
+    private List<Long> eventTimes = new ArrayList<>();
+
+    private List<String> eventTexts = new ArrayList<>();
+
+    // 接口 -> 时间桶 -> 请求数，包含汇总的all
+    private Map<String, Map<Long, Double>> throughput = new HashMap<>();
+
+    // 接口 -> 时间桶 -> 错误数，不包含all
+    private Map<String, Map<Long, Double>> errors = new HashMap<>();
+
+    // 时间桶 -> 总错误数
+    private Map<Long, Double> errorAll = new HashMap<>();
+
+    private List<ErrorRow> errorRows = new ArrayList<>();
+
+    public void addEvent(long time, String text) {
+        this.eventTimes.add(time);
+        this.eventTexts.add(text);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ErrorRow {
+
+        private long time;
+
+        private String transaction;
+
+        private String responseCode;
+
+        private String responseMessage;
+
+        private long count;
+    }
+}
@@ -0,0 +1,23 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+/**
+ * 实时指标存储，由jmeter.realtime-backend选择influxdb或内置存储
+ * 时间均为毫秒时间戳，时间桶以开始时间为键
+ */
+public interface RealtimeMetricsBackend {
+
+    /**
+     * agent上BackendListener的写入地址，随配置命令下发，agent不再按本地配置选择
+     */
+    String writeUrl();
+
+    /**
+     * 只查询晚于since的开始、结束事件
+     */
+    RealtimeBatch events(String taskId, long since);
+
+    /**
+     * 一次获取事件、[from, to]内按step秒分桶的吞吐量和错误数，以及[errorFrom, to]内的错误明细
+     */
+    RealtimeBatch fetch(String taskId, long eventSince, long from, long errorFrom, long to, long step);
+}
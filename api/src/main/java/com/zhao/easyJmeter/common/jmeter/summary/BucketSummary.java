@@ -0,0 +1,37 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+
+/**
+ * 单个label在一个时间粒度内的统计
+ */
+@Data
+public class BucketSummary {
+
+    private long count;
+
+    private long errors;
+
+    private long elapsedSum;
+
+    // 仅记录成功请求，对应报告中的响应时间百分位趋势图
+    private Histogram successHistogram = new Histogram(2);
+
+    public void add(long elapsed, boolean success) {
+        count++;
+        elapsedSum += elapsed;
+        if (success) {
+            successHistogram.recordValue(elapsed);
+        } else {
+            errors++;
+        }
+    }
+
+    public void merge(BucketSummary other) {
+        count += other.count;
+        errors += other.errors;
+        elapsedSum += other.elapsedSum;
+        successHistogram.add(other.successHistogram);
+    }
+}
@@ -0,0 +1,209 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * agent端由result.jtl生成的结果摘要，可在服务端按agent合并，百分位数由直方图精确计算
+ */
+@Data
+public class JtlSummary {
+
+    private static final int MAGIC = 0x454A5331;
+
+    public static final String EXTENSION = "summary";
+
+    // 时间粒度，毫秒
+    private long granularity;
+
+    private Map<String, LabelSummary> labels = new LinkedHashMap<>();
+
+    // label -> 时间粒度起点 -> 统计
+    private Map<String, TreeMap<Long, BucketSummary>> buckets = new LinkedHashMap<>();
+
+    // 线程组 -> 时间粒度起点 -> [活动线程数之和, 采样数]
+    private Map<String, TreeMap<Long, long[]>> threads = new LinkedHashMap<>();
+
+    public JtlSummary(long granularity) {
+        this.granularity = granularity;
+    }
+
+    public void add(String label, long timeStamp, long elapsed, boolean success, String responseCode, String errorType,
+                    String threadGroup, long grpThreads, long sent, long received) {
+        elapsed = Math.max(elapsed, 0);
+        labels.computeIfAbsent(label, k -> new LabelSummary())
+                .add(timeStamp, elapsed, success, responseCode, errorType, sent, received);
+        long bucket = timeStamp - timeStamp % granularity;
+        buckets.computeIfAbsent(label, k -> new TreeMap<>())
+                .computeIfAbsent(bucket, k -> new BucketSummary())
+                .add(elapsed, success);
+        if (threadGroup != null) {
+            long[] thread = threads.computeIfAbsent(threadGroup, k -> new TreeMap<>())
+                    .computeIfAbsent(bucket, k -> new long[2]);
+            thread[0] += grpThreads;
+            thread[1]++;
+        }
+    }
+
+    public void merge(JtlSummary other) {
+        other.labels.forEach((label, summary) ->
+                labels.computeIfAbsent(label, k -> new LabelSummary()).merge(summary));
+        other.buckets.forEach((label, series) -> {
+            TreeMap<Long, BucketSummary> target = buckets.computeIfAbsent(label, k -> new TreeMap<>());
+            series.forEach((bucket, summary) -> target.computeIfAbsent(bucket, k -> new BucketSummary()).merge(summary));
+        });
+        other.threads.forEach((group, series) -> {
+            TreeMap<Long, long[]> target = threads.computeIfAbsent(group, k -> new TreeMap<>());
+            series.forEach((bucket, value) -> {
+                long[] thread = target.computeIfAbsent(bucket, k -> new long[2]);
+                thread[0] += value[0];
+                thread[1] += value[1];
+            });
+        });
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(granularity);
+            out.writeInt(labels.size());
+            for (Map.Entry<String, LabelSummary> entry : labels.entrySet()) {
+                LabelSummary summary = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(summary.getCount());
+                out.writeLong(summary.getErrors());
+                out.writeLong(summary.getElapsedSum());
+                out.writeLong(summary.getMin());
+                out.writeLong(summary.getMax());
+                out.writeLong(summary.getSentBytes());
+                out.writeLong(summary.getReceivedBytes());
+                out.writeLong(summary.getFirstStart());
+                out.writeLong(summary.getLastEnd());
+                writeHistogram(out, summary.getHistogram());
+                writeCounts(out, summary.getErrorTypes());
+                writeCounts(out, summary.getResponseCodes());
+            }
+            out.writeInt(buckets.size());
+            for (Map.Entry<String, TreeMap<Long, BucketSummary>> entry : buckets.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<Long, BucketSummary> bucket : entry.getValue().entrySet()) {
+                    out.writeLong(bucket.getKey());
+                    out.writeLong(bucket.getValue().getCount());
+                    out.writeLong(bucket.getValue().getErrors());
+                    out.writeLong(bucket.getValue().getElapsedSum());
+                    writeHistogram(out, bucket.getValue().getSuccessHistogram());
+                }
+            }
+            out.writeInt(threads.size());
+            for (Map.Entry<String, TreeMap<Long, long[]>> entry : threads.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<Long, long[]> bucket : entry.getValue().entrySet()) {
+                    out.writeLong(bucket.getKey());
+                    out.writeLong(bucket.getValue()[0]);
+                    out.writeLong(bucket.getValue()[1]);
+                }
+            }
+        }
+    }
+
+    public static JtlSummary read(InputStream inputStream) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的jtl摘要文件");
+            }
+            JtlSummary jtlSummary = new JtlSummary(in.readLong());
+            int labelSize = in.readInt();
+            for (int i = 0; i < labelSize; i++) {
+                String label = in.readUTF();
+                LabelSummary summary = new LabelSummary();
+                summary.setCount(in.readLong());
+                summary.setErrors(in.readLong());
+                summary.setElapsedSum(in.readLong());
+                summary.setMin(in.readLong());
+                summary.setMax(in.readLong());
+                summary.setSentBytes(in.readLong());
+                summary.setReceivedBytes(in.readLong());
+                summary.setFirstStart(in.readLong());
+                summary.setLastEnd(in.readLong());
+                summary.setHistogram(readHistogram(in));
+                summary.setErrorTypes(readCounts(in));
+                summary.setResponseCodes(readCounts(in));
+                jtlSummary.getLabels().put(label, summary);
+            }
+            int bucketLabelSize = in.readInt();
+            for (int i = 0; i < bucketLabelSize; i++) {
+                String label = in.readUTF();
+                TreeMap<Long, BucketSummary> series = new TreeMap<>();
+                int size = in.readInt();
+                for (int j = 0; j < size; j++) {
+                    long bucket = in.readLong();
+                    BucketSummary summary = new BucketSummary();
+                    summary.setCount(in.readLong());
+                    summary.setErrors(in.readLong());
+                    summary.setElapsedSum(in.readLong());
+                    summary.setSuccessHistogram(readHistogram(in));
+                    series.put(bucket, summary);
+                }
+                jtlSummary.getBuckets().put(label, series);
+            }
+            int groupSize = in.readInt();
+            for (int i = 0; i < groupSize; i++) {
+                String group = in.readUTF();
+                TreeMap<Long, long[]> series = new TreeMap<>();
+                int size = in.readInt();
+                for (int j = 0; j < size; j++) {
+                    series.put(in.readLong(), new long[]{in.readLong(), in.readLong()});
+                }
+                jtlSummary.getThreads().put(group, series);
+            }
+            return jtlSummary;
+        }
+    }
+
+    private static void writeHistogram(DataOutputStream out, Histogram histogram) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    private static Histogram readHistogram(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try {
+            Histogram histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+            histogram.setAutoResize(true);
+            return histogram;
+        } catch (DataFormatException e) {
+            throw new IOException("直方图解码失败", e);
+        }
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<String, Long> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static Map<String, Long> readCounts(DataInputStream in) throws IOException {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            counts.put(in.readUTF(), in.readLong());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,119 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import com.zhao.easyJmeter.common.jmeter.JtlRecordReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 单次顺序读取result.jtl生成摘要，内存占用只与label数和时间粒度数相关
+ */
+@Slf4j
+public class JtlSummaryBuilder {
+
+    private static final String ASSERTION_FAILED = "Assertion failed";
+
+    // 摘要中错误类型的最大长度，避免超长断言信息撑大摘要文件
+    private static final int MAX_ERROR_TYPE_LENGTH = 1000;
+
+    private final String jtlPath;
+
+    private final long granularity;
+
+    private final boolean multiline;
+
+    public JtlSummaryBuilder(String jtlPath, long granularity, boolean multiline) {
+        this.jtlPath = jtlPath;
+        this.granularity = Math.max(granularity, 1000);
+        this.multiline = multiline;
+    }
+
+    public JtlSummary build() throws IOException {
+        long start = System.currentTimeMillis();
+        JtlSummary summary = new JtlSummary(granularity);
+        long samples = 0;
+        long skipped = 0;
+        try (JtlRecordReader reader = new JtlRecordReader(Paths.get(jtlPath), StandardCharsets.UTF_8, multiline)) {
+            String header = reader.readRecord();
+            if (header == null) {
+                return summary;
+            }
+            int timeStamp = JtlRecordReader.columnIndex(header, "timeStamp");
+            int elapsed = JtlRecordReader.columnIndex(header, "elapsed");
+            int label = JtlRecordReader.columnIndex(header, "label");
+            int responseCode = JtlRecordReader.columnIndex(header, "responseCode");
+            int responseMessage = JtlRecordReader.columnIndex(header, "responseMessage");
+            int threadName = JtlRecordReader.columnIndex(header, "threadName");
+            int success = JtlRecordReader.columnIndex(header, "success");
+            int failureMessage = JtlRecordReader.columnIndex(header, "failureMessage");
+            int bytes = JtlRecordReader.columnIndex(header, "bytes");
+            int sentBytes = JtlRecordReader.columnIndex(header, "sentBytes");
+            int grpThreads = JtlRecordReader.columnIndex(header, "grpThreads");
+            if (timeStamp < 0 || elapsed < 0 || label < 0 || success < 0) {
+                throw new RuntimeException("jtl文件缺少timeStamp/elapsed/label/success列，无法生成摘要");
+            }
+            String record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.isEmpty()) {
+                    continue;
+                }
+                List<String> values = JtlRecordReader.split(record);
+                try {
+                    boolean ok = Boolean.parseBoolean(value(values, success));
+                    String code = value(values, responseCode);
+                    summary.add(value(values, label),
+                            Long.parseLong(value(values, timeStamp)),
+                            Long.parseLong(value(values, elapsed)),
+                            ok,
+                            code,
+                            ok ? null : errorType(code, value(values, responseMessage), value(values, failureMessage)),
+                            threadGroup(threadName < 0 ? null : value(values, threadName)),
+                            longValue(values, grpThreads),
+                            longValue(values, sentBytes),
+                            longValue(values, bytes));
+                    samples++;
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    // 进程被强制结束时最后一行可能不完整
+                    skipped++;
+                }
+            }
+        }
+        log.info("生成jtl摘要完成，采样数：{}，跳过记录：{}，label数：{}，耗时：{}ms",
+                samples, skipped, summary.getLabels().size(), System.currentTimeMillis() - start);
+        return summary;
+    }
+
+    // 与jmeter报告错误表的分类方式一致：响应码/响应信息，断言失败时使用断言信息
+    private static String errorType(String responseCode, String responseMessage, String failureMessage) {
+        String key = responseCode + (responseMessage.isEmpty() ? "" : "/" + responseMessage);
+        if (isSuccessCode(responseCode) || (responseCode.isEmpty() && !failureMessage.isEmpty())) {
+            key = failureMessage.isEmpty() ? ASSERTION_FAILED : failureMessage;
+        }
+        return key.length() > MAX_ERROR_TYPE_LENGTH ? key.substring(0, MAX_ERROR_TYPE_LENGTH) : key;
+    }
+
+    private static boolean isSuccessCode(String responseCode) {
+        return responseCode.length() == 3 && (responseCode.charAt(0) == '2' || responseCode.charAt(0) == '3');
+    }
+
+    // 线程名去掉末尾的“ 1-1”编号即为线程组名
+    private static String threadGroup(String threadName) {
+        if (threadName == null) {
+            return null;
+        }
+        int index = threadName.lastIndexOf(' ');
+        return index > 0 ? threadName.substring(0, index) : threadName;
+    }
+
+    private static String value(List<String> values, int index) {
+        return index < 0 ? "" : values.get(index);
+    }
+
+    private static long longValue(List<String> values, int index) {
+        String value = value(values, index);
+        return value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+}
@@ -0,0 +1,80 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个label在整个压测周期内的统计
+ */
+@Data
+public class LabelSummary {
+
+    private long count;
+
+    private long errors;
+
+    private long elapsedSum;
+
+    private long min = Long.MAX_VALUE;
+
+    private long max;
+
+    private long sentBytes;
+
+    private long receivedBytes;
+
+    private long firstStart = Long.MAX_VALUE;
+
+    private long lastEnd;
+
+    // 全部采样的响应时间分布，与jmeter聚合报告一致包含失败请求
+    private Histogram histogram = new Histogram(3);
+
+    private Map<String, Long> errorTypes = new HashMap<>();
+
+    private Map<String, Long> responseCodes = new HashMap<>();
+
+    public void add(long timeStamp, long elapsed, boolean success, String responseCode, String errorType, long sent, long received) {
+        count++;
+        elapsedSum += elapsed;
+        min = Math.min(min, elapsed);
+        max = Math.max(max, elapsed);
+        sentBytes += sent;
+        receivedBytes += received;
+        firstStart = Math.min(firstStart, timeStamp);
+        lastEnd = Math.max(lastEnd, timeStamp + elapsed);
+        histogram.recordValue(elapsed);
+        responseCodes.merge(responseCode, 1L, Long::sum);
+        if (!success) {
+            errors++;
+            errorTypes.merge(errorType, 1L, Long::sum);
+        }
+    }
+
+    public void merge(LabelSummary other) {
+        count += other.count;
+        errors += other.errors;
+        elapsedSum += other.elapsedSum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sentBytes += other.sentBytes;
+        receivedBytes += other.receivedBytes;
+        firstStart = Math.min(firstStart, other.firstStart);
+        lastEnd = Math.max(lastEnd, other.lastEnd);
+        histogram.add(other.histogram);
+        other.errorTypes.forEach((key, value) -> errorTypes.merge(key, value, Long::sum));
+        other.responseCodes.forEach((key, value) -> responseCodes.merge(key, value, Long::sum));
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) elapsedSum / count;
+    }
+
+    // 首个请求开始到最后一个请求结束的秒数，用于计算吞吐量
+    public double seconds() {
+        return count == 0 ? 0 : Math.max(lastEnd - firstStart, 1) / 1000.0;
+    }
+}
@@ -0,0 +1,226 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.zhao.easyJmeter.common.jmeter.ReportDataProcess;
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.model.ReportDO;
+import com.zhao.easyJmeter.model.TaskDO;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 由合并后的摘要生成与html报告结构一致的报告数据
+ */
+@Slf4j
+public class SummaryReportBuilder {
+
+    private static final List<String> STATISTICS_TITLES = List.of("label", "samples", "fail", "error", "average", "min", "max", "median", "90th", "95th", "99th", "transactions", "received", "Sent");
+
+    private static final List<String> ERRORS_TITLES = List.of("type", "number", "currentPercent", "allPercent");
+
+    private static final List<String> TOP5_TITLES = List.of("sample", "samples", "errors", "errorA", "errorsA", "errorB", "errorsB", "errorC", "errorsC", "errorD", "errorsD", "errorE", "errorsE");
+
+    private static final String TOTAL = "Total";
+
+    private final JtlSummary summary;
+
+    private final LabelSummary total;
+
+    public SummaryReportBuilder(JtlSummary summary) {
+        this.summary = summary;
+        this.total = new LabelSummary();
+        summary.getLabels().values().forEach(total::merge);
+    }
+
+    public ReportDO getData(TaskDO taskDO, JFileDO jFileDO) {
+        ReportDO reportDO = new ReportDO();
+        reportDO.setTaskId(taskDO.getTaskId());
+        reportDO.setDashBoardData(this.getDashBoardData());
+        reportDO.setGraphData(this.getGraphData());
+        reportDO.setFile(jFileDO);
+        reportDO.setCaseId(taskDO.getJmeterCase());
+        reportDO.setCreateTime(taskDO.getCreateTime());
+        reportDO.setResult(taskDO.getResult());
+        return reportDO;
+    }
+
+    public Map<String, List<JSONObject>> getDashBoardData() {
+        Map<String, List<JSONObject>> map = new HashMap<>();
+        // 聚合报告
+        List<JSONObject> statisticsTable = new ArrayList<>();
+        statisticsTable.add(row(STATISTICS_TITLES, statistics(TOTAL, total)));
+        new TreeMap<>(summary.getLabels()).forEach((label, labelSummary) ->
+                statisticsTable.add(row(STATISTICS_TITLES, statistics(label, labelSummary))));
+        map.put("statisticsTable", statisticsTable);
+        // 错误统计
+        List<JSONObject> errorsTable = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : sortedErrors(total)) {
+            errorsTable.add(row(ERRORS_TITLES, List.of(entry.getKey(), entry.getValue(),
+                    percent(entry.getValue(), total.getErrors()), percent(entry.getValue(), total.getCount()))));
+        }
+        map.put("errorsTable", errorsTable);
+        // 各请求前5错误
+        List<JSONObject> top5Table = new ArrayList<>();
+        top5Table.add(row(TOP5_TITLES, top5(TOTAL, total)));
+        new TreeMap<>(summary.getLabels()).forEach((label, labelSummary) -> {
+            if (labelSummary.getErrors() > 0) {
+                top5Table.add(row(TOP5_TITLES, top5(label, labelSummary)));
+            }
+        });
+        map.put("top5ErrorsBySamplerTable", top5Table);
+        log.info("由摘要生成DashBoardData完成");
+        return map;
+    }
+
+    public Map<String, JSONObject> getGraphData() {
+        long granularity = summary.getGranularity();
+        double seconds = granularity / 1000.0;
+        Map<String, JSONObject> map = new HashMap<>();
+
+        // 平均响应时间
+        List<JSONObject> responseTimes = new ArrayList<>();
+        summary.getBuckets().forEach((label, series) -> responseTimes.add(series(label,
+                series.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
+                        e -> (double) e.getValue().getElapsedSum() / e.getValue().getCount(), (a, b) -> a, TreeMap::new)))));
+        map.put("responseTimesOverTimeInfos", result(responseTimes, granularity));
+
+        // 各请求TPS及总TPS
+        List<JSONObject> transactions = new ArrayList<>();
+        TreeMap<Long, Double> totalSuccess = new TreeMap<>();
+        TreeMap<Long, Double> totalFailure = new TreeMap<>();
+        summary.getBuckets().forEach((label, series) -> {
+            TreeMap<Long, Double> success = new TreeMap<>();
+            TreeMap<Long, Double> failure = new TreeMap<>();
+            series.forEach((bucket, bucketSummary) -> {
+                success.put(bucket, (bucketSummary.getCount() - bucketSummary.getErrors()) / seconds);
+                totalSuccess.merge(bucket, (bucketSummary.getCount() - bucketSummary.getErrors()) / seconds, Double::sum);
+                if (bucketSummary.getErrors() > 0) {
+                    failure.put(bucket, bucketSummary.getErrors() / seconds);
+                    totalFailure.merge(bucket, bucketSummary.getErrors() / seconds, Double::sum);
+                }
+            });
+            transactions.add(series(label + "-success", success));
+            if (!failure.isEmpty()) {
+                transactions.add(series(label + "-failure", failure));
+            }
+        });
+        map.put("transactionsPerSecondInfos", result(transactions, granularity));
+        List<JSONObject> totalTPS = new ArrayList<>();
+        totalTPS.add(series("Transaction-success", totalSuccess));
+        if (!totalFailure.isEmpty()) {
+            totalTPS.add(series("Transaction-failure", totalFailure));
+        }
+        map.put("totalTPSInfos", result(totalTPS, granularity));
+
+        // 活动线程数
+        List<JSONObject> activeThreads = new ArrayList<>();
+        summary.getThreads().forEach((group, series) -> activeThreads.add(series(group,
+                series.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
+                        e -> (double) e.getValue()[0] / e.getValue()[1], (a, b) -> a, TreeMap::new)))));
+        map.put("activeThreadsOverTimeInfos", result(activeThreads, granularity));
+
+        // 成功请求响应时间百分位数
+        TreeMap<Long, Histogram> histograms = new TreeMap<>();
+        summary.getBuckets().values().forEach(series -> series.forEach((bucket, bucketSummary) ->
+                histograms.computeIfAbsent(bucket, k -> new Histogram(2)).add(bucketSummary.getSuccessHistogram())));
+        histograms.values().removeIf(histogram -> histogram.getTotalCount() == 0);
+        List<JSONObject> percentiles = new ArrayList<>();
+        percentiles.add(series("Min", percentileSeries(histograms, -1)));
+        percentiles.add(series("Max", percentileSeries(histograms, 101)));
+        percentiles.add(series("Median", percentileSeries(histograms, 50)));
+        percentiles.add(series("90th percentile", percentileSeries(histograms, 90)));
+        percentiles.add(series("95th percentile", percentileSeries(histograms, 95)));
+        percentiles.add(series("99th percentile", percentileSeries(histograms, 99)));
+        map.put("responseTimePercentilesOverTimeInfos", result(percentiles, granularity));
+
+        log.info("由摘要生成GraphData完成");
+        return new ReportDataProcess().dealGraphData(map);
+    }
+
+    private static List<Object> statistics(String label, LabelSummary s) {
+        Histogram histogram = s.getHistogram();
+        double seconds = s.seconds();
+        return Arrays.asList(label, s.getCount(), s.getErrors(), percent(s.getErrors(), s.getCount()), s.mean(),
+                s.getCount() == 0 ? 0 : s.getMin(), s.getMax(),
+                (double) histogram.getValueAtPercentile(50), (double) histogram.getValueAtPercentile(90),
+                (double) histogram.getValueAtPercentile(95), (double) histogram.getValueAtPercentile(99),
+                seconds == 0 ? 0 : s.getCount() / seconds,
+                seconds == 0 ? 0 : s.getReceivedBytes() / 1024.0 / seconds,
+                seconds == 0 ? 0 : s.getSentBytes() / 1024.0 / seconds);
+    }
+
+    private static List<Object> top5(String label, LabelSummary s) {
+        List<Object> data = new ArrayList<>(Arrays.asList(label, s.getCount(), s.getErrors()));
+        List<Map.Entry<String, Long>> errors = sortedErrors(s);
+        for (int i = 0; i < 5; i++) {
+            data.add(i < errors.size() ? errors.get(i).getKey() : "");
+            data.add(i < errors.size() ? errors.get(i).getValue() : "");
+        }
+        return data;
+    }
+
+    private static List<Map.Entry<String, Long>> sortedErrors(LabelSummary s) {
+        return s.getErrorTypes().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static double percent(long part, long all) {
+        return all == 0 ? 0 : part * 100.0 / all;
+    }
+
+    private static JSONObject row(List<String> titles, List<Object> data) {
+        JSONObject row = new JSONObject();
+        for (int i = 0; i < titles.size() && i < data.size(); i++) {
+            row.put(titles.get(i), data.get(i));
+        }
+        return row;
+    }
+
+    // percentile为-1/101时分别取最小值/最大值
+    private static TreeMap<Long, Double> percentileSeries(TreeMap<Long, Histogram> histograms, double percentile) {
+        TreeMap<Long, Double> series = new TreeMap<>();
+        histograms.forEach((bucket, histogram) -> {
+            long value;
+            if (percentile < 0) {
+                value = histogram.getMinValue();
+            } else if (percentile > 100) {
+                value = histogram.getMaxValue();
+            } else {
+                value = histogram.getValueAtPercentile(percentile);
+            }
+            series.put(bucket, (double) value);
+        });
+        return series;
+    }
+
+    // 与graph.js中的series结构保持一致，便于复用ReportDataProcess.dealSeries
+    private static JSONObject series(String label, TreeMap<Long, Double> points) {
+        JSONArray data = new JSONArray();
+        points.forEach((x, y) -> {
+            JSONArray point = new JSONArray();
+            point.add(x);
+            point.add(BigDecimal.valueOf(y));
+            data.add(point);
+        });
+        JSONObject series = new JSONObject();
+        series.put("data", data);
+        series.put("isOverall", false);
+        series.put("label", label);
+        series.put("isController", false);
+        return series;
+    }
+
+    private static JSONObject result(List<JSONObject> series, long granularity) {
+        JSONObject result = new JSONObject();
+        result.put("supportsControllersDiscrimination", false);
+        result.put("granularity", granularity);
+        result.put("series", new JSONArray(series));
+        return result;
+    }
+}
@@ -10,6 +10,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DeserializerObjectMapper {
 
+    // 配置完成后只读，线程安全，socket消息反序列化共用
+    private static final ObjectMapper OBJECT_MAPPER = getObjectMapper();
+
     public static ObjectMapper getObjectMapper(){
         ObjectMapper objectMapper = new ObjectMapper();
         SimpleModule module = new SimpleModule();
@@ -22,7 +25,7 @@ public class DeserializerObjectMapper {
 
     public static <T> T deserialize(String jsonString, Class<T> clazz) {
         try {
-            return getObjectMapper().readValue(jsonString, clazz);
+            return OBJECT_MAPPER.readValue(jsonString, clazz);
         } catch (JsonProcessingException e) {
             log.error("反序列化失败:" + jsonString, e);
             throw new RuntimeException(e);
@@ -2,7 +2,7 @@ package com.zhao.easyJmeter.common.task;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
 import com.zhao.easyJmeter.dto.machine.HeartBeatMachineDTO;
 import io.socket.client.Socket;
 import lombok.extern.slf4j.Slf4j;
@@ -25,22 +25,24 @@ public class AgentScheduleTask {
 
     private final Socket socket;
 
-    public AgentScheduleTask(Socket socket) {
+    private final AgentContext agentContext;
+
+    public AgentScheduleTask(Socket socket, AgentContext agentContext) {
         this.socket = socket;
+        this.agentContext = agentContext;
     }
 
     @Scheduled(cron = "${cron.heartBeat:0 0/1 * * * ? }")
     public void heartBeat() throws JsonProcessingException {
         log.info("心跳");
-        JmeterExternal jmeterExternal = new JmeterExternal(socket);
-        HeartBeatMachineDTO heartBeatMachineDTO = new HeartBeatMachineDTO(null,jmeterExternal.getAddress(),jmeterExternal.getPath(),jmeterExternal.getVersion(), true);
+        HeartBeatMachineDTO heartBeatMachineDTO = new HeartBeatMachineDTO(null,agentContext.getAddress(),agentContext.getPath(),agentContext.getVersion(), true);
         String heartBeat = new ObjectMapper().writeValueAsString(heartBeatMachineDTO);
         socket.emit("heartBeat", heartBeat);
     }
 
     @Scheduled(cron = "${cron.deleteTaskRecordStorage:0 0 1 ? * MON }")
     public void deleteTaskRecordStorage() {
-        String directoryPath = System.getenv("JMETER_HOME");
+        String directoryPath = agentContext.getPath();
         try (Stream<Path> paths = Files.walk(Paths.get(directoryPath))) {
             paths.filter(Files::isDirectory)
                     .filter(path -> path.getFileName().toString().startsWith("TASK"))
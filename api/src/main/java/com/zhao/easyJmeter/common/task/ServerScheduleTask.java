@@ -1,5 +1,8 @@
 package com.zhao.easyJmeter.common.task;
 
+import com.corundumstudio.socketio.BroadcastOperations;
+import com.corundumstudio.socketio.SocketIOServer;
+import com.zhao.easyJmeter.common.jmeter.RealtimeDataCache;
 import com.zhao.easyJmeter.common.jmeter.ReportDataProcess;
 import com.zhao.easyJmeter.model.TaskDO;
 import com.zhao.easyJmeter.repository.ReportRepository;
@@ -19,6 +22,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @ConditionalOnProperty(name = "socket.server.enable", havingValue = "true")
@@ -37,6 +41,12 @@ public class ServerScheduleTask {
     @Autowired
     private StatisticsRepository statisticsRepository;
 
+    @Autowired
+    private SocketIOServer socketServer;
+
+    @Autowired
+    private RealtimeDataCache realtimeDataCache;
+
     @Scheduled(cron = "${cron.recordStatistics:0 0/30 * * * ? }")
     public void recordStatistics() {
         List<CaseInfoVO> caseInfoVOS = caseService.selectCase(null);
@@ -48,6 +58,26 @@ public class ServerScheduleTask {
         }
     }
 
+    // 每个任务每个周期只刷新一次，增量数据广播给房间内所有页面
+    @Scheduled(fixedDelayString = "${jmeter.realtime-push-interval:5000}")
+    public void pushRealtimeData() {
+        for (String taskId : realtimeDataCache.subscriptions()) {
+            BroadcastOperations room = socketServer.getRoomOperations(RealtimeDataCache.room(taskId));
+            if (room.getClients().isEmpty()) {
+                realtimeDataCache.unsubscribe(taskId);
+                continue;
+            }
+            try {
+                Map<String, Object> delta = realtimeDataCache.delta(taskId);
+                if (delta != null) {
+                    room.sendEvent("realtimeDelta", delta);
+                }
+            } catch (Exception e) {
+                log.error("推送实时数据失败，任务：" + taskId, e);
+            }
+        }
+    }
+
     @Scheduled(cron = "${cron.jmeterLogClear:0 0 2 ? * * }")
     public void jmeterLogClear() throws IOException {
         String logsPath = Paths.get(System.getProperty("user.dir"), "logs", "jmeter.log").toString();
@@ -1,74 +1,177 @@
 package com.zhao.easyJmeter.common.util;
 
 
+import com.zhao.easyJmeter.common.jmeter.JtlRecordReader;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 流式切分csv：只读一遍源文件，每个分片由独立线程通过有界队列写出，内存占用与文件大小无关
+ * 按ISO_8859_1读写，字节原样透传；multiline为true时引号内的换行属于同一条记录
+ * 连续切分由JFileService.sliceCsvFile按字节范围计算，agent直接从对象存储读取，不经过这里
+ */
 @Slf4j
 public class CSVUtil {
 
+    public enum SplitMode {
+        // 按字节均分为连续的N段，由JFileService.sliceCsvFile处理
+        CONTIGUOUS,
+        // 逐条轮流分配
+        ROUND_ROBIN,
+        // 按指定列的值取哈希，同值的记录落在同一分片
+        HASH
+    }
+
+    private static final int BATCH_RECORDS = 1000;
+
+    private static final int QUEUE_BATCHES = 4;
+
+    private static final int BUFFER_SIZE = 1024 * 256;
+
+    private static final List<String> END = new ArrayList<>();
+
     private final String csvPath;
 
     private final Integer splitNum;
 
     private final Integer fid;
 
+    private SplitMode mode = SplitMode.ROUND_ROBIN;
+
+    // 首行是否为表头，为true时每个分片都保留表头
+    private boolean header = false;
+
+    // HASH模式下的分区列，从0开始
+    private int column = 0;
+
+    private boolean multiline = false;
+
     public CSVUtil(String csvPath, Integer splitNum, Integer fid){
         this.csvPath = csvPath;
         this.splitNum = splitNum;
         this.fid = fid;
     }
 
+    public CSVUtil(String csvPath, Integer splitNum, Integer fid, SplitMode mode, boolean header, int column, boolean multiline){
+        this(csvPath, splitNum, fid);
+        if (mode == SplitMode.CONTIGUOUS) {
+            throw new IllegalArgumentException("连续切分按字节范围读取，不需要切分文件");
+        }
+        this.mode = mode;
+        this.header = header;
+        this.column = column;
+        this.multiline = multiline;
+    }
+
     public Map<Integer, List<String>> splitCSVFile(){
+        long start = System.currentTimeMillis();
+        File file = new File(this.csvPath);
+        long fileSize = file.length();
         List<String> files = new ArrayList<>();
-        // 读取CSV文件
-        List<String[]> records = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(this.csvPath), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                records.add(line.split(","));
-            }
-        } catch (Exception e) {
-            log.error("读取CSV文件失败", e);
+        List<BlockingQueue<List<String>>> queues = new ArrayList<>();
+        List<Future<?>> writers = new ArrayList<>();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(this.splitNum, r -> new Thread(r, "csvSplit-" + counter.getAndIncrement()));
+        for (int i = 0; i < this.splitNum; i++) {
+            String filePath = String.valueOf(Paths.get(file.getParent(), i + "_" + file.getName()));
+            BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+            files.add(filePath);
+            queues.add(queue);
+            writers.add(executor.submit(() -> write(filePath, queue)));
+        }
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < this.splitNum; i++) {
+            batches.add(new ArrayList<>());
         }
-        // 分割CSV文件
-        List<List<String[]>> parts = new ArrayList<>();
-        if (records.size() > this.splitNum) {
-            int chunkSize = (int)Math.ceil((double)records.size() / this.splitNum);
-            for (int i = 0; i < records.size(); i += chunkSize) {
-                parts.add(new ArrayList<>(records.subList(i, Math.min(i + chunkSize, records.size()))));
+        try (JtlRecordReader reader = new JtlRecordReader(file.toPath(), StandardCharsets.ISO_8859_1, this.multiline)) {
+            String headerRecord = this.header ? reader.readRecord() : null;
+            if (headerRecord != null) {
+                for (List<String> batch : batches) {
+                    batch.add(headerRecord);
+                }
             }
-        } else {
-            for (int i = 0; i < this.splitNum; i++) {
-                parts.add(records);
+            // 先读入splitNum+1条记录，不足时与原逻辑一致，每个分片写入全部记录
+            List<String> head = new ArrayList<>();
+            String record;
+            while (head.size() <= this.splitNum && (record = reader.readRecord()) != null) {
+                head.add(record);
             }
-        }
-        // 写入csv文件
-        File file = new File(this.csvPath);
-        String parentDir = file.getParent();
-        for (int i = 0; i < parts.size(); i++) {
-            String filePath = String.valueOf(Paths.get(parentDir, i + "_" + file.getName()));
-            try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
-                for (String[] record : parts.get(i)) {
-                    StringBuilder sb = new StringBuilder(Arrays.toString(record).length()-2);
-                    for(int j=1;j<Arrays.toString(record).length()-1;j++) {
-                        sb.append(Arrays.toString(record).charAt(j));
+            if (head.size() <= this.splitNum) {
+                for (List<String> batch : batches) {
+                    batch.addAll(head);
+                }
+            } else {
+                long sequence = 0;
+                Iterator<String> iterator = head.iterator();
+                while ((record = iterator.hasNext() ? iterator.next() : reader.readRecord()) != null) {
+                    int part;
+                    if (this.mode == SplitMode.HASH) {
+                        String value = JtlRecordReader.field(record, this.column);
+                        part = Math.floorMod(value == null ? 0 : value.hashCode(), this.splitNum);
+                    } else {
+                        part = (int) (sequence % this.splitNum);
                     }
-                    bw.write(sb.toString().replaceAll(",\\s+", ","));
-                    bw.newLine();
+                    List<String> batch = batches.get(part);
+                    batch.add(record);
+                    if (batch.size() >= BATCH_RECORDS) {
+                        put(queues.get(part), writers.get(part), batch);
+                        batches.set(part, new ArrayList<>());
+                    }
+                    sequence++;
                 }
-            } catch (Exception e) {
-                log.error("写入CSV文件失败", e);
             }
-            files.add(filePath);
+            for (int i = 0; i < this.splitNum; i++) {
+                if (!batches.get(i).isEmpty()) {
+                    put(queues.get(i), writers.get(i), batches.get(i));
+                }
+                put(queues.get(i), writers.get(i), END);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } catch (IOException | ExecutionException e) {
+            log.error("切分CSV文件失败", e);
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
         }
-        log.info(files.toString());
+        long cost = Math.max(1, System.currentTimeMillis() - start);
+        log.info("切分CSV文件完成，模式：{}，分片：{}，大小：{}字节，耗时：{}ms，吞吐：{}MB/s", this.mode, files, fileSize, cost,
+                String.format("%.2f", fileSize / 1024.0 / 1024.0 / (cost / 1000.0)));
         Map<Integer, List<String>> map = new HashMap<>();
         map.put(this.fid, files);
         return map;
     }
+
+    // 写出线程异常退出时不再阻塞读取，直接抛出写出异常
+    private static void put(BlockingQueue<List<String>> queue, Future<?> writer, List<String> batch) throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (writer.isDone()) {
+                writer.get();
+                throw new ExecutionException(new IllegalStateException("CSV分片写出线程已退出"));
+            }
+        }
+    }
+
+    private static Void write(String filePath, BlockingQueue<List<String>> queue) throws IOException, InterruptedException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.ISO_8859_1), BUFFER_SIZE)) {
+            List<String> batch;
+            while ((batch = queue.take()) != END) {
+                for (String record : batch) {
+                    writer.write(record);
+                    writer.write('\n');
+                }
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,42 @@
+package com.zhao.easyJmeter.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DigestUtil {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String sha256Hex(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream is = Files.newInputStream(path)) {
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    public static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
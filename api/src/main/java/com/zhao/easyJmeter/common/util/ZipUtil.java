@@ -5,6 +5,8 @@ import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
@@ -12,39 +14,138 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 
+/**
+ * 打包使用ParallelScatterZipCreator，各文件在线程池中并行压缩后按顺序合并写出
+ * 图片、字体等已压缩的文件直接存储，不再重复压缩
+ */
 @Slf4j
 public class ZipUtil {
+
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "jar", "png", "jpg", "jpeg", "gif", "ico", "woff", "woff2", "eot", "svgz", "mp4"));
+
+    private static final int BUFFER_SIZE = 1024 * 256;
+
+    private static final int PIPE_SIZE = 1024 * 1024;
+
     public static void zipFolderWithArchiveOutputStream(String sourceFolderPath, String zipFilePath) throws IOException {
-        Path sourcePath = Paths.get(sourceFolderPath);
-        try (FileOutputStream fos = new FileOutputStream(zipFilePath);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(bos)) {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(zipFilePath), BUFFER_SIZE)) {
+            zipFolderParallel(sourceFolderPath, os);
+        }
+    }
 
-            zipFolder(sourcePath, sourcePath.getParent(), zos);
+    /**
+     * 并行压缩目录写入输出流，压缩包内以目录名为根，输出流不会被关闭
+     */
+    public static void zipFolderParallel(String sourceFolderPath, OutputStream outputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        Path sourcePath = Paths.get(sourceFolderPath);
+        Path parentPath = sourcePath.getParent();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "zip-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // writeTo结束时会关闭线程池，这里只处理提交过程中的异常
+        ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor);
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(sourcePath)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            executor.shutdownNow();
+            throw e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+        }
+        for (Path path : files) {
+            ZipArchiveEntry entry = new ZipArchiveEntry(parentPath.relativize(path).toString().replace("\\", "/"));
+            entry.setMethod(isStored(path) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            entry.setTime(path.toFile().lastModified());
+            creator.addArchiveEntry(entry, () -> {
+                try {
+                    return new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        // 不关闭ZipArchiveOutputStream，由调用方关闭外层输出流
+        ZipArchiveOutputStream zos = new ZipArchiveOutputStream(outputStream);
+        zos.setUseZip64(Zip64Mode.AsNeeded);
+        try {
+            creator.writeTo(zos);
             zos.finish();
+            zos.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof UncheckedIOException ? ((UncheckedIOException) e.getCause()).getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+        log.info("压缩目录完成，文件数：{}，{}，耗时：{}ms", files.size(), creator.getStatisticsMessage(), System.currentTimeMillis() - start);
     }
 
-    private static void zipFolder(Path sourcePath, Path parentPath, ZipArchiveOutputStream zos) throws IOException {
-        Files.walk(sourcePath)
-                .filter(path -> !Files.isDirectory(path))
-                .forEach(path -> {
-                    String entryName = parentPath.relativize(path).toString().replace("\\", "/");
-                    ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
+    /**
+     * 后台线程并行压缩目录，返回压缩包的流，用于边压缩边上传，不落地临时压缩包
+     * 压缩失败时读取会抛出压缩时的异常；提前关闭返回的流会中止压缩
+     */
+    public static InputStream zipFolderStream(String sourceFolderPath) throws IOException {
+        PipedInputStream pipedInputStream = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                zipFolderParallel(sourceFolderPath, pipedOutputStream);
+                pipedOutputStream.close();
+            } catch (Throwable e) {
+                // 不关闭写端，读端会因写线程退出而报错，不会把残缺的压缩包当作正常结束
+                error.set(e);
+                log.error("压缩目录失败", e);
+            }
+        }, "zipStream-" + Paths.get(sourceFolderPath).getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        return new FilterInputStream(pipedInputStream) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    return super.read();
+                } catch (IOException e) {
+                    throw failure(e);
+                }
+            }
 
-                    try (InputStream is = new FileInputStream(path.toFile())) {
-                        zos.putArchiveEntry(entry);
-                        byte[] buffer = new byte[8192];
-                        int len;
-                        while ((len = is.read(buffer)) > 0) {
-                            zos.write(buffer, 0, len);
-                        }
-                        zos.closeArchiveEntry();
-                    } catch (IOException e) {
-                        log.error("zip file error", e);
-                    }
-                });
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    return super.read(b, off, len);
+                } catch (IOException e) {
+                    throw failure(e);
+                }
+            }
+
+            private IOException failure(IOException e) {
+                Throwable cause = error.get();
+                return cause == null ? e : new IOException("压缩目录失败", cause);
+            }
+        };
+    }
+
+    private static boolean isStored(Path path) {
+        String name = path.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        return index >= 0 && STORED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase());
     }
 
     public static void unzipFile(InputStream inputStream, String targetDirectory) throws IOException, ArchiveException {
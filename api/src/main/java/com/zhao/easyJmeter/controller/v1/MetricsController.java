@@ -0,0 +1,32 @@
+package com.zhao.easyJmeter.controller.v1;
+
+import com.zhao.easyJmeter.common.jmeter.metrics.EmbeddedRealtimeBackend;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 内置实时指标存储的写入接口，兼容influxdb的/write，由agent上jmeter的BackendListener直接调用，不需要登录，只接收进行中的实时任务的数据
+ */
+@RestController
+@RequestMapping("/v1/metrics")
+@Api(tags = "实时指标")
+@ConditionalOnProperty(name = "jmeter.realtime-backend", havingValue = "embedded")
+public class MetricsController {
+
+    @Autowired
+    private EmbeddedRealtimeBackend embeddedRealtimeBackend;
+
+    @PostMapping("/write")
+    @ApiOperation(value = "写入实时指标", notes = "influxdb行协议")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void write(@RequestBody(required = false) String body,
+                      @RequestParam(value = "precision", required = false) String precision) {
+        if (body != null) {
+            embeddedRealtimeBackend.write(body, precision);
+        }
+    }
+}
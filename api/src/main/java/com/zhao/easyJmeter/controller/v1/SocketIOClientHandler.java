@@ -1,14 +1,17 @@
 package com.zhao.easyJmeter.controller.v1;
 
 import com.zhao.easyJmeter.common.configuration.InfluxDBProperties;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.AgentContext;
+import com.zhao.easyJmeter.common.jmeter.AgentFileCache;
+import com.zhao.easyJmeter.common.jmeter.AgentPhaseExecutor;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
 import com.zhao.easyJmeter.common.jmeter.links.CleanLink;
 import com.zhao.easyJmeter.common.jmeter.links.CollectLink;
 import com.zhao.easyJmeter.common.jmeter.links.ConfigureLink;
 import com.zhao.easyJmeter.common.jmeter.links.RunLink;
 import com.zhao.easyJmeter.common.serializer.DeserializerObjectMapper;
-import com.zhao.easyJmeter.common.util.ThreadUtil;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
 import com.zhao.easyJmeter.model.TaskDO;
 import com.zhao.easyJmeter.service.JFileService;
@@ -30,6 +33,18 @@ public class SocketIOClientHandler {
     @Autowired
     private InfluxDBProperties influxDBProperties;
 
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
+    @Autowired
+    private AgentContext agentContext;
+
+    @Autowired
+    private AgentFileCache agentFileCache;
+
+    @Autowired
+    private AgentPhaseExecutor agentPhaseExecutor;
+
     @Autowired
     public SocketIOClientHandler(Socket socket){
         this.socket = socket;
@@ -72,11 +87,10 @@ public class SocketIOClientHandler {
             log.info(taskDO.toString());
             log.info("收到启动命令，任务进入配置状态，任务编号：" + taskDO.getTaskId());
             // 配置逻辑
-            ConfigureLink configureLink = new ConfigureLink(socket, jFileService, influxDBProperties);
+            ConfigureLink configureLink = new ConfigureLink(socket, jFileService, influxDBProperties, jmeterProperties, agentContext, agentFileCache);
             configureLink.setMachineCutFileVO(machineCutFileVO);
             configureLink.setTask(taskDO);
-            configureLink.setName(taskDO.getTaskId() + "_" + JmeterStatusEnum.CONFIGURE.getDesc());
-            configureLink.start();
+            agentPhaseExecutor.submit(taskDO.getTaskId(), JmeterStatusEnum.CONFIGURE, configureLink);
         });
     }
 
@@ -85,10 +99,9 @@ public class SocketIOClientHandler {
         socket.on("taskRun", args -> {
             TaskDO taskDO = DeserializerObjectMapper.deserialize(args[0].toString(), TaskDO.class);
             log.info("收到运行命令，任务进入压测运行状态，任务编号：" + taskDO.getTaskId());
-            RunLink runLink = new RunLink(socket);
-            runLink.setName(taskDO.getTaskId() + "_" + JmeterStatusEnum.RUN.getDesc());
+            RunLink runLink = new RunLink(socket, jFileService, jmeterProperties, agentContext);
             runLink.setTask(taskDO);
-            runLink.start();
+            agentPhaseExecutor.submit(taskDO.getTaskId(), JmeterStatusEnum.RUN, runLink);
         });
     }
 
@@ -97,10 +110,9 @@ public class SocketIOClientHandler {
         socket.on("taskCollect", args -> {
             TaskDO taskDO = DeserializerObjectMapper.deserialize(args[0].toString(), TaskDO.class);
             log.info("收到收集命令，任务进入压测结果收集状态，任务编号：" + taskDO.getTaskId());
-            CollectLink collectLink = new CollectLink(socket, jFileService);
-            collectLink.setName(taskDO.getTaskId() + "_" + JmeterStatusEnum.COLLECT.getDesc());
+            CollectLink collectLink = new CollectLink(socket, jFileService, jmeterProperties, agentContext);
             collectLink.setTask(taskDO);
-            collectLink.start();
+            agentPhaseExecutor.submit(taskDO.getTaskId(), JmeterStatusEnum.COLLECT, collectLink);
         });
     }
 
@@ -109,44 +121,28 @@ public class SocketIOClientHandler {
         socket.on("taskClean", args -> {
             TaskDO taskDO = DeserializerObjectMapper.deserialize(args[0].toString(), TaskDO.class);
             log.info("收到清理命令，任务进入环境清理状态，任务编号：" + taskDO.getTaskId());
-            CleanLink cleanLink = new CleanLink(socket);
-            cleanLink.setName(taskDO.getTaskId() + "_" + JmeterStatusEnum.CLEAN.getDesc());
-            cleanLink.setTask(taskDO);
-            cleanLink.start();
+            this.startClean(taskDO);
         });
     }
 
+    // 清理环节在该任务当前环节结束后开始
+    private void startClean(TaskDO taskDO) {
+        CleanLink cleanLink = new CleanLink(socket, agentContext);
+        cleanLink.setTask(taskDO);
+        agentPhaseExecutor.submit(taskDO.getTaskId(), JmeterStatusEnum.CLEAN, cleanLink);
+    }
+
     // 监听失败后终止
     private void taskInterrupt() {
         socket.on("taskInterrupt", args -> {
             TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(args[0].toString(), TaskMachineDTO.class);
             TaskDO taskDO = taskMachineDTO.getTaskDO();
-            String configureThreadName = taskDO.getTaskId() + "_" + JmeterStatusEnum.CONFIGURE.getDesc();
-            String runThreadName = taskDO.getTaskId() + "_" + JmeterStatusEnum.RUN.getDesc();
-            String collectThreadName = taskDO.getTaskId() + "_" + JmeterStatusEnum.COLLECT.getDesc();
-            String cleanThreadName = taskDO.getTaskId() + "_" + JmeterStatusEnum.CLEAN.getDesc();
-            log.info(taskDO.getTaskId() + "的" + JmeterStatusEnum.getEnumByCode(taskMachineDTO.getStatus()).getDesc() + "环节异常");
-            if (taskMachineDTO.getStatus().equals(JmeterStatusEnum.CONFIGURE.getValue())){
-                // 配置异常终止配置环节进入清理环节
-                ThreadUtil.interruptThread(configureThreadName);
-                CleanLink cleanLink = new CleanLink(socket);
-                cleanLink.setName(cleanThreadName);
-                cleanLink.setTask(taskDO);
-                cleanLink.start();
-            } else if (taskMachineDTO.getStatus().equals(JmeterStatusEnum.RUN.getValue())) {
-                // 运行异常终止运行环节进入清理环节
-                ThreadUtil.interruptThread(runThreadName);
-                CleanLink cleanLink = new CleanLink(socket);
-                cleanLink.setName(cleanThreadName);
-                cleanLink.setTask(taskDO);
-                cleanLink.start();
-            } else if (taskMachineDTO.getStatus().equals(JmeterStatusEnum.COLLECT.getValue())) {
-                // 收集异常终止收集环节进入清理环节
-                ThreadUtil.interruptThread(collectThreadName);
-                CleanLink cleanLink = new CleanLink(socket);
-                cleanLink.setName(cleanThreadName);
-                cleanLink.setTask(taskDO);
-                cleanLink.start();
+            JmeterStatusEnum status = JmeterStatusEnum.getEnumByCode(taskMachineDTO.getStatus());
+            log.info(taskDO.getTaskId() + "的" + status.getDesc() + "环节异常");
+            // 配置、运行、收集异常时终止该环节进入清理环节，终止只发出取消信号，清理环节排在被终止的环节之后
+            if (status == JmeterStatusEnum.CONFIGURE || status == JmeterStatusEnum.RUN || status == JmeterStatusEnum.COLLECT) {
+                agentPhaseExecutor.interrupt(taskDO.getTaskId(), status);
+                this.startClean(taskDO);
             }
         });
 
@@ -156,7 +152,7 @@ public class SocketIOClientHandler {
         socket.on("modifyQPSLimit", args -> {
             TaskDO taskDO = DeserializerObjectMapper.deserialize(args[0].toString(), TaskDO.class);
             log.info("收到修改QPS限制命令，任务编号：" + taskDO.getTaskId());
-            new JmeterExternal(socket).modifyQPSLimit(taskDO);
+            new JmeterExternal(socket, agentContext).modifyQPSLimit(taskDO);
         });
     }
 
@@ -12,18 +12,22 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.zhao.easyJmeter.common.enumeration.DebugTypeEnum;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
 import com.zhao.easyJmeter.common.enumeration.TaskResultEnum;
-import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
+import com.zhao.easyJmeter.common.jmeter.MachineLivenessRegistry;
+import com.zhao.easyJmeter.common.jmeter.RealtimeDataCache;
+import com.zhao.easyJmeter.common.jmeter.ReportPipeline;
+import com.zhao.easyJmeter.common.jmeter.TaskEventDispatcher;
+import com.zhao.easyJmeter.common.jmeter.TaskProgressAggregator;
+import com.zhao.easyJmeter.common.jmeter.TaskStateRegistry;
+import com.zhao.easyJmeter.common.jmeter.WebRoomPublisher;
+import com.zhao.easyJmeter.common.jmeter.metrics.RealtimeMetricsBackend;
 import com.zhao.easyJmeter.common.serializer.DeserializerObjectMapper;
 import com.zhao.easyJmeter.dto.jcase.CaseDebugDTO;
 import com.zhao.easyJmeter.dto.machine.HeartBeatMachineDTO;
+import com.zhao.easyJmeter.dto.task.FileCacheStatDTO;
 import com.zhao.easyJmeter.dto.task.TaskMachineDTO;
 import com.zhao.easyJmeter.dto.task.TaskProgressMachineDTO;
-import com.zhao.easyJmeter.model.CaseDO;
 import com.zhao.easyJmeter.model.MachineDO;
 import com.zhao.easyJmeter.model.TaskDO;
-import com.zhao.easyJmeter.model.TaskLogDO;
-import com.zhao.easyJmeter.repository.ReportRepository;
-import com.zhao.easyJmeter.service.*;
 import com.zhao.easyJmeter.service.*;
 import com.zhao.easyJmeter.vo.CaseDebugVO;
 import com.zhao.easyJmeter.vo.CutFileVO;
@@ -32,16 +36,18 @@ import com.zhao.easyJmeter.vo.TaskProgressVO;
 import io.socket.client.Socket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.HashMap;
+import javax.annotation.PostConstruct;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 @RestController
-public class SocketIOServerHandler {
+public class SocketIOServerHandler implements ReportPipeline.Listener {
 
     private final Socket socket;
 
@@ -49,41 +55,56 @@ public class SocketIOServerHandler {
     private SocketIOServer socketServer;
 
     @Autowired
-    private MachineService machineService;
+    private CaseService caseService;
 
     @Autowired
-    private TaskLogService taskLogService;
+    private TaskService taskService;
 
     @Autowired
-    private CaseService caseService;
+    Cache<String, Object> caffeineCache;
 
     @Autowired
-    private TaskService taskService;
+    private RealtimeDataCache realtimeDataCache;
 
     @Autowired
-    Cache<String, Object> caffeineCache;
+    private TaskEventDispatcher taskEventDispatcher;
 
     @Autowired
-    private JFileService jFileService;
+    private ReportPipeline reportPipeline;
 
     @Autowired
-    private ReportRepository reportRepository;
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private WebRoomPublisher webRoomPublisher;
+
+    @Autowired
+    private TaskProgressAggregator taskProgressAggregator;
+
+    @Autowired
+    private MachineLivenessRegistry machineLivenessRegistry;
+
+    @Autowired
+    private RealtimeMetricsBackend realtimeMetricsBackend;
 
     public SocketIOServerHandler(Socket socket) {
         this.socket = socket;
     }
 
+    @PostConstruct
+    public void init() {
+        reportPipeline.setListener(this);
+    }
+
     @OnConnect
     public void onConnect(SocketIOClient client) {
         log.info("Client connected: " + client.getSessionId());
         // 处理连接事件
-        // 判断客户端类型 加入room
+        // 判断客户端类型 加入room，web端按页面通过roomJoin加入task:/case:/debug:房间
         HandshakeData handshakeData = client.getHandshakeData();
         String type = handshakeData.getUrlParams().get("client-type").get(0);
         if (type.equals("machine")){
             client.joinRoom("machine");
-        } else if (type.equals("web")) {
-            client.joinRoom("web");
         }
     }
 
@@ -91,12 +112,8 @@ public class SocketIOServerHandler {
     public void onDisconnect(SocketIOClient client) {
         log.info("Client disconnected: " + client.getSessionId());
         // 处理断开连接事件
-        // 压力机客户端离线后处理
-        if (machineService.getByClientId(client.getSessionId().toString()) != null){
-            // 设置为已下线状态
-            HeartBeatMachineDTO heartBeatMachineDTO = new HeartBeatMachineDTO();
-            heartBeatMachineDTO.setClientId(client.getSessionId().toString());
-            machineService.setMachineStatus(heartBeatMachineDTO, false);
+        // 压力机客户端离线后设置为已下线状态，由存活登记处批量写入
+        if (machineLivenessRegistry.disconnect(client.getSessionId().toString())){
             log.info("压力机已经离线:" + client.getSessionId());
         }
 
@@ -112,198 +129,211 @@ public class SocketIOServerHandler {
     }
 
     @OnEvent("heartBeat")
-    @Transactional
-    public void  handleHeartBeatEvent(SocketIOClient client, String heartBeat) throws JsonProcessingException {
-        HeartBeatMachineDTO heartBeatMachineDTO = new ObjectMapper().readValue(heartBeat, HeartBeatMachineDTO.class);
+    public void  handleHeartBeatEvent(SocketIOClient client, String heartBeat) {
+        HeartBeatMachineDTO heartBeatMachineDTO = DeserializerObjectMapper.deserialize(heartBeat, HeartBeatMachineDTO.class);
         heartBeatMachineDTO.setClientId(client.getSessionId().toString());
-        machineService.setMachineStatus(heartBeatMachineDTO, true);
+        if (machineLivenessRegistry.heartBeat(heartBeatMachineDTO.getClientId(), heartBeatMachineDTO)) {
+            // 清理命令发出时压力机可能还没有重连(如服务重启后继续的报告处理)，新会话登记后补发
+            for (TaskDO taskDO : taskStateRegistry.pendingClean(heartBeatMachineDTO.getAddress())) {
+                log.info("压力机重新连接，补发清理命令，压力机：" + heartBeatMachineDTO.getAddress() + "，任务：" + taskDO.getTaskId());
+                client.joinRoom(taskDO.getTaskId());
+                client.sendEvent("taskClean", taskDO);
+            }
+        }
     }
 
     // 接收配置完成通知
     @OnEvent("configureFinish")
-    public synchronized void configureFinish(SocketIOClient client, String message) {
+    public void configureFinish(SocketIOClient client, String message) {
         log.info("收到完成配置消息" + message);
         TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(message, TaskMachineDTO.class);
+        taskEventDispatcher.dispatch(taskMachineDTO.getTaskDO().getTaskId(), "configureFinish", () -> this.handleConfigureFinish(taskMachineDTO));
+    }
+
+    private void handleConfigureFinish(TaskMachineDTO taskMachineDTO) {
         TaskDO taskDO = taskMachineDTO.getTaskDO();
-        CaseDO caseDO = caseService.getById(taskDO.getJmeterCase());
-        MachineDO machineDO = machineService.getByAddress(taskMachineDTO.getMachineIp());
-        // 更新task日志
-        List<TaskLogDO> taskLogs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.CONFIGURE, taskMachineDTO.getMachineIp(), null);
-        if (taskLogs.isEmpty()){
-            // 如果是发生异常后进入此环节，插入当前环节运行成功日志
-            taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.CONFIGURE,true,machineDO.getAddress(),machineDO.getId()));
-        } else {
-            taskLogService.updateTaskLog(taskLogs.get(0), taskMachineDTO.getResult());
-        }
+        // 更新task日志，如果是发生异常后进入此环节，插入当前环节日志
+        taskStateRegistry.finishLog(taskDO, JmeterStatusEnum.CONFIGURE, taskMachineDTO.getMachineIp(), taskMachineDTO.getResult());
         // 向web端发送task日志
-        socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
-        // 获取task当前环节已完成的日志记录
-        List<TaskLogDO> logs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.CONFIGURE, null, true);
+        this.sendTaskLogs(taskDO.getTaskId());
         // 修改机器节点jmeter状态
-        machineService.updateMachineStatus(machineDO, JmeterStatusEnum.RUN);
+        taskStateRegistry.updateMachineStatus(taskDO, taskMachineDTO.getMachineIp(), JmeterStatusEnum.RUN);
         // 如果当前环节所有节点全部完成，修改用例状态，发送下一环节指令
-        if (logs.size()==taskDO.getMachineNum()) {
-            caseService.updateCaseStatus(caseDO, JmeterStatusEnum.RUN);
+        if (taskStateRegistry.countFinished(taskDO, JmeterStatusEnum.CONFIGURE) == taskDO.getMachineNum()) {
+            taskStateRegistry.updateCaseStatus(taskDO, JmeterStatusEnum.RUN);
             // 给agent发消息进入压测运行环节
             socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskRun", taskDO);
             // 插入task运行日志,初始化运行进度
-            String[] machines = taskDO.getMachine().split(",");
-            HashMap<String, Integer> map = new HashMap<>();
-            for (String m : machines) {
-                MachineDO machine = machineService.getById(Integer.valueOf(m));
-                // 插入task日志
-                taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.RUN,null,machine.getAddress(),machine.getId()));
-                map.put(machine.getAddress(), 0);
+            List<String> addresses = new ArrayList<>();
+            for (MachineDO machine : taskStateRegistry.createLogs(taskDO, JmeterStatusEnum.RUN)) {
+                addresses.add(machine.getAddress());
             }
-            //将初始化进度写入缓存
-            caffeineCache.put(taskDO.getTaskId() + "_PROGRESS", map);
+            taskProgressAggregator.start(taskDO.getTaskId(), taskDO.getJmeterCase(), addresses);
 
             // 向web端报告进度
-            TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.RUN, map, TaskResultEnum.IN_PROGRESS);
-            socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+            TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.RUN, taskProgressAggregator.snapshot(taskDO.getTaskId()), TaskResultEnum.IN_PROGRESS);
+            webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
             // 向web端发送task日志
-            socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
+            this.sendTaskLogs(taskDO.getTaskId());
         }
 
     }
 
     // 接收压测运行完成消息
     @OnEvent("runFinish")
-    public synchronized void runFinish(SocketIOClient client, String message) {
+    public void runFinish(SocketIOClient client, String message) {
         log.info("收到压测运行完成消息" + message);
         TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(message, TaskMachineDTO.class);
+        taskEventDispatcher.dispatch(taskMachineDTO.getTaskDO().getTaskId(), "runFinish", () -> this.handleRunFinish(taskMachineDTO));
+    }
+
+    private void handleRunFinish(TaskMachineDTO taskMachineDTO) {
         TaskDO taskDO = taskMachineDTO.getTaskDO();
-        CaseDO caseDO = caseService.getById(taskDO.getJmeterCase());
-        MachineDO machineDO = machineService.getByAddress(taskMachineDTO.getMachineIp());
-        // 更新task日志
-        List<TaskLogDO> taskLogs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.RUN, taskMachineDTO.getMachineIp(), null);
-        if (taskLogs.isEmpty()){
-            // 如果是发生异常后进入此环节，插入当前环节运行成功日志
-            taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.RUN,true,machineDO.getAddress(),machineDO.getId()));
-        } else {
-            taskLogService.updateTaskLog(taskLogs.get(0), taskMachineDTO.getResult());
-        }
+        // 更新task日志，如果是发生异常后进入此环节，插入当前环节日志
+        taskStateRegistry.finishLog(taskDO, JmeterStatusEnum.RUN, taskMachineDTO.getMachineIp(), taskMachineDTO.getResult());
         // 向web端发送task日志
-        socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
-        // 获取task当前环节已完成的日志记录
-        List<TaskLogDO> logs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.RUN, null, true);
+        this.sendTaskLogs(taskDO.getTaskId());
         // 修改机器节点jmeter状态
-        machineService.updateMachineStatus(machineDO, JmeterStatusEnum.COLLECT);
+        taskStateRegistry.updateMachineStatus(taskDO, taskMachineDTO.getMachineIp(), JmeterStatusEnum.COLLECT);
         // 如果当前环节所有节点全部完成，修改机器、用例状态，发送下一环节指令
-        if (logs.size()==taskDO.getMachineNum()) {
-            caseService.updateCaseStatus(caseDO, JmeterStatusEnum.COLLECT);
+        if (taskStateRegistry.countFinished(taskDO, JmeterStatusEnum.RUN) == taskDO.getMachineNum()) {
+            taskStateRegistry.updateCaseStatus(taskDO, JmeterStatusEnum.COLLECT);
+            taskProgressAggregator.finish(taskDO.getTaskId());
             // 给agent发消息进入结果收集环节
             socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskCollect", taskDO);
             // 插入task收集日志
-            String[] machines = taskDO.getMachine().split(",");
-            for (String m : machines) {
-                MachineDO machine = machineService.getById(Integer.valueOf(m));
-                taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.COLLECT,null,machine.getAddress(),machine.getId()));
-            }
+            taskStateRegistry.createLogs(taskDO, JmeterStatusEnum.COLLECT);
 
             // 向web端报告进度
             TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.COLLECT, null, TaskResultEnum.IN_PROGRESS);
-            socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+            webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
             // 向web端发送task日志
-            socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
+            this.sendTaskLogs(taskDO.getTaskId());
         }
 
     }
 
     // 接收结果收集完成消息
     @OnEvent("collectFinish")
-    public synchronized void collectFinish(SocketIOClient client, String message) {
+    public void collectFinish(SocketIOClient client, String message) {
         log.info("收到结果收集完成消息" + message);
         TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(message, TaskMachineDTO.class);
+        taskEventDispatcher.dispatch(taskMachineDTO.getTaskDO().getTaskId(), "collectFinish", () -> this.handleCollectFinish(taskMachineDTO));
+    }
+
+    private void handleCollectFinish(TaskMachineDTO taskMachineDTO) {
         TaskDO taskDO = taskMachineDTO.getTaskDO();
-        CaseDO caseDO = caseService.getById(taskDO.getJmeterCase());
-        MachineDO machineDO = machineService.getByAddress(taskMachineDTO.getMachineIp());
-        // 更新task日志
-        List<TaskLogDO> taskLogs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.COLLECT, taskMachineDTO.getMachineIp(), null);
-        if (taskLogs.isEmpty()){
-            // 如果是发生异常后进入此环节，插入当前环节运行成功日志
-            taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.COLLECT,true,machineDO.getAddress(),machineDO.getId()));
-        } else {
-            taskLogService.updateTaskLog(taskLogs.get(0), taskMachineDTO.getResult());
-        }
+        // 更新task日志，如果是发生异常后进入此环节，插入当前环节日志
+        taskStateRegistry.finishLog(taskDO, JmeterStatusEnum.COLLECT, taskMachineDTO.getMachineIp(), taskMachineDTO.getResult());
         // 向web端发送task日志
-        socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
-        // 获取task当前环节已完成的日志记录
-        List<TaskLogDO> logs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.COLLECT, null, true);
+        this.sendTaskLogs(taskDO.getTaskId());
         // 修改机器节点jmeter状态
-        machineService.updateMachineStatus(machineDO, JmeterStatusEnum.CLEAN);
+        taskStateRegistry.updateMachineStatus(taskDO, taskMachineDTO.getMachineIp(), JmeterStatusEnum.CLEAN);
         // 如果当前环节所有节点全部完成，修改机器、用例状态，发送下一环节指令
-        if (logs.size()==taskDO.getMachineNum()) {
-            // 服务端对收集结果处理
-            new JmeterExternal().serverCollect(taskDO, jFileService, reportRepository);
-
-            caseService.updateCaseStatus(caseDO, JmeterStatusEnum.CLEAN);
-            // 给agent发消息进入清理环节
-            socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskClean", taskDO);
-            // 插入task清理日志
-            String[] machines = taskDO.getMachine().split(",");
-            for (String m : machines) {
-                MachineDO machine = machineService.getById(Integer.valueOf(m));
-                taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.CLEAN,null,machine.getAddress(),machine.getId()));
+        if (taskStateRegistry.countFinished(taskDO, JmeterStatusEnum.COLLECT) == taskDO.getMachineNum()) {
+            // 服务端对收集结果处理，在报告流水线中执行，完成后进入清理环节
+            reportPipeline.submit(taskDO);
+        }
+    }
+
+    @Override
+    public void reportFinish(TaskDO taskDO) {
+        this.startClean(taskDO);
+    }
+
+    @Override
+    public void reportFail(TaskDO taskDO, Throwable e) {
+        // 报告处理失败时标记任务异常，仍然通知agent清理环境
+        TaskDO task = taskService.getTaskById(taskDO.getId());
+        taskService.updateTaskResult(task, TaskResultEnum.EXCEPTION);
+        this.startClean(taskDO);
+    }
+
+    private void startClean(TaskDO taskDO) {
+        taskStateRegistry.updateCaseStatus(taskDO, JmeterStatusEnum.CLEAN);
+        // 给agent发消息进入清理环节，服务重启后继续的报告处理需要先把压力机重新加入任务房间
+        this.joinTaskRoom(taskDO);
+        socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskClean", taskDO);
+        // 插入task清理日志
+        taskStateRegistry.createLogs(taskDO, JmeterStatusEnum.CLEAN);
+
+        // 向web端报告进度
+        TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.CLEAN, null, TaskResultEnum.IN_PROGRESS);
+        webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
+        // 向web端发送task日志
+        this.sendTaskLogs(taskDO.getTaskId());
+    }
+
+    // socket房间只在内存中，服务重启后agent重连只加入machine房间，按压力机当前会话重新加入任务房间
+    private void joinTaskRoom(TaskDO taskDO) {
+        for (String machineId : taskDO.getMachine().split(",")) {
+            String clientId = machineLivenessRegistry.clientId(Integer.valueOf(machineId));
+            SocketIOClient client = clientId == null ? null : socketServer.getClient(UUID.fromString(clientId));
+            if (client == null) {
+                log.warn("压力机不在线，无法加入任务房间，压力机：" + machineId + "，任务：" + taskDO.getTaskId());
+                continue;
             }
+            client.joinRoom(taskDO.getTaskId());
+        }
+    }
 
-            // 向web端报告进度
-            TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.CLEAN, null, TaskResultEnum.IN_PROGRESS);
-            socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
-            // 向web端发送task日志
-            socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
+    // 向web端发送task日志的变化部分，web端合并到时间线
+    private void sendTaskLogs(String taskId) {
+        Map<String, Object> diff = taskStateRegistry.takeLogDiff(taskId);
+        if (diff != null) {
+            webRoomPublisher.publish(WebRoomPublisher.taskRoom(taskId), "taskLogsDiff", diff);
         }
     }
 
     // 接收环境清理完成消息
     @OnEvent("cleanFinish")
-    public synchronized void cleanFinish(SocketIOClient client, String message) {
+    public void cleanFinish(SocketIOClient client, String message) {
         log.info("收到环境清理完成消息" + message);
         TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(message, TaskMachineDTO.class);
+        taskEventDispatcher.dispatch(taskMachineDTO.getTaskDO().getTaskId(), "cleanFinish", () -> this.handleCleanFinish(taskMachineDTO));
+    }
+
+    private void handleCleanFinish(TaskMachineDTO taskMachineDTO) {
         TaskDO taskDO = taskMachineDTO.getTaskDO();
-        CaseDO caseDO = caseService.getById(taskDO.getJmeterCase());
-        MachineDO machineDO = machineService.getByAddress(taskMachineDTO.getMachineIp());
-        // 更新task日志
-        List<TaskLogDO> taskLogs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.CLEAN, taskMachineDTO.getMachineIp(), null);
-        if (taskLogs.isEmpty()){
-            // 如果是发生异常后进入此环节，插入当前环节运行成功日志
-            taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),taskDO.getJmeterCase(),JmeterStatusEnum.CLEAN,true,machineDO.getAddress(),machineDO.getId()));
-        } else {
-            taskLogService.updateTaskLog(taskLogs.get(0), taskMachineDTO.getResult());
-        }
+        // 更新task日志，如果是发生异常后进入此环节，插入当前环节日志
+        taskStateRegistry.finishLog(taskDO, JmeterStatusEnum.CLEAN, taskMachineDTO.getMachineIp(), taskMachineDTO.getResult());
         // 向web端发送task日志
-        socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
-        // 获取task当前环节已完成的日志记录
-        List<TaskLogDO> logs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.CLEAN, null, true);
+        this.sendTaskLogs(taskDO.getTaskId());
         // 修改机器节点jmeter状态
-        machineService.updateMachineStatus(machineDO, JmeterStatusEnum.IDLE);
+        taskStateRegistry.updateMachineStatus(taskDO, taskMachineDTO.getMachineIp(), JmeterStatusEnum.IDLE);
         // 如果当前环节所有节点全部完成，修改用例状态
-        if (logs.size()==taskDO.getMachineNum()) {
-            caseService.updateCaseStatus(caseDO, JmeterStatusEnum.IDLE);
+        if (taskStateRegistry.countFinished(taskDO, JmeterStatusEnum.CLEAN) == taskDO.getMachineNum()) {
+            taskStateRegistry.updateCaseStatus(taskDO, JmeterStatusEnum.IDLE);
             // 标记task状态为成功
             TaskDO task = taskService.getTaskById(taskDO.getId());
             if (task.getResult() == TaskResultEnum.IN_PROGRESS) {
                 taskService.updateTaskResult(task, TaskResultEnum.SUCCESS);
             }
+            // 任务结束，状态立即写入数据库并移出内存
+            taskStateRegistry.release(taskDO.getTaskId());
+            taskProgressAggregator.finish(taskDO.getTaskId());
 
             // 向web端报告进度
             TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.IDLE, null, TaskResultEnum.SUCCESS);
-            socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+            webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
         }
 
     }
 
     // 接收环节失败消息
     @OnEvent("linkFail")
-    public synchronized void linkFail(SocketIOClient client, String message) {
+    public void linkFail(SocketIOClient client, String message) {
         TaskMachineDTO taskMachineDTO = DeserializerObjectMapper.deserialize(message, TaskMachineDTO.class);
         log.info("收到linkFail:" + taskMachineDTO.toString());
+        taskEventDispatcher.dispatch(taskMachineDTO.getTaskDO().getTaskId(), "linkFail", () -> this.handleLinkFail(taskMachineDTO));
+    }
+
+    private void handleLinkFail(TaskMachineDTO taskMachineDTO) {
         TaskDO taskDO = taskMachineDTO.getTaskDO();
         // 更新task日志为失败
-        TaskLogDO taskLog = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), JmeterStatusEnum.getEnumByCode(taskMachineDTO.getStatus()), taskMachineDTO.getMachineIp(), null).get(0);
-        taskLogService.updateTaskLog(taskLog, taskMachineDTO.getResult());
+        taskStateRegistry.finishLog(taskDO, JmeterStatusEnum.getEnumByCode(taskMachineDTO.getStatus()), taskMachineDTO.getMachineIp(), taskMachineDTO.getResult());
         // 向web端发送task日志
-        socketServer.getRoomOperations("web").sendEvent("taskLogs", taskService.getTaskLogByTaskId(taskDO.getTaskId()));
+        this.sendTaskLogs(taskDO.getTaskId());
         // 标记task状态为失败
         TaskDO task = taskService.getTaskById(taskDO.getId());
         taskService.updateTaskResult(task, TaskResultEnum.EXCEPTION);
@@ -314,37 +344,74 @@ public class SocketIOServerHandler {
         }
         // 向web端报告进度
         TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.INTERRUPT, null, TaskResultEnum.EXCEPTION);
-        socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+        webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
     }
 
     @OnEvent("cutCsv")
-    public synchronized void cutCsv(SocketIOClient client, String message) {
+    public void cutCsv(SocketIOClient client, String message) {
         TaskDO taskDO = DeserializerObjectMapper.deserialize(message, TaskDO.class);
+        taskEventDispatcher.dispatch(taskDO.getTaskId(), "cutCsv", () -> this.handleCutCsv(taskDO));
+    }
+
+    private void handleCutCsv(TaskDO taskDO) {
         // 如果是第一次收到指定task的切分，则进行文件切分
         if (caffeineCache.getIfPresent(taskDO.getTaskId() + "_CUT") == null) {
             caffeineCache.put(taskDO.getTaskId() + "_CUT", true);
             log.info("收到cutCsv:" + taskDO.getTaskId());
             Map<String, List<CutFileVO>> machineDOCutFileVOListMap = taskService.cutCsv(taskDO);
-            MachineCutFileVO machineCutFileVO = new MachineCutFileVO(machineDOCutFileVOListMap, taskDO, false);
+            MachineCutFileVO machineCutFileVO = new MachineCutFileVO(machineDOCutFileVOListMap, taskDO, false, realtimeMetricsBackend.writeUrl());
             socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskConfigure", machineCutFileVO);
         }
     }
 
+    // web端按页面加入task:/case:/debug:房间，只接收所查看的任务、用例和调试的推送
+    @OnEvent("roomJoin")
+    public void roomJoin(SocketIOClient client, String room) {
+        if (WebRoomPublisher.isWebRoom(room)) {
+            client.joinRoom(room);
+        }
+    }
+
+    @OnEvent("roomLeave")
+    public void roomLeave(SocketIOClient client, String room) {
+        if (WebRoomPublisher.isWebRoom(room)) {
+            client.leaveRoom(room);
+        }
+    }
+
+    @OnEvent("realtimeSubscribe")
+    public void realtimeSubscribe(SocketIOClient client, String taskId) {
+        // 先加入房间再登记订阅，避免推送任务把刚订阅的空房间清理掉
+        client.joinRoom(RealtimeDataCache.room(taskId));
+        realtimeDataCache.subscribe(taskId);
+        client.sendEvent("realtimeSnapshot", realtimeDataCache.snapshot(taskId));
+    }
+
+    @OnEvent("realtimeUnsubscribe")
+    public void realtimeUnsubscribe(SocketIOClient client, String taskId) {
+        client.leaveRoom(RealtimeDataCache.room(taskId));
+    }
+
     @OnEvent("machineTaskProgress")
     public void machineTaskProgress(SocketIOClient client, String message) throws JsonProcessingException {
         TaskProgressMachineDTO taskProgressMachineDTO = new ObjectMapper().readValue(message, TaskProgressMachineDTO.class);
-        HashMap<String, Integer> map = (HashMap<String, Integer>) caffeineCache.get(taskProgressMachineDTO.getTaskId() + "_PROGRESS", key -> new HashMap<>());
-        map.put(taskProgressMachineDTO.getMachineIp(), taskProgressMachineDTO.getProcess());
-        caffeineCache.put(taskProgressMachineDTO.getTaskId() + "_PROGRESS", map);
+        // 只更新进度表，由进度汇总按周期合并推送到web端，不经过任务信箱
+        taskProgressAggregator.update(taskProgressMachineDTO.getTaskId(), taskProgressMachineDTO.getMachineIp(), taskProgressMachineDTO.getProcess());
+    }
 
-        // 向web端报告进度
-        TaskProgressVO taskProgressVO = new TaskProgressVO(taskProgressMachineDTO.getTaskId(), JmeterStatusEnum.RUN, map, TaskResultEnum.IN_PROGRESS);
-        socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+    // 接收agent文件缓存命中情况，只记录日志
+    @OnEvent("fileCacheStat")
+    public void fileCacheStat(SocketIOClient client, String message) {
+        FileCacheStatDTO fileCacheStatDTO = DeserializerObjectMapper.deserialize(message, FileCacheStatDTO.class);
+        log.info("任务{}节点{}文件缓存命中：{}，未命中：{}，节省下载：{}字节，耗时：{}ms", fileCacheStatDTO.getTaskId(), fileCacheStatDTO.getMachineIp(),
+                fileCacheStatDTO.getHits(), fileCacheStatDTO.getMisses(), fileCacheStatDTO.getBytesSaved(), fileCacheStatDTO.getCost());
     }
 
     @OnEvent("caseDebug")
     public void caseDebug(SocketIOClient client, String message){
         CaseDebugDTO caseDebugDTO = DeserializerObjectMapper.deserialize(message, CaseDebugDTO.class);
+        // 调试结果只推送给发起调试的页面；页面在发起前已通过roomJoin加入，这里兼容未加入的旧页面
+        client.joinRoom(WebRoomPublisher.debugRoom(caseDebugDTO.getDebugId()));
         try {
             caseService.debugCase(caseDebugDTO);
         } catch (Exception e) {
@@ -352,7 +419,7 @@ public class SocketIOServerHandler {
             CaseDebugVO caseDebugVO = CaseDebugVO.builder().type(DebugTypeEnum.ERROR).caseId(caseDebugDTO.getCaseId()).
                     debugId(caseDebugDTO.getDebugId()).log(e.getMessage()).build();
             // 通知web端发生异常
-            socketServer.getRoomOperations("web").sendEvent("caseDebugResult", caseDebugVO);
+            webRoomPublisher.publish(WebRoomPublisher.debugRoom(caseDebugDTO.getDebugId()), "caseDebugResult", caseDebugVO);
         }
 
     }
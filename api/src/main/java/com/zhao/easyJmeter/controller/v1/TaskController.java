@@ -1,6 +1,8 @@
 package com.zhao.easyJmeter.controller.v1;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.zhao.easyJmeter.common.jmeter.RealtimeDataCache;
+import com.zhao.easyJmeter.common.jmeter.TaskEventDispatcher;
 import com.zhao.easyJmeter.common.util.PageUtil;
 import com.zhao.easyJmeter.dto.task.*;
 import com.zhao.easyJmeter.vo.*;
@@ -23,7 +25,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -42,6 +43,12 @@ public class TaskController {
     @Autowired
     private TaskInfluxdbService taskInfluxdbService;
 
+    @Autowired
+    private RealtimeDataCache realtimeDataCache;
+
+    @Autowired
+    private TaskEventDispatcher taskEventDispatcher;
+
     @Autowired
     private AggregateReportRepository aggregateReportRepository;
 
@@ -120,35 +127,38 @@ public class TaskController {
     @ApiOperation(value = "获取实时数据", notes = "传入测试记录id、数据类型")
     @LoginRequired
     public Map<String, Object> getRealTimeData(@RequestBody TaskRealTimeDTO validator){
-        Map<String, Object> times = taskInfluxdbService.getTimes(validator.getTaskId());
-        String startTime = times.get("startTime").toString();
-        String endTime = times.get("endTime").toString();
-        List<OffsetDateTime> points = (List<OffsetDateTime>) times.get("points");
         String type = validator.getType();
         String taskId = validator.getTaskId();
+        // 各类型数据共用同一份任务缓存，只增量查询influxdb
         switch (type) {
             case "TIMES":
-                return times;
+                return realtimeDataCache.times(taskId);
             case "COUNT":
-                return taskInfluxdbService.sampleCounts(taskId, startTime, endTime);
+                return realtimeDataCache.sampleCounts(taskId);
             case "THROUGHPUT":
-                return taskInfluxdbService.throughputGraph(taskId, startTime, endTime, points);
+                return realtimeDataCache.throughputGraph(taskId);
             case "ERROR":
-                return taskInfluxdbService.errorGraph(taskId, startTime, endTime, points);
+                return realtimeDataCache.errorGraph(taskId);
             case "ERROR_INFO":
-                return taskInfluxdbService.errorInfo(taskId, startTime, endTime);
+                return realtimeDataCache.errorInfo(taskId);
             default:
                 throw new ParameterException(12501);
         }
     }
 
+    @GetMapping("/dispatcher/metrics")
+    @ApiOperation(value = "任务事件处理情况", notes = "各事件类型的排队数、处理耗时，以及各任务等待处理的事件数")
+    @LoginRequired
+    public Map<String, Object> dispatcherMetrics() {
+        return taskEventDispatcher.metrics();
+    }
+
     @PostMapping("/aggregateReport/search")
-    @ApiOperation(value = "聚合报告查询", notes = "根据时间范围、应用、标签查询聚合报告，按照应用、标签进行分类")
+    @ApiOperation(value = "聚合报告查询", notes = "根据时间范围、应用、标签查询聚合报告，按照应用、标签进行分类，按压测窗口分页")
     @PermissionMeta(value = "聚合报告记录", module = "jmeter数据")
     @LoginRequired
-    public List<Map<String, Object>> aggregateReportSearch(@RequestBody @Validated JmeterParamDTO validator) {
-        List<JmeterParamDTO> events = taskInfluxdbService.getEvents(validator);
-        return taskInfluxdbService.getAggregateReport(events);
+    public PageResponseVO<Map<String, Object>> aggregateReportSearch(@RequestBody @Validated JmeterParamDTO validator) {
+        return taskInfluxdbService.searchAggregateReport(validator);
     }
 
     @PostMapping("/aggregateReport/archive")
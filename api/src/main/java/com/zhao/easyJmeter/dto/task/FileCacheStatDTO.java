@@ -0,0 +1,24 @@
+package com.zhao.easyJmeter.dto.task;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileCacheStatDTO implements Serializable {
+
+    private static final long serialVersionUID = -2870359941627412530L;
+    private String taskId;
+    private String machineIp;
+    private Integer hits;
+    private Integer misses;
+    // 命中缓存省去的下载量，字节
+    private Long bytesSaved;
+    private Long bytesDownloaded;
+    // 获取文件耗时，毫秒
+    private Long cost;
+}
@@ -4,6 +4,9 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -23,4 +26,11 @@ public class JmeterParamDTO {
 
     private String label;
 
+    @Min(value = 0, message = "{page.number.min}")
+    private Integer page;
+
+    @Min(value = 1, message = "{page.count.min}")
+    @Max(value = 30, message = "{page.count.max}")
+    private Integer count;
+
 }
\ No newline at end of file
@@ -15,4 +15,8 @@ public class TaskProgressMachineDTO implements Serializable {
     private String taskId;
     private String machineIp;
     private Integer process;
+    // jmeter进程树累计cpu时间，毫秒
+    private Long cpuTime;
+    // jmeter进程树常驻内存，字节
+    private Long rss;
 }
@@ -19,6 +19,4 @@ public interface MachineMapper  extends BaseMapper<MachineDO> {
     MachineDO selectByClientId(String clientId);
 
     ArrayList<MachineDO> selectAll();
-
-    ArrayList<MachineDO> executable();
 }
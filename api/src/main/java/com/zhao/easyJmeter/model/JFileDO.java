@@ -28,4 +28,6 @@ public class JFileDO extends BaseModel implements Serializable {
     private Integer originId;
 
     private String taskId;
+
+    private String sha256;
 }
@@ -5,6 +5,7 @@ import com.zhao.easyJmeter.vo.CutFileVO;
 import com.zhao.easyJmeter.vo.JFileVO;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
@@ -18,21 +19,31 @@ public interface JFileService {
 
     String downloadFile(Integer id, String dir);
 
+    void downloadObject(JFileDO jFileDO, String filePath);
+
     void downloadCutFile(List<CutFileVO> cutFileVOList, String dir);
 
     List<JFileDO> createCsvCutFiles(Map<Integer, List<String>> fileMp);
 
+    List<CutFileVO> sliceCsvFile(JFileDO jFileDO, Integer sliceNum, Boolean header);
+
+    void downloadSlice(JFileDO jFileDO, CutFileVO cutFileVO, String filePath);
+
     JFileDO searchById(Integer id);
 
     Boolean needCut(String[] fileIds);
 
     JFileDO createFile(String filePath);
 
+    JFileDO createFile(String name, InputStream inputStream);
+
     Boolean updateById(JFileDO jFileDO);
 
     void downLoadJmeterLogZip(String taskId, OutputStream outputStream) throws IOException;
 
     List<JFileDO> searchJtlByTaskId(String taskId);
 
+    List<JFileDO> searchFileByTaskId(String taskId, String type);
+
     String getStoreDir();
 }
@@ -3,10 +3,10 @@ package com.zhao.easyJmeter.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
 import com.zhao.easyJmeter.dto.machine.CreateOrUpdateMachineDTO;
-import com.zhao.easyJmeter.dto.machine.HeartBeatMachineDTO;
 import com.zhao.easyJmeter.model.MachineDO;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 public interface MachineService {
 
@@ -20,15 +20,19 @@ public interface MachineService {
 
     boolean deleteMachine(Integer id);
 
-    void setMachineStatus(HeartBeatMachineDTO heartBeatMachineDTO, Boolean online);
-
     MachineDO getByClientId(String clientId);
 
     ArrayList<MachineDO> getAll();
 
     boolean updateMachineStatus(MachineDO machineDO, JmeterStatusEnum status);
 
+    boolean updateMachineStatus(Collection<Integer> ids, JmeterStatusEnum status);
+
     MachineDO getByAddress(String address);
 
     void setMachineOffline();
+
+    void setMachineOffline(Collection<Integer> ids);
+
+    void updateMachineLiveness(Collection<MachineDO> machines);
 }
@@ -1,6 +1,7 @@
 package com.zhao.easyJmeter.service;
 
 import com.zhao.easyJmeter.dto.task.JmeterParamDTO;
+import com.zhao.easyJmeter.vo.PageResponseVO;
 
 import java.time.OffsetDateTime;
 import java.util.List;
@@ -22,4 +23,6 @@ public interface TaskInfluxdbService {
 
     List<Map<String, Object>> getAggregateReport(List<JmeterParamDTO> jmeterParamDTOList);
 
+    PageResponseVO<Map<String, Object>> searchAggregateReport(JmeterParamDTO jmeterParamDTO);
+
 }
@@ -1,6 +1,5 @@
 package com.zhao.easyJmeter.service.impl;
 
-import com.corundumstudio.socketio.SocketIOServer;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.security.AnyTypePermission;
@@ -8,6 +7,8 @@ import com.zhao.easyJmeter.common.LocalUser;
 import com.zhao.easyJmeter.common.enumeration.DebugTypeEnum;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
 import com.zhao.easyJmeter.common.jmeter.JmeterExternal;
+import com.zhao.easyJmeter.common.jmeter.TaskProgressAggregator;
+import com.zhao.easyJmeter.common.jmeter.WebRoomPublisher;
 import com.zhao.easyJmeter.common.jmeter.xstream.AssertionResult;
 import com.zhao.easyJmeter.common.jmeter.xstream.HttpSample;
 import com.zhao.easyJmeter.common.jmeter.xstream.JmeterLogDeal;
@@ -58,7 +59,10 @@ public class CaseServiceImpl implements CaseService {
     private JFileService jFileService;
 
     @Autowired
-    private SocketIOServer socketServer;
+    private WebRoomPublisher webRoomPublisher;
+
+    @Autowired
+    private TaskProgressAggregator taskProgressAggregator;
 
     @Override
     public boolean createCase(CreateOrUpdateCaseDTO caseDTO) {
@@ -109,7 +113,7 @@ public class CaseServiceImpl implements CaseService {
         List<CaseInfoVO> caseInfoVOS = caseMapper.select(id);
         for (CaseInfoVO caseInfoVO : caseInfoVOS) {
             if (caseInfoVO.getStatus() == JmeterStatusEnum.RUN) {
-                caseInfoVO.setTaskProgress((HashMap<String, Object>) caffeineCache.getIfPresent(caseInfoVO.getTaskId() + "_PROGRESS"));
+                caseInfoVO.setTaskProgress(taskProgressAggregator.snapshot(caseInfoVO.getTaskId()));
             }
         }
         return caseInfoVOS;
@@ -190,7 +194,7 @@ public class CaseServiceImpl implements CaseService {
         }
         // 初始化服务端配置
         JmeterExternal jmeterExternal = new JmeterExternal();
-        jmeterExternal.initServerJmeterUtils(null);
+        jmeterExternal.initServerJmeterUtils();
         // 如果debug没有配置过，则进行配置
         if (caffeineCache.getIfPresent(configKey) == null) {
             // 配置jmx文件，缓存jmx文件路径
@@ -198,7 +202,7 @@ public class CaseServiceImpl implements CaseService {
             caffeineCache.put(configKey, map);
             CaseDebugVO caseDebugVO = CaseDebugVO.builder().type(DebugTypeEnum.CONFIG).caseId(caseId).debugId(debugId).build();
             // 通知web端配置完成
-            socketServer.getRoomOperations("web").sendEvent("caseDebugResult", caseDebugVO);
+            webRoomPublisher.publish(WebRoomPublisher.debugRoom(debugId), "caseDebugResult", caseDebugVO);
         }
         Map<String, String> map = (Map<String, String>) caffeineCache.getIfPresent(configKey);
         log.info(map.toString());
@@ -236,15 +240,15 @@ public class CaseServiceImpl implements CaseService {
 
             CaseDebugVO caseDebugVO = CaseDebugVO.builder().type(DebugTypeEnum.SAMPLE).caseId(caseId).debugId(debugId).result(testResults).build();
             // 通知web端数据请求完成
-            socketServer.getRoomOperations("web").sendEvent("caseDebugResult", caseDebugVO);
+            webRoomPublisher.publish(WebRoomPublisher.debugRoom(debugId), "caseDebugResult", caseDebugVO);
         }
         // 获取jmeter日志
         String logsPath = Paths.get(System.getProperty("user.dir"), "logs", "jmeter.log").toString();
         String[] logs = JmeterLogDeal.cutContentFromFile(logsPath, configKey + l + ":debug_start", configKey + l + ":debug_end");
-        CaseDebugVO caseDebugVO = CaseDebugVO.builder().type(DebugTypeEnum.LOG).caseId(caseId).debugId(debugId).build();
         for (String log:logs) {
-            caseDebugVO.setLog(log);
-            socketServer.getRoomOperations("web").sendEvent("caseDebugResult", caseDebugVO);
+            // 推送前在缓冲区中排队，每行日志单独一个对象
+            CaseDebugVO caseDebugVO = CaseDebugVO.builder().type(DebugTypeEnum.LOG).caseId(caseId).debugId(debugId).log(log).build();
+            webRoomPublisher.publish(WebRoomPublisher.debugRoom(debugId), "caseDebugResult", caseDebugVO);
         }
         // 清理jtl文件
         try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(jtlPath), StandardOpenOption.TRUNCATE_EXISTING)) {
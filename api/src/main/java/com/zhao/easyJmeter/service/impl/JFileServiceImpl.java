@@ -1,6 +1,8 @@
 package com.zhao.easyJmeter.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.zhao.easyJmeter.common.util.DigestUtil;
 import com.zhao.easyJmeter.mapper.JFileMapper;
 import com.zhao.easyJmeter.model.JFileDO;
 import com.zhao.easyJmeter.module.file.FileProperties;
@@ -17,6 +19,7 @@ import io.minio.PutObjectArgs;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingInputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -26,6 +29,8 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.*;
@@ -53,8 +58,17 @@ public class JFileServiceImpl implements JFileService {
     @Autowired
     private JFileMapper jFileMapper;
 
+    @Autowired
+    private Cache<String, Object> caffeineCache;
+
     private static final int BUFFER_SIZE = 1024 * 1024 * 2;
 
+    // 未知长度上传时的分段大小，MinIO要求不小于5MB
+    private static final long PART_SIZE = 1024 * 1024 * 10;
+
+    // 查找分片边界时每次按范围读取的长度
+    static final int SCAN_SIZE = 1024 * 64;
+
     @Override
     public JFileVO createFile(MultipartFile file) {
         String name = file.getOriginalFilename();
@@ -64,13 +78,16 @@ public class JFileServiceImpl implements JFileService {
         }
         String timestamp = String.valueOf(Instant.now().toEpochMilli());
         String objectName = timestamp + "." + fileExtension;
-        try {
-            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(objectName).stream(file.getInputStream(), file.getSize(), -1).build());
+        // 上传的同时计算sha256，agent按内容摘要缓存文件
+        MessageDigest digest = DigestUtil.sha256();
+        try (InputStream is = new DigestInputStream(file.getInputStream(), digest)) {
+            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(objectName).stream(is, file.getSize(), -1).build());
         } catch (Exception e) {
             log.info(e.toString());
             throw new FailedException(12101);
         }
         JFileDO jFileDO = new JFileDO();
+        jFileDO.setSha256(DigestUtil.hex(digest.digest()));
         jFileDO.setName(name);
         jFileDO.setPath("/" + bucketName + "/" + objectName);
         jFileDO.setUrl(endpoint + "/" + bucketName + "/" + objectName);
@@ -114,6 +131,12 @@ public class JFileServiceImpl implements JFileService {
 
         }
 
+        this.downloadObject(jFileDO, filePath);
+        return filePath;
+    }
+
+    @Override
+    public void downloadObject(JFileDO jFileDO, String filePath) {
         String bucket = jFileDO.getPath().split("/")[1];
         String name = jFileDO.getPath().split("/")[2];
         try {
@@ -122,8 +145,6 @@ public class JFileServiceImpl implements JFileService {
             log.error("文件下载异常:" + e);
             throw new RuntimeException(e);
         }
-
-        return filePath;
     }
 
     @Override
@@ -157,12 +178,14 @@ public class JFileServiceImpl implements JFileService {
             File file = new File(path);
             String timestamp = String.valueOf(Instant.now().toEpochMilli());
             String fileName = timestamp + "_" + file.getName();
-            try {
-                minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(fileName).stream(new FileInputStream(file), file.length(), -1).build());
+            MessageDigest digest = DigestUtil.sha256();
+            try (InputStream is = new DigestInputStream(new FileInputStream(file), digest)) {
+                minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(fileName).stream(is, file.length(), -1).build());
             } catch (Exception e) {
                 log.error("上传切分文件异常:" + e);
             }
             JFileDO cutfile = new JFileDO();
+            cutfile.setSha256(DigestUtil.hex(digest.digest()));
             cutfile.setName(file.getName());
             cutfile.setPath("/" + bucketName + "/" + fileName);
             cutfile.setUrl(endpoint + "/" + bucketName + "/" + fileName);
@@ -176,6 +199,113 @@ public class JFileServiceImpl implements JFileService {
         return jFileDOS;
     }
 
+    @Override
+    public List<CutFileVO> sliceCsvFile(JFileDO jFileDO, Integer sliceNum, Boolean header) {
+        // 文件内容不变，同一文件的分片范围可复用
+        String key = "CSV_SLICE_" + jFileDO.getId() + "_" + sliceNum + "_" + header;
+        long[] slices = (long[]) caffeineCache.get(key, k -> this.sliceRanges(jFileDO, sliceNum, header));
+        List<CutFileVO> cutFileVOList = new ArrayList<>();
+        for (int i = 0; i < sliceNum; i++) {
+            cutFileVOList.add(new CutFileVO(jFileDO, slices[0], slices[2 * i + 1], slices[2 * i + 2]));
+        }
+        return cutFileVOList;
+    }
+
+    // 返回[表头长度, 分片1起点, 分片1长度, ..., 分片n起点, 分片n长度]，分片边界对齐到行首
+    private long[] sliceRanges(JFileDO jFileDO, Integer sliceNum, Boolean header) {
+        String bucket = jFileDO.getPath().split("/")[1];
+        String name = jFileDO.getPath().split("/")[2];
+        long[] slices = sliceRanges((offset, length) -> minioClient.getObject(
+                GetObjectArgs.builder().bucket(bucket).object(name).offset(offset).length(length).build()),
+                jFileDO.getSize(), sliceNum, header);
+        log.info("计算csv分片范围，文件：{}，大小：{}字节，分片：{}", jFileDO.getName(), jFileDO.getSize(), Arrays.toString(slices));
+        return slices;
+    }
+
+    static long[] sliceRanges(RangeReader reader, long size, int sliceNum, boolean header) {
+        long bodyStart = header ? nextLineStart(reader, 0, size) : 0;
+        long bodySize = size - bodyStart;
+        long[] bounds = new long[sliceNum + 1];
+        bounds[0] = bodyStart;
+        bounds[sliceNum] = size;
+        for (int i = 1; i < sliceNum; i++) {
+            long target = bodyStart + bodySize * i / sliceNum;
+            bounds[i] = Math.max(bounds[i - 1], nextLineStart(reader, Math.max(bodyStart, target - 1), size));
+        }
+        boolean empty = false;
+        for (int i = 0; i < sliceNum; i++) {
+            empty = empty || bounds[i + 1] == bounds[i];
+        }
+        long[] slices = new long[sliceNum * 2 + 1];
+        slices[0] = bodyStart;
+        for (int i = 0; i < sliceNum; i++) {
+            // 记录数不足分片数时，每个分片都使用全部记录
+            slices[2 * i + 1] = empty ? bodyStart : bounds[i];
+            slices[2 * i + 2] = empty ? bodySize : bounds[i + 1] - bounds[i];
+        }
+        return slices;
+    }
+
+    // 从from开始按范围读取，返回第一个换行符之后的位置，没有换行时返回文件长度
+    static long nextLineStart(RangeReader reader, long from, long size) {
+        byte[] buffer = new byte[SCAN_SIZE];
+        long position = from;
+        while (position < size) {
+            long length = Math.min(SCAN_SIZE, size - position);
+            try (InputStream stream = reader.open(position, length)) {
+                int read = stream.readNBytes(buffer, 0, (int) length);
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+            } catch (Exception e) {
+                log.error("读取csv分片边界异常:" + e);
+                throw new RuntimeException(e);
+            }
+        }
+        return size;
+    }
+
+    // 按范围读取文件内容
+    interface RangeReader {
+        InputStream open(long offset, long length) throws Exception;
+    }
+
+    @Override
+    public void downloadSlice(JFileDO jFileDO, CutFileVO cutFileVO, String filePath) {
+        String bucket = jFileDO.getPath().split("/")[1];
+        String name = jFileDO.getPath().split("/")[2];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE)) {
+            if (cutFileVO.getHeaderLength() != null && cutFileVO.getHeaderLength() > 0) {
+                this.copyRange(bucket, name, 0, cutFileVO.getHeaderLength(), out);
+            }
+            if (cutFileVO.getLength() > 0) {
+                this.copyRange(bucket, name, cutFileVO.getOffset(), cutFileVO.getLength(), out);
+            }
+        } catch (IOException e) {
+            log.error("文件下载异常:" + e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void copyRange(String bucket, String name, long offset, long length, OutputStream out) {
+        try (InputStream stream = minioClient.getObject(GetObjectArgs.builder().bucket(bucket).object(name).offset(offset).length(length).build())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        } catch (Exception e) {
+            log.error("文件下载异常:" + e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public JFileDO searchById(Integer id) {
         return jFileMapper.selectById(id);
@@ -196,13 +326,15 @@ public class JFileServiceImpl implements JFileService {
     public JFileDO createFile(String filePath) {
         File file = new File(filePath);
         String fileName = Instant.now().toEpochMilli() + "_" + file.getName();
-        try {
-            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(fileName).stream(new FileInputStream(file), file.length(), -1).build());
+        MessageDigest digest = DigestUtil.sha256();
+        try (InputStream is = new DigestInputStream(new FileInputStream(file), digest)) {
+            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(fileName).stream(is, file.length(), -1).build());
         } catch (Exception e) {
             log.error("文件上传异常:" + e);
             throw new RuntimeException(e);
         }
         JFileDO jFileDO = new JFileDO();
+        jFileDO.setSha256(DigestUtil.hex(digest.digest()));
         jFileDO.setPath("/" + bucketName + "/" + fileName);
         jFileDO.setName(file.getName());
         jFileDO.setUrl(endpoint + "/" + bucketName + "/" + fileName);
@@ -212,6 +344,31 @@ public class JFileServiceImpl implements JFileService {
         return jFileMapper.selectById(jFileDO.getId());
     }
 
+    /**
+     * 上传长度未知的流，按分片大小走MinIO分段上传，不需要先写入本地文件
+     */
+    @Override
+    public JFileDO createFile(String name, InputStream inputStream) {
+        String fileName = Instant.now().toEpochMilli() + "_" + name;
+        MessageDigest digest = DigestUtil.sha256();
+        CountingInputStream counter = new CountingInputStream(new DigestInputStream(inputStream, digest));
+        try (InputStream is = counter) {
+            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(fileName).stream(is, -1, PART_SIZE).build());
+        } catch (Exception e) {
+            log.error("文件上传异常:" + e);
+            throw new RuntimeException(e);
+        }
+        JFileDO jFileDO = new JFileDO();
+        jFileDO.setSha256(DigestUtil.hex(digest.digest()));
+        jFileDO.setPath("/" + bucketName + "/" + fileName);
+        jFileDO.setName(name);
+        jFileDO.setUrl(endpoint + "/" + bucketName + "/" + fileName);
+        jFileDO.setSize(counter.getBytesRead());
+        jFileDO.setType(name.substring(name.lastIndexOf(".")+1));
+        jFileMapper.insert(jFileDO);
+        return jFileMapper.selectById(jFileDO.getId());
+    }
+
     @Override
     public Boolean updateById(JFileDO jFileDO) {
         return jFileMapper.updateById(jFileDO) > 0;
@@ -253,6 +410,14 @@ public class JFileServiceImpl implements JFileService {
         return jFileMapper.selectList(queryWrapper);
     }
 
+    @Override
+    public List<JFileDO> searchFileByTaskId(String taskId, String type) {
+        QueryWrapper<JFileDO> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("task_id", taskId).eq("type", type);
+
+        return jFileMapper.selectList(queryWrapper);
+    }
+
     @Override
     public String getStoreDir() {
         String format = new SimpleDateFormat("yyyy/MM/dd").format(new Date());
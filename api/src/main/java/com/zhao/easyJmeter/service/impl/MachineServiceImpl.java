@@ -1,10 +1,10 @@
 package com.zhao.easyJmeter.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
 import com.zhao.easyJmeter.common.mybatis.Page;
 import com.zhao.easyJmeter.dto.machine.CreateOrUpdateMachineDTO;
-import com.zhao.easyJmeter.dto.machine.HeartBeatMachineDTO;
 import com.zhao.easyJmeter.mapper.MachineMapper;
 import com.zhao.easyJmeter.model.MachineDO;
 import com.zhao.easyJmeter.service.MachineService;
@@ -12,8 +12,10 @@ import io.github.talelin.autoconfigure.exception.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 @Slf4j
 @Service
@@ -62,30 +64,6 @@ public class MachineServiceImpl implements MachineService {
         return machineMapper.deleteById(id) > 0;
     }
 
-    @Override
-    public void setMachineStatus(HeartBeatMachineDTO heartBeatMachineDTO, Boolean online) {
-        MachineDO machine;
-        if (!online) {
-            machine = machineMapper.selectByClientId(heartBeatMachineDTO.getClientId());
-            machine.setIsOnline(false);
-            machine.setJmeterStatus(JmeterStatusEnum.IDLE);
-            machine.setClientId("");
-            machineMapper.updateById(machine);
-        } else {
-            machine = machineMapper.selectByAddress(heartBeatMachineDTO.getAddress());
-            if (machine != null) {
-                machine.setPath(heartBeatMachineDTO.getPath());
-                machine.setVersion(heartBeatMachineDTO.getVersion());
-                machine.setIsOnline(heartBeatMachineDTO.getIsOnline());
-                machine.setClientId(heartBeatMachineDTO.getClientId());
-                machineMapper.updateById(machine);
-            } else {
-                log.info("压力机地址未在web端维护：" + heartBeatMachineDTO.getAddress());
-            }
-        }
-
-    }
-
     @Override
     public MachineDO getByClientId(String clientId) {
         return machineMapper.selectByClientId(clientId);
@@ -102,6 +80,13 @@ public class MachineServiceImpl implements MachineService {
         return machineMapper.updateById(machineDO) > 0;
     }
 
+    @Override
+    public boolean updateMachineStatus(Collection<Integer> ids, JmeterStatusEnum status) {
+        // 只更新jmeter状态，不覆盖心跳更新的在线状态
+        MachineDO machineDO = MachineDO.builder().jmeterStatus(status).build();
+        return ids.isEmpty() || machineMapper.update(machineDO, new QueryWrapper<MachineDO>().in("id", ids)) > 0;
+    }
+
     @Override
     public MachineDO getByAddress(String address) {
         return machineMapper.selectByAddress(address);
@@ -117,4 +102,22 @@ public class MachineServiceImpl implements MachineService {
             machineMapper.updateById(machineDO);
         }
     }
+
+    @Override
+    public void setMachineOffline(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        MachineDO machineDO = MachineDO.builder().isOnline(false).jmeterStatus(JmeterStatusEnum.IDLE).clientId("").build();
+        machineMapper.update(machineDO, new QueryWrapper<MachineDO>().in("id", ids));
+    }
+
+    @Override
+    @Transactional
+    public void updateMachineLiveness(Collection<MachineDO> machines) {
+        // 只带心跳相关字段，不覆盖jmeter状态
+        for (MachineDO machineDO : machines) {
+            machineMapper.updateById(machineDO);
+        }
+    }
 }
@@ -1,7 +1,13 @@
 package com.zhao.easyJmeter.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
+import com.zhao.easyJmeter.common.jmeter.AggregatePercentiles;
+import com.zhao.easyJmeter.common.jmeter.RealtimeDataCache;
 import com.zhao.easyJmeter.dto.task.JmeterParamDTO;
 import com.zhao.easyJmeter.service.TaskInfluxdbService;
+import com.zhao.easyJmeter.vo.PageResponseVO;
+import io.github.talelin.autoconfigure.exception.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 import org.influxdb.InfluxDB;
 import org.influxdb.dto.Query;
@@ -12,6 +18,7 @@ import org.springframework.stereotype.Service;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,6 +28,15 @@ public class TaskInfluxdbServiceImpl implements TaskInfluxdbService {
     @Autowired
     private final InfluxDB influxDB;
 
+    @Autowired
+    private Cache<String, Object> caffeineCache;
+
+    @Autowired
+    private AggregatePercentiles aggregatePercentiles;
+
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
     public TaskInfluxdbServiceImpl(InfluxDB influxDB) {
         this.influxDB = influxDB;
     }
@@ -64,14 +80,16 @@ public class TaskInfluxdbServiceImpl implements TaskInfluxdbService {
             endTime =  zonedDateTime.format(formatter);
         }
 
+        // 时间点按粒度对齐，粒度随时间范围自动放大，最后一个点为结束时间
+        OffsetDateTime endPoint = OffsetDateTime.parse(endTime);
+        long startMs = OffsetDateTime.parse(startTime).toInstant().toEpochMilli();
+        long endMs = endPoint.toInstant().toEpochMilli();
+        long stepMs = RealtimeDataCache.resolution(startMs, endMs) * 1000;
         List<OffsetDateTime> points = new ArrayList<>();
-        OffsetDateTime currentPoint = OffsetDateTime.parse(startTime);
-        while (currentPoint.isBefore(OffsetDateTime.parse(endTime))) {
-            points.add(currentPoint);
-            currentPoint = currentPoint.plusSeconds(5 - currentPoint.getSecond() % 5);
+        for (long point = (startMs / stepMs + 1) * stepMs; point < endMs; point += stepMs) {
+            points.add(OffsetDateTime.ofInstant(Instant.ofEpochMilli(point), endPoint.getOffset()));
         }
-        points.add(OffsetDateTime.parse(endTime));
-        points.remove(0);
+        points.add(endPoint);
 
         String start = OffsetDateTime.parse(startTime, formatter).format(newFormatter);
         String end = OffsetDateTime.parse(endTime, formatter).format(newFormatter);
@@ -139,91 +157,54 @@ public class TaskInfluxdbServiceImpl implements TaskInfluxdbService {
 
     @Override
     public Map<String, Object> throughputGraph(String taskId, String startTime, String endTime, List<OffsetDateTime> points) {
-        if (startTime.isEmpty() || endTime.isEmpty()){
+        if (startTime.isEmpty() || endTime.isEmpty() || points.isEmpty()){
             return Map.of();
         }
-        String query = String.format("SELECT count FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' group by transaction tz('Asia/Shanghai')",
-                startTime, endTime, taskId);
-        QueryResult.Result result = influxDB.query(new Query(query)).getResults().get(0);
+        long step = this.step(startTime, endTime);
+        String query = String.format("SELECT sum(count) FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' group by time(%ds), transaction fill(0) tz('Asia/Shanghai')",
+                startTime, endTime, taskId, step);
         Map<String, Object> map = new HashMap<>();
-        if (result.getSeries()!=null){
-            List<QueryResult.Series> series = result.getSeries();
-            for (QueryResult.Series seriesItem : series) {
-                List<Object> data = new ArrayList<>();
-                String transaction = seriesItem.getTags().get("transaction");
-                List<List<Object>> values = seriesItem.getValues();
-                for (OffsetDateTime point : points){
-                    OffsetDateTime lastPoint = point.minusSeconds(5);
-                    double count = 0;
-                    for (List<Object> value : values) {
-                        OffsetDateTime valuePoint = OffsetDateTime.parse(value.get(0).toString());
-                        if (valuePoint.isAfter(lastPoint) && valuePoint.isBefore(point)) {
-                            count += (double)value.get(1);
-                        }
-                    }
-                    Duration duration = Duration.between(lastPoint.toInstant(), point.toInstant());
-                    double tps = count / duration.getSeconds();
-                    data.add(List.of(point,tps));
-                }
-                map.put(transaction, data);
-            }
-        }
+        this.bucketGraph(query, points, step, true, null, map);
         return map;
     }
 
     @Override
     public Map<String, Object> errorGraph(String taskId, String startTime, String endTime, List<OffsetDateTime> points) {
-        if (startTime.isEmpty() || endTime.isEmpty()){
+        if (startTime.isEmpty() || endTime.isEmpty() || points.isEmpty()){
             return Map.of();
         }
-        String query = String.format("SELECT count FROM jmeter WHERE statut='ko' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='all' group by transaction tz('Asia/Shanghai')",
-                startTime, endTime, taskId);
-        QueryResult.Result result = influxDB.query(new Query(query)).getResults().get(0);
+        long step = this.step(startTime, endTime);
+        String query = String.format("SELECT sum(count) FROM jmeter WHERE statut='ko' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='all' group by time(%ds), transaction fill(0) tz('Asia/Shanghai')",
+                startTime, endTime, taskId, step);
         Map<String, Object> map = new HashMap<>();
-        if (result.getSeries()!=null){
-            List<QueryResult.Series> series = result.getSeries();
-            for (QueryResult.Series seriesItem : series) {
-                List<Object> data = new ArrayList<>();
-                String transaction = seriesItem.getTags().get("transaction");
-                List<List<Object>> values = seriesItem.getValues();
-                for (OffsetDateTime point : points){
-                    OffsetDateTime lastPoint = point.minusSeconds(5);
-                    double count = 0;
-                    for (List<Object> value : values) {
-                        OffsetDateTime valuePoint = OffsetDateTime.parse(value.get(0).toString());
-                        if (valuePoint.isAfter(lastPoint) && valuePoint.isBefore(point)) {
-                            count += (double)value.get(1);
-                        }
-                    }
-                    data.add(List.of(point,count));
-                }
-                map.put(transaction, data);
-            }
-        }
+        this.bucketGraph(query, points, step, false, null, map);
 
-        String queryAll = String.format("SELECT countError FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction='all'",
-                startTime, endTime, taskId);
-        QueryResult.Result resultAll = influxDB.query(new Query(queryAll)).getResults().get(0);
-        if (resultAll.getSeries()!=null){
-            List<QueryResult.Series> series = resultAll.getSeries();
-            for (QueryResult.Series seriesItem : series) {
-                List<Object> data = new ArrayList<>();
-                List<List<Object>> values = seriesItem.getValues();
-                for (OffsetDateTime point : points){
-                    OffsetDateTime lastPoint = point.minusSeconds(5);
-                    double count = 0;
-                    for (List<Object> value : values) {
-                        OffsetDateTime valuePoint = OffsetDateTime.parse(value.get(0).toString());
-                        if (valuePoint.isAfter(lastPoint) && valuePoint.isBefore(point)) {
-                            count += (double)value.get(1);
-                        }
-                    }
-                    data.add(List.of(point,count));
+        String queryAll = String.format("SELECT sum(countError) FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction='all' group by time(%ds) fill(0) tz('Asia/Shanghai')",
+                startTime, endTime, taskId, step);
+        this.bucketGraph(queryAll, points, step, false, "all", map);
+        return map;
+    }
+
+    // 与getTimes生成时间点时使用相同的粒度
+    private long step(String startTime, String endTime) {
+        return RealtimeDataCache.resolution(OffsetDateTime.parse(startTime).toInstant().toEpochMilli(), OffsetDateTime.parse(endTime).toInstant().toEpochMilli());
+    }
+
+    // 分桶在influxdb中完成，按毫秒时间戳映射到时间点
+    private void bucketGraph(String query, List<OffsetDateTime> points, long step, boolean rate, String key, Map<String, Object> map) {
+        QueryResult.Result result = influxDB.query(new Query(query), TimeUnit.MILLISECONDS).getResults().get(0);
+        if (result.getSeries() == null) {
+            return;
+        }
+        for (QueryResult.Series seriesItem : result.getSeries()) {
+            Map<Long, Double> buckets = new HashMap<>();
+            for (List<Object> value : seriesItem.getValues()) {
+                if (value.get(1) != null) {
+                    buckets.merge(((Number) value.get(0)).longValue(), ((Number) value.get(1)).doubleValue(), Double::sum);
                 }
-                map.put("all", data);
             }
+            map.put(key != null ? key : seriesItem.getTags().get("transaction"), RealtimeDataCache.series(buckets, points, step, rate));
         }
-        return map;
     }
 
     @Override
@@ -301,181 +282,209 @@ public class TaskInfluxdbServiceImpl implements TaskInfluxdbService {
         }
 
         queryEvents += " tz('Asia/Shanghai')";
-        queryEvents = String.format(queryEvents, params.toArray());
+        String query = String.format(queryEvents, params.toArray());
+        // 查询范围已结束时事件不会再变化，缓存配对结果，翻页和重复查询不再访问influxdb
+        if (isPast(endTime)) {
+            @SuppressWarnings("unchecked")
+            List<JmeterParamDTO> events = (List<JmeterParamDTO>) caffeineCache.get(query + "_EVENTS", k -> this.pairEvents(query));
+            return events;
+        }
+        return this.pairEvents(query);
+    }
+
+    /**
+     * 查询事件后按application、tags分组，组内按时间排序一次，顺序扫描时每个结束事件与之前最近的未配对开始事件配对
+     * 结果按开始时间倒序
+     */
+    private List<JmeterParamDTO> pairEvents(String queryEvents) {
         log.info(queryEvents);
-        List<QueryResult.Result> results = influxDB.query(new Query(queryEvents)).getResults();
-        List<Map<String, Object>> eventsList = new ArrayList<>();
+        return pairEvents(influxDB.query(new Query(queryEvents)).getResults());
+    }
+
+    static List<JmeterParamDTO> pairEvents(List<QueryResult.Result> results) {
+        Map<List<String>, List<EventPoint>> groups = new HashMap<>();
         for (QueryResult.Result result : results) {
             if (result.getSeries() != null) {
                 for (QueryResult.Series series : result.getSeries()) {
-                    List<List<Object>> values = series.getValues();
                     List<String> columns = series.getColumns();
-
-                    for (List<Object> value : values) {
-                        Map<String, Object> row = new HashMap<>();
-                        for (int i = 0; i < columns.size(); i++) {
-                            row.put(columns.get(i), value.get(i));
-                        }
-                        eventsList.add(row);
+                    int timeIndex = columns.indexOf("time");
+                    int applicationIndex = columns.indexOf("application");
+                    int tagsIndex = columns.indexOf("tags");
+                    int textIndex = columns.indexOf("text");
+                    for (List<Object> value : series.getValues()) {
+                        String time = String.valueOf(value.get(timeIndex));
+                        List<String> key = Arrays.asList(String.valueOf(value.get(applicationIndex)), String.valueOf(value.get(tagsIndex)));
+                        groups.computeIfAbsent(key, k -> new ArrayList<>()).add(
+                                new EventPoint(OffsetDateTime.parse(time).toInstant().toEpochMilli(), time, String.valueOf(value.get(textIndex))));
                     }
                 }
             }
         }
 
-        // 进行数据处理
-        List<JmeterParamDTO> resultsList = new ArrayList<>();
-        List<Map<String, Object>> toRemove = new ArrayList<>();
-
-        for (int i = 0; i < eventsList.size(); i++) {
-            Map<String, Object> map1 = eventsList.get(i);
-            if (map1.get("text").toString().endsWith("started") &&!toRemove.contains(map1)) {
-                String applicationEvent = map1.get("application").toString();
-                String tagsEvent = map1.get("tags").toString();
-                long minTimeDiff = Long.MAX_VALUE;
-                Map<String, Object> closestEndedMap = null;
-                for (int j = 0; j < eventsList.size(); j++) {
-                    Map<String, Object> map2 = eventsList.get(j);
-                    if (j == i) continue;
-                    if (map2.get("text").toString().endsWith("ended") &&
-                            map2.get("application").toString().equals(applicationEvent) &&
-                            map2.get("tags").toString().equals(tagsEvent) &&
-                            !toRemove.contains(map2)) {
-                        Instant time1 = OffsetDateTime.parse(map1.get("time").toString()).toInstant();
-                        Instant time2 = OffsetDateTime.parse(map2.get("time").toString()).toInstant();
-                        long timeDiff = Duration.between(time1, time2).toMillis();
-                        if (timeDiff < minTimeDiff) {
-                            minTimeDiff = timeDiff;
-                            closestEndedMap = map2;
-                        }
-                    }
-                }
-                if (closestEndedMap!= null) {
-                    JmeterParamDTO jmeterParam = new JmeterParamDTO();
-                    jmeterParam.setApplication(applicationEvent);
-                    jmeterParam.setStartTime(map1.get("time").toString());
-                    jmeterParam.setEndTime(closestEndedMap.get("time").toString());
-                    jmeterParam.setTags(tagsEvent);
-                    jmeterParam.setText(map1.get("text").toString().split(" ")[0]);
-                    resultsList.add(0, jmeterParam);
-                    toRemove.add(map1);
-                    toRemove.add(closestEndedMap);
+        List<EventPoint[]> pairs = new ArrayList<>();
+        List<List<String>> pairKeys = new ArrayList<>();
+        for (Map.Entry<List<String>, List<EventPoint>> entry : groups.entrySet()) {
+            List<EventPoint> events = entry.getValue();
+            events.sort(Comparator.comparingLong(event -> event.epoch));
+            Deque<EventPoint> pending = new ArrayDeque<>();
+            for (EventPoint event : events) {
+                if (event.text.endsWith("started")) {
+                    pending.push(event);
+                } else if (event.text.endsWith("ended") && !pending.isEmpty()) {
+                    pairs.add(new EventPoint[]{pending.pop(), event});
+                    pairKeys.add(entry.getKey());
                 }
             }
         }
 
-
+        List<JmeterParamDTO> resultsList = new ArrayList<>(pairs.size());
+        Integer[] order = new Integer[pairs.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> pairs.get(i)[0].epoch).reversed());
+        for (Integer i : order) {
+            EventPoint started = pairs.get(i)[0];
+            JmeterParamDTO jmeterParam = new JmeterParamDTO();
+            jmeterParam.setApplication(pairKeys.get(i).get(0));
+            jmeterParam.setStartTime(started.time);
+            jmeterParam.setEndTime(pairs.get(i)[1].time);
+            jmeterParam.setTags(pairKeys.get(i).get(1));
+            jmeterParam.setText(started.text.split(" ")[0]);
+            resultsList.add(jmeterParam);
+        }
         return resultsList;
     }
 
+    // 查询的结束时间早于当前时间，时间不带时区时按influxdb的规则视为UTC
+    private static boolean isPast(String time) {
+        try {
+            Instant instant = time.length() > 19 && time.contains("T")
+                    ? OffsetDateTime.parse(time).toInstant()
+                    : LocalDateTime.parse(time.replace(" ", "T")).toInstant(ZoneOffset.UTC);
+            return instant.isBefore(Instant.now());
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    private static class EventPoint {
+
+        private final long epoch;
+
+        private final String time;
+
+        private final String text;
+
+        EventPoint(long epoch, String time, String text) {
+            this.epoch = epoch;
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    @Override
+    public PageResponseVO<Map<String, Object>> searchAggregateReport(JmeterParamDTO jmeterParamDTO) {
+        // 聚合报告和压测窗口只在influxdb中，内置存储没有这些数据
+        if ("embedded".equals(jmeterProperties.getRealtimeBackend())) {
+            throw new ParameterException(12502);
+        }
+        // 按压测窗口分页，只计算当前页窗口的聚合报告
+        List<JmeterParamDTO> events = this.getEvents(jmeterParamDTO);
+        int page = jmeterParamDTO.getPage() == null ? 0 : jmeterParamDTO.getPage();
+        int count = jmeterParamDTO.getCount() == null ? 10 : jmeterParamDTO.getCount();
+        int from = Math.min(page * count, events.size());
+        int to = Math.min(from + count, events.size());
+        return new PageResponseVO<>(events.size(), this.getAggregateReport(events.subList(from, to)), page, count);
+    }
+
     @Override
     public List<Map<String, Object>> getAggregateReport(List<JmeterParamDTO> jmeterParamDTOList) {
         List<Map<String,Object>> aggregateReportList = new ArrayList<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
         for (JmeterParamDTO jmeterParamDTO : jmeterParamDTOList) {
-            List<Map<String,Object>> query1List = new ArrayList<>();
             String application = jmeterParamDTO.getApplication();
             String tags = jmeterParamDTO.getTags();
-            String text = jmeterParamDTO.getText();
             String startTime = jmeterParamDTO.getStartTime();
             String endTime = ZonedDateTime.parse(jmeterParamDTO.getEndTime(), formatter).plus(Duration.ofMillis(200)).format(formatter);
-            Duration duration = Duration.between(ZonedDateTime.parse(startTime, formatter), ZonedDateTime.parse(endTime, formatter));
-            long time = duration.getSeconds();
-
-            String query1 = String.format("SELECT sum(count) as sample,count(count),mean(avg) as avg,MEDIAN(avg),sum(countError) as error ,max(max),min(min),sum(rb)/"
-                            +time+ " as rb,sum(sb)/"+time+" as sb ,sum(hit)/"+time+" as tps FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal' group by transaction ORDER BY time DESC tz('Asia/Shanghai')",
-                    startTime, endTime, application);
-            List<QueryResult.Result> results1 = influxDB.query(new Query(query1)).getResults();
-            for (QueryResult.Result result : results1) {
-                if (result.getSeries() != null) {
-                    for (QueryResult.Series series : result.getSeries()) {
-                        List<List<Object>> values = series.getValues();
-                        List<String> columns = series.getColumns();
-                        String transaction = series.getTags().get("transaction");
-
-                        for (List<Object> value : values) {
-                            Map<String, Object> row = new HashMap<>();
-                            row.put("transaction", transaction);
-                            row.put("application", application);
-                            row.put("tags", tags);
-                            row.put("startTime", startTime);
-                            row.put("endTime", endTime);
-                            row.put("text", text);
-                            row.put("pct90.0", 0.0f);
-                            row.put("pct95.0", 0.0f);
-                            row.put("pct99.0", 0.0f);
-                            for (int i = 0; i < columns.size(); i++) {
-                                row.put(columns.get(i), value.get(i));
-                            }
-                            row.remove("time");
-                            query1List.add(row);
-                        }
-                    }
-                }
+            // 已结束的压测窗口数据不再变化，按窗口缓存，缓存的行不带text，返回时复制
+            String cacheKey = application + "_" + tags + "_" + startTime + "_" + endTime + "_AGGREGATE";
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> rows = (List<Map<String, Object>>) caffeineCache.get(cacheKey,
+                    k -> this.aggregateWindow(application, tags, startTime, endTime));
+            for (Map<String, Object> row : rows) {
+                Map<String, Object> copy = new HashMap<>(row);
+                copy.put("text", jmeterParamDTO.getText());
+                aggregateReportList.add(copy);
             }
-            String query2 = String.format("SELECT sum(count) as error FROM jmeter WHERE statut='ko' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal' group by transaction tz('Asia/Shanghai')",
-                    startTime, endTime, application);
-            List<QueryResult.Result> results2 = influxDB.query(new Query(query2)).getResults();
-            for (QueryResult.Result result : results2) {
-                if (result.getSeries() != null) {
-                    for (QueryResult.Series series : result.getSeries()) {
-                        List<List<Object>> values = series.getValues();
-                        String transaction = series.getTags().get("transaction");
-                        for (List<Object> value : values) {
-                            for (Map<String, Object> row: query1List) {
-                                if (row.get("transaction").equals(transaction)) {
-                                    row.put("error", value.get(1));
-                                }
-                            }
+        }
+        return aggregateReportList;
+    }
+
+    private List<Map<String, Object>> aggregateWindow(String application, String tags, String startTime, String endTime) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        Duration duration = Duration.between(ZonedDateTime.parse(startTime, formatter), ZonedDateTime.parse(endTime, formatter));
+        long time = duration.getSeconds();
+        List<Map<String,Object>> query1List = new ArrayList<>();
+
+        String query1 = String.format("SELECT sum(count) as sample,count(count),mean(avg) as avg,MEDIAN(avg),sum(countError) as error ,max(max),min(min),sum(rb)/"
+                        +time+ " as rb,sum(sb)/"+time+" as sb ,sum(hit)/"+time+" as tps FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal' group by transaction ORDER BY time DESC tz('Asia/Shanghai')",
+                startTime, endTime, application);
+        List<QueryResult.Result> results1 = influxDB.query(new Query(query1)).getResults();
+        for (QueryResult.Result result : results1) {
+            if (result.getSeries() != null) {
+                for (QueryResult.Series series : result.getSeries()) {
+                    List<List<Object>> values = series.getValues();
+                    List<String> columns = series.getColumns();
+                    String transaction = series.getTags().get("transaction");
+
+                    for (List<Object> value : values) {
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("transaction", transaction);
+                        row.put("application", application);
+                        row.put("tags", tags);
+                        row.put("startTime", startTime);
+                        row.put("endTime", endTime);
+                        row.put("pct90.0", 0.0f);
+                        row.put("pct95.0", 0.0f);
+                        row.put("pct99.0", 0.0f);
+                        for (int i = 0; i < columns.size(); i++) {
+                            row.put(columns.get(i), value.get(i));
                         }
+                        row.remove("time");
+                        query1List.add(row);
                     }
                 }
             }
-            String query3 = String.format("SELECT * FROM jmeter WHERE statut='all' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal' tz('Asia/Shanghai')",
-                    startTime, endTime, application);
-            List<Map<String,Object>> pctList = new ArrayList<>();
-            List<QueryResult.Result> results3 = influxDB.query(new Query(query3)).getResults();
-            for (QueryResult.Result result : results3) {
-                if (result.getSeries() != null) {
-                    for (QueryResult.Series series : result.getSeries()) {
-                        List<List<Object>> values = series.getValues();
-                        List<String> columns = series.getColumns();
-
-                        for (List<Object> value : values) {
-                            Map<String, Object> row = new HashMap<>();
-                            for (int i = 0; i < columns.size(); i++) {
-                                row.put(columns.get(i), value.get(i));
+        }
+        String query2 = String.format("SELECT sum(count) as error FROM jmeter WHERE statut='ko' and time >= '%s' AND time <= '%s' and application = '%s' and transaction!='internal' group by transaction tz('Asia/Shanghai')",
+                startTime, endTime, application);
+        List<QueryResult.Result> results2 = influxDB.query(new Query(query2)).getResults();
+        for (QueryResult.Result result : results2) {
+            if (result.getSeries() != null) {
+                for (QueryResult.Series series : result.getSeries()) {
+                    List<List<Object>> values = series.getValues();
+                    String transaction = series.getTags().get("transaction");
+                    for (List<Object> value : values) {
+                        for (Map<String, Object> row: query1List) {
+                            if (row.get("transaction").equals(transaction)) {
+                                row.put("error", value.get(1));
                             }
-                            pctList.add(row);
                         }
                     }
                 }
             }
-            for (Map<String, Object> value : pctList) {
-                String transaction = value.get("transaction").toString();
-                for (Map<String, Object> row: query1List) {
-                    float pct90 = (float) row.get("pct90.0");
-                    float pct95 = (float) row.get("pct95.0");
-                    float pct99 = (float) row.get("pct99.0");
-                    if (row.get("transaction").equals(transaction)) {
-                        row.put("pct90.0", Float.parseFloat(value.get("pct90.0").toString())+pct90);
-                        row.put("pct95.0", Float.parseFloat(value.get("pct95.0").toString())+pct95);
-                        row.put("pct99.0", Float.parseFloat(value.get("pct99.0").toString())+pct99);
-                    }
-                }
-            }
-            for (Map<String, Object> row : query1List) {
-                if (row.get("pct90.0") != null) {
-                    row.put("pct90.0", Float.parseFloat(row.get("pct90.0").toString())/Double.parseDouble(row.get("count").toString()));
-                }
-                if (row.get("pct95.0") != null) {
-                    row.put("pct95.0", Float.parseFloat(row.get("pct95.0").toString())/Double.parseDouble(row.get("count").toString()));
-                }
-                if (row.get("pct99.0") != null) {
-                    row.put("pct99.0", Float.parseFloat(row.get("pct99.0").toString())/Double.parseDouble(row.get("count").toString()));
+        }
+        // 百分位数由按接口合并的直方图计算
+        Map<String, double[]> percentiles = aggregatePercentiles.percentiles(application, tags, startTime, endTime);
+        for (Map<String, Object> row : query1List) {
+            double[] values = percentiles.get(row.get("transaction").toString());
+            if (values != null) {
+                for (int i = 0; i < AggregatePercentiles.PERCENTILES.length; i++) {
+                    row.put("pct" + AggregatePercentiles.PERCENTILES[i], (float) values[i]);
                 }
             }
-            aggregateReportList.addAll(query1List);
         }
-        return aggregateReportList;
+        return query1List;
     }
 }
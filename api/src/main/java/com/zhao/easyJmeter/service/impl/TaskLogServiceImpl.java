@@ -1,5 +1,8 @@
 package com.zhao.easyJmeter.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
 import com.zhao.easyJmeter.mapper.TaskLogMapper;
 import com.zhao.easyJmeter.model.TaskLogDO;
@@ -7,29 +10,87 @@ import com.zhao.easyJmeter.service.TaskLogService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @Service
-public class TaskLogServiceImpl implements TaskLogService {
+public class TaskLogServiceImpl extends ServiceImpl<TaskLogMapper, TaskLogDO> implements TaskLogService {
 
     @Autowired
     private TaskLogMapper taskLogMapper;
 
+    @Autowired
+    Cache<String, Object> caffeineCache;
+
     @Override
     public List<TaskLogDO> getTaskLog(String taskId, Integer jCase, JmeterStatusEnum status, String address,  Boolean result) {
         return taskLogMapper.search(taskId,jCase,status,address,result);
     }
 
+    @Override
+    public List<TaskLogDO> getTaskLogs(String taskId) {
+        // 按task_id精确匹配，走task_id_status索引
+        return taskLogMapper.selectList(new QueryWrapper<TaskLogDO>().eq("task_id", taskId).orderByAsc("id"));
+    }
+
     @Override
     public boolean createTaskLog(TaskLogDO taskLogDO) {
-        return taskLogMapper.insert(taskLogDO) > 0;
+        boolean created = taskLogMapper.insert(taskLogDO) > 0;
+        this.evictTimeline(List.of(taskLogDO.getTaskId()));
+        return created;
     }
 
     @Override
     public boolean updateTaskLog(TaskLogDO taskLogDO, Boolean result) {
         taskLogDO.setResult(result);
-        return taskLogMapper.updateById(taskLogDO) > 0;
+        boolean updated = taskLogMapper.updateById(taskLogDO) > 0;
+        this.evictTimeline(List.of(taskLogDO.getTaskId()));
+        return updated;
+    }
+
+    @Override
+    public boolean createTaskLogs(Collection<TaskLogDO> taskLogDOs) {
+        if (taskLogDOs.isEmpty()) {
+            return true;
+        }
+        boolean created = this.saveBatch(taskLogDOs);
+        this.evictTimeline(taskIds(taskLogDOs));
+        return created;
+    }
+
+    @Override
+    public boolean updateTaskLogs(Collection<TaskLogDO> taskLogDOs) {
+        if (taskLogDOs.isEmpty()) {
+            return true;
+        }
+        boolean updated = this.updateBatchById(taskLogDOs);
+        this.evictTimeline(taskIds(taskLogDOs));
+        return updated;
+    }
+
+    private static Set<String> taskIds(Collection<TaskLogDO> taskLogDOs) {
+        Set<String> taskIds = new HashSet<>();
+        taskLogDOs.forEach(taskLogDO -> taskIds.add(taskLogDO.getTaskId()));
+        return taskIds;
+    }
+
+    // task日志写入成功后清除该任务缓存的时间线；在事务中时等提交后再清除，避免提交前读到旧数据重新缓存
+    private void evictTimeline(Collection<String> taskIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            taskIds.forEach(taskId -> caffeineCache.invalidate(taskId + "_TASK_LOGS"));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                taskIds.forEach(taskId -> caffeineCache.invalidate(taskId + "_TASK_LOGS"));
+            }
+        });
     }
 }
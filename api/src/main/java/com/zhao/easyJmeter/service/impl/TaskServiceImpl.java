@@ -7,7 +7,14 @@ import com.corundumstudio.socketio.SocketIOClient;
 import com.corundumstudio.socketio.SocketIOServer;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.zhao.easyJmeter.common.LocalUser;
+import com.zhao.easyJmeter.common.configuration.JmeterProperties;
 import com.zhao.easyJmeter.common.enumeration.JmeterStatusEnum;
+import com.zhao.easyJmeter.common.jmeter.MachineLivenessRegistry;
+import com.zhao.easyJmeter.common.jmeter.RealtimeDataCache;
+import com.zhao.easyJmeter.common.jmeter.TaskLogTimeline;
+import com.zhao.easyJmeter.common.jmeter.TaskStateRegistry;
+import com.zhao.easyJmeter.common.jmeter.WebRoomPublisher;
+import com.zhao.easyJmeter.common.jmeter.metrics.RealtimeMetricsBackend;
 import com.zhao.easyJmeter.common.enumeration.LogLevelEnum;
 import com.zhao.easyJmeter.common.enumeration.TaskResultEnum;
 import com.zhao.easyJmeter.common.mybatis.Page;
@@ -54,10 +61,13 @@ public class TaskServiceImpl implements TaskService {
     private MachineMapper machineMapper;
 
     @Autowired
-    private TaskLogMapper taskLogMapper;
+    private SocketIOServer socketServer;
 
     @Autowired
-    private SocketIOServer socketServer;
+    private MachineLivenessRegistry machineLivenessRegistry;
+
+    @Autowired
+    private RealtimeMetricsBackend realtimeMetricsBackend;
 
     @Autowired
     private JFileMapper jFileMapper;
@@ -65,12 +75,24 @@ public class TaskServiceImpl implements TaskService {
     @Autowired
     private JFileService jFileService;
 
+    @Autowired
+    private RealtimeDataCache realtimeDataCache;
+
+    @Autowired
+    private TaskStateRegistry taskStateRegistry;
+
+    @Autowired
+    private WebRoomPublisher webRoomPublisher;
+
     @Autowired
     private TaskLogService taskLogService;
 
     @Autowired
     Cache<String, Object> caffeineCache;
 
+    @Autowired
+    private JmeterProperties jmeterProperties;
+
     @Autowired
     private ReportRepository reportRepository;
 
@@ -98,8 +120,8 @@ public class TaskServiceImpl implements TaskService {
         taskDO.setDuration(taskDTO.getDuration());
         taskDO.setRampTime(taskDTO.getRampTime());
         taskDO.setQpsLimit(taskDTO.getQpsLimit());
-        // 可用压力机数量小于传入num
-        ArrayList<MachineDO> executableMachines = machineMapper.executable();
+        // 可用压力机数量小于传入num，在线和jmeter状态从存活登记处读取
+        List<Integer> executableMachines = machineLivenessRegistry.executable();
         if (executableMachines.size() < taskDTO.getMachineNum()) {
             throw new ParameterException(12302);
         }
@@ -113,7 +135,7 @@ public class TaskServiceImpl implements TaskService {
         // 传入num 大于 传入集合数量
         if (taskDTO.getMachineNum() > machines.size()) {
             int diff = taskDTO.getMachineNum() - machines.size();
-            ArrayList<Integer> executableIdList = (ArrayList<Integer>) executableMachines.stream().map(BaseModel::getId).collect(Collectors.toList());
+            ArrayList<Integer> executableIdList = new ArrayList<>(executableMachines);
             executableIdList.removeAll(taskDTO.getMachine());
             machines.addAll(executableIdList.subList(0, diff));
         }
@@ -123,7 +145,7 @@ public class TaskServiceImpl implements TaskService {
             if (machineDO == null) {
                 throw new ParameterException(12303);
             }
-            if (machineDO.getIsOnline().equals(false) || !machineDO.getJmeterStatus().equals(JmeterStatusEnum.IDLE)) {
+            if (!machineLivenessRegistry.isExecutable(machine)) {
                 throw new ParameterException(12301);
             }
             machinesStr.append(machine).append(",");
@@ -137,7 +159,7 @@ public class TaskServiceImpl implements TaskService {
 
         if (taskMapper.insert(taskDO) > 0) {
             // 将备选压力机加入room,发送启动命令
-            List<String> clientIds = machines.stream().map(mid -> machineMapper.selectById(mid).getClientId()).collect(Collectors.toList());
+            List<String> clientIds = machines.stream().map(machineLivenessRegistry::clientId).collect(Collectors.toList());
             for (String clientId : clientIds) {
                 SocketIOClient client = socketServer.getClient(UUID.fromString(clientId));
                 client.joinRoom(taskDO.getTaskId());
@@ -149,20 +171,21 @@ public class TaskServiceImpl implements TaskService {
                 MachineDO machineDO = machineMapper.selectById(machine);
                 machineDO.setJmeterStatus(JmeterStatusEnum.CONFIGURE);
                 machineMapper.updateById(machineDO);
+                machineLivenessRegistry.updateJmeterStatus(machine, JmeterStatusEnum.CONFIGURE);
                 // 记录task日志
-                taskLogMapper.insert(new TaskLogDO(taskDO.getTaskId(),caseDO.getId(),JmeterStatusEnum.CONFIGURE,null,machineDO.getAddress(),machineDO.getId()));
-                // 向web端发送task日志
-                socketServer.getRoomOperations("web").sendEvent("taskLogs", this.getTaskLogByTaskId(taskDO.getTaskId()));
+                taskLogService.createTaskLog(new TaskLogDO(taskDO.getTaskId(),caseDO.getId(),JmeterStatusEnum.CONFIGURE,null,machineDO.getAddress(),machineDO.getId()));
             }
+            // 向web端发送task日志
+            webRoomPublisher.publish(WebRoomPublisher.taskRoom(taskDO.getTaskId()), "taskLogs", this.getTaskLogByTaskId(taskDO.getTaskId()));
             // 判断设置是否需要切分并设置切分状态
             Boolean needCut = (taskDO.getCsv() != null && !taskDO.getCsv().isEmpty()) ? jFileService.needCut(taskDO.getCsv().split(",")) : false;
-            MachineCutFileVO machineCutFileVO = new MachineCutFileVO(null, taskDO, needCut);
+            MachineCutFileVO machineCutFileVO = new MachineCutFileVO(null, taskDO, needCut, realtimeMetricsBackend.writeUrl());
             // 向room中的client发送启动命令
             log.info("========TaskDO=======: {}", taskDO);
             socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskConfigure", machineCutFileVO);
             // 向web端报告进度
             TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.CONFIGURE, null, TaskResultEnum.IN_PROGRESS);
-            socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+            webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
         }
 
         return true;
@@ -171,6 +194,9 @@ public class TaskServiceImpl implements TaskService {
     @Override
     public boolean updateTaskResult(TaskDO taskDO, TaskResultEnum result) {
         taskDO.setResult(result);
+        if (result != TaskResultEnum.IN_PROGRESS) {
+            realtimeDataCache.evict(taskDO.getTaskId());
+        }
         // 更新mongo中task结果
         ReportDO reportDO = reportRepository.findById(taskDO.getTaskId()).orElse(null);
         if (reportDO != null) {
@@ -197,10 +223,17 @@ public class TaskServiceImpl implements TaskService {
             map.put(machineDO.getAddress(), new ArrayList<>());
         }
         for (JFileDO jFileDO: jFiles) {
-            if (jFileDO.getCut()){
+            if (jFileDO.getCut() && jmeterProperties.getCsvSplitMode() == CSVUtil.SplitMode.CONTIGUOUS) {
+                // 只计算各分片的字节范围，agent直接从对象存储按范围读取，文件内容不经过服务端
+                List<CutFileVO> cutFileVOList = jFileService.sliceCsvFile(jFileDO, taskDO.getMachineNum(), jmeterProperties.getCsvHeader());
+                for (int i=0;i<machines.size();i++) {
+                    map.get(machines.get(i).getAddress()).add(cutFileVOList.get(i));
+                }
+            } else if (jFileDO.getCut()){
                 List<CutFileVO> cutFileVOList = new ArrayList<>();
                 String csvPath = jFileService.downloadFile(jFileDO.getId(), null);
-                CSVUtil csvUtil = new CSVUtil(csvPath, taskDO.getMachineNum(), jFileDO.getId());
+                CSVUtil csvUtil = new CSVUtil(csvPath, taskDO.getMachineNum(), jFileDO.getId(), jmeterProperties.getCsvSplitMode(),
+                        jmeterProperties.getCsvHeader(), jmeterProperties.getCsvPartitionColumn(), jmeterProperties.getMultilineRecords());
                 Map<Integer, List<String>> fileMap = csvUtil.splitCSVFile();
                 List<JFileDO> cutFiles = jFileService.createCsvCutFiles(fileMap);
                 for (JFileDO cutFileDO: cutFiles) {
@@ -243,30 +276,28 @@ public class TaskServiceImpl implements TaskService {
         if (taskDO.getResult() != TaskResultEnum.IN_PROGRESS) {
             throw new ParameterException(12308);
         }
-        CaseDO caseDO = caseMapper.selectById(taskDO.getJmeterCase());
-        if (caseDO.getStatus() == JmeterStatusEnum.IDLE) {
+        // 运行中任务的状态以内存为准
+        JmeterStatusEnum caseStatus = taskStateRegistry.caseStatus(taskDO);
+        if (caseStatus == JmeterStatusEnum.IDLE) {
             throw new ParameterException(12305);
         }
 
         // 更新task日志为失败
-        List<TaskLogDO> taskLogs = taskLogService.getTaskLog(taskDO.getTaskId(), taskDO.getJmeterCase(), caseDO.getStatus(), null, null);
-        for (TaskLogDO taskLog: taskLogs) {
-            taskLogService.updateTaskLog(taskLog, false);
-        }
+        taskStateRegistry.failLogs(taskDO, caseStatus);
         // 标记task状态为失败
         updateTaskResult(taskDO, TaskResultEnum.MANUAL);
 
         // 如果没有发送过终止消息，向所有agent发送消息进行终止和进入下一环节
         synchronized (this) {
-            if (caffeineCache.getIfPresent(taskDO.getTaskId() + "_" + caseDO.getStatus()) == null) {
-                caffeineCache.put(taskDO.getTaskId() + "_" + caseDO.getStatus(), "taskInterrupt");
-                socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskInterrupt", new TaskMachineDTO(taskDO, null, false, caseDO.getStatus().getValue()));
+            if (caffeineCache.getIfPresent(taskDO.getTaskId() + "_" + caseStatus) == null) {
+                caffeineCache.put(taskDO.getTaskId() + "_" + caseStatus, "taskInterrupt");
+                socketServer.getRoomOperations(taskDO.getTaskId()).sendEvent("taskInterrupt", new TaskMachineDTO(taskDO, null, false, caseStatus.getValue()));
             }
         }
 
         // 向web端报告进度
         TaskProgressVO taskProgressVO = new TaskProgressVO(taskDO.getTaskId(), JmeterStatusEnum.INTERRUPT, null, TaskResultEnum.MANUAL);
-        socketServer.getRoomOperations("web").sendEvent("taskProgress", taskProgressVO);
+        webRoomPublisher.publishTaskProgress(taskDO.getJmeterCase(), taskProgressVO);
 
         return true;
     }
@@ -277,8 +308,7 @@ public class TaskServiceImpl implements TaskService {
         if (taskDO == null) {
             throw new ParameterException(12305);
         }
-        CaseDO caseDO = caseMapper.selectById(taskDO.getJmeterCase());
-        if (caseDO.getStatus() != JmeterStatusEnum.RUN) {
+        if (taskStateRegistry.caseStatus(taskDO) != JmeterStatusEnum.RUN) {
             throw new ParameterException(12306);
         }
         taskDO.setQpsLimit(validator.getQpsLimit());
@@ -332,21 +362,13 @@ public class TaskServiceImpl implements TaskService {
 
     @Override
     public List<Map<String, Object>> getTaskLogByTaskId(String taskId) {
-        QueryWrapper<TaskLogDO> queryWrapper = new QueryWrapper<>();
-        queryWrapper.select("status as status, min(DATE_FORMAT(create_time,'%Y-%m-%d %H:%i:%s')) as create_time").eq("task_id", taskId).groupBy("status");
-        List<Map<String, Object>> levelList = taskLogMapper.selectMaps(queryWrapper);
-        for (Map<String, Object> level : levelList) {
-            QueryWrapper<TaskLogDO> query = new QueryWrapper<>();
-            query.select("*").eq("task_id", taskId).eq("status", level.get("status"));
-            List<TaskLogDO> taskLogDOS = taskLogMapper.selectList(query);
-            level.put("logs", taskLogDOS);
-            JmeterStatusEnum status = JmeterStatusEnum.getEnumByCode((Integer) level.get("status"));
-            level.put("status", status);
+        // 运行中的任务直接返回内存中的日志
+        List<Map<String, Object>> taskLogs = taskStateRegistry.taskLogs(taskId);
+        if (taskLogs != null) {
+            return taskLogs;
         }
-        log.info(levelList.toString());
-
-
-        return levelList;
+        // 一次查询后在内存中按环节分组，结果按任务缓存，task日志写入时清除
+        return (List<Map<String, Object>>) caffeineCache.get(taskId + "_TASK_LOGS", key -> TaskLogTimeline.group(taskLogService.getTaskLogs(taskId)));
     }
 
     @Override
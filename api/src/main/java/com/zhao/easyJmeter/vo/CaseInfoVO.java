@@ -51,5 +51,5 @@ public class CaseInfoVO {
 
     private TaskResultEnum taskResult;
 
-    private HashMap<String, Object> taskProgress;
+    private HashMap<String, Integer> taskProgress;
 }
@@ -25,8 +25,25 @@ public class CutFileVO {
 
     private String originName;
 
+    // 按范围读取时分片在原文件中的起始位置和长度，为空时下载整个切分文件
+    private Long offset;
+
+    private Long length;
+
+    // 需要拼在分片前的表头长度，表头从原文件开头读取
+    private Long headerLength;
+
     public CutFileVO(JFileDO fileDO, String originName) {
         BeanUtils.copyProperties(fileDO, this);
         this.originName = originName;
     }
+
+    public CutFileVO(JFileDO fileDO, Long headerLength, Long offset, Long length) {
+        BeanUtils.copyProperties(fileDO, this);
+        this.originId = fileDO.getId();
+        this.originName = fileDO.getName();
+        this.headerLength = headerLength;
+        this.offset = offset;
+        this.length = length;
+    }
 }
@@ -19,4 +19,7 @@ public class MachineCutFileVO {
     private TaskDO taskDO;
 
     private Boolean needCut;
+
+    // 实时指标写入地址，由服务端按jmeter.realtime-backend确定
+    private String realtimeWriteUrl;
 }
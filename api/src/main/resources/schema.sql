@@ -256,6 +256,7 @@ CREATE TABLE `file` (
     `cut` tinyint(1) DEFAULT 0 NOT NULL comment '是否切分',
     `origin_id` int(11) DEFAULT NULL COMMENT '原始文件id',
     `task_id` varchar(50) DEFAULT NULL COMMENT '切分文件所属任务id',
+    `sha256` char(64) DEFAULT NULL COMMENT '文件内容sha256',
     `create_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) COMMENT '创建时间',
     `update_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '更新时间',
     `delete_time` datetime(3) DEFAULT NULL COMMENT '删除时间',
@@ -325,5 +326,6 @@ CREATE TABLE `task_log` (
     `create_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) COMMENT '创建时间',
     `update_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '更新时间',
     `delete_time` datetime(3) DEFAULT NULL COMMENT '删除时间',
-    PRIMARY KEY (`id`)
+    PRIMARY KEY (`id`),
+    KEY task_id_status (`task_id`, `status`) USING BTREE COMMENT '按任务查询时间线'
 ) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;
\ No newline at end of file
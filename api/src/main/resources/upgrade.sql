@@ -0,0 +1,14 @@
+-- ----------------------------
+-- 已有部署升级用，新安装直接导入schema.sql即可，不需要执行本文件
+-- 每条语句只需执行一次，重复执行会因列或索引已存在而报错，可忽略
+-- ----------------------------
+
+-- ----------------------------
+-- 文件表增加内容摘要，agent按摘要复用本地缓存
+-- ----------------------------
+ALTER TABLE `file` ADD COLUMN `sha256` char(64) DEFAULT NULL COMMENT '文件内容sha256' AFTER `task_id`;
+
+-- ----------------------------
+-- 任务日志表增加按任务查询时间线的索引
+-- ----------------------------
+ALTER TABLE `task_log` ADD KEY task_id_status (`task_id`, `status`) USING BTREE COMMENT '按任务查询时间线';
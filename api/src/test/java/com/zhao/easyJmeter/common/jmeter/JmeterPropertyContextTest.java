@@ -0,0 +1,66 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JmeterPropertyContextTest {
+
+    @TempDir
+    static Path jmeterHome;
+
+    @BeforeAll
+    public static void load() throws Exception {
+        Files.createDirectories(jmeterHome.resolve("bin"));
+        Files.write(jmeterHome.resolve("bin").resolve("jmeter.properties"), "report.title=base\n".getBytes());
+        JmeterPropertyContext.load(jmeterHome.toString());
+    }
+
+    @Test
+    public void concurrentContextsAreIsolated() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> this.callWith("first", barrier));
+            Future<String> second = executor.submit(() -> this.callWith("second", barrier));
+            assertEquals("first", first.get(10, TimeUnit.SECONDS));
+            assertEquals("second", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("base", JMeterUtils.getProperty("report.title"));
+        assertNull(JMeterUtils.getProperty("report.only"));
+    }
+
+    @Test
+    public void writesInContextAreDiscarded() throws Exception {
+        JmeterPropertyContext.call(Map.of(), () -> {
+            JMeterUtils.getJMeterProperties().putIfAbsent("report.added", "context");
+            JMeterUtils.getJMeterProperties().merge("report.title", "-merged", (a, b) -> a + (String) b);
+            assertEquals("context", JMeterUtils.getProperty("report.added"));
+            assertEquals("base-merged", JMeterUtils.getProperty("report.title"));
+            return null;
+        });
+        assertNull(JMeterUtils.getProperty("report.added"));
+        assertEquals("base", JMeterUtils.getProperty("report.title"));
+    }
+
+    // 两个上下文都设置好覆盖值后再读取，确认读到的是各自的值
+    private String callWith(String title, CyclicBarrier barrier) throws Exception {
+        return JmeterPropertyContext.call(Map.of("report.title", title), () -> {
+            JMeterUtils.getJMeterProperties().put("report.only", title);
+            barrier.await(10, TimeUnit.SECONDS);
+            assertEquals(title, JMeterUtils.getJMeterProperties().get("report.only"));
+            barrier.await(10, TimeUnit.SECONDS);
+            return JMeterUtils.getProperty("report.title");
+        });
+    }
+}
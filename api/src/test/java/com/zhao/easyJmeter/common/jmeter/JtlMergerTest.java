@@ -0,0 +1,123 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JtlMergerTest {
+
+    private static final String HEADER = "timeStamp,elapsed,label";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void orderedMergeInterleavesTimestamps() throws IOException {
+        String a = this.file("a.jtl", HEADER + "\n1000,1,a\n3000,3,a\n5000,5,a\n");
+        String b = this.file("b.jtl", HEADER + "\n2000,2,b\n4000,4,b\n6000,6,b\n");
+
+        String merged = this.merge(List.of(a, b), true);
+
+        assertEquals(HEADER + "\n1000,1,a\n2000,2,b\n3000,3,a\n4000,4,b\n5000,5,a\n6000,6,b\n", merged);
+    }
+
+    @Test
+    public void orderedMergeKeepsSourceOrderForEqualTimestamps() throws IOException {
+        String a = this.file("a.jtl", HEADER + "\n1000,1,a\n2000,2,a\n");
+        String b = this.file("b.jtl", HEADER + "\n1000,1,b\n2000,2,b\n");
+
+        String merged = this.merge(List.of(b, a), true);
+
+        assertEquals(HEADER + "\n1000,1,b\n1000,1,a\n2000,2,b\n2000,2,a\n", merged);
+    }
+
+    @Test
+    public void orderedMergeSkipsEmptyAndHeaderOnlySources() throws IOException {
+        String empty = this.file("empty.jtl", "");
+        String headerOnly = this.file("header.jtl", HEADER + "\n");
+        String a = this.file("a.jtl", HEADER + "\n2000,2,a\n1000,1,a\n");
+
+        String merged = this.merge(List.of(empty, headerOnly, a), true);
+
+        // 单个文件内乱序的记录不调整，保持原顺序
+        assertEquals(HEADER + "\n2000,2,a\n1000,1,a\n", merged);
+    }
+
+    @Test
+    public void orderedMergeOfEmptySourcesWritesEmptyFile() throws IOException {
+        String empty = this.file("empty.jtl", "");
+
+        assertEquals("", this.merge(List.of(empty, empty), true));
+    }
+
+    @Test
+    public void concatKeepsOneHeaderAndAddsMissingNewline() throws IOException {
+        String empty = this.file("empty.jtl", "");
+        String headerOnly = this.file("header.jtl", HEADER);
+        String a = this.file("a.jtl", HEADER + "\n3000,3,a\n1000,1,a");
+        String b = this.file("b.jtl", HEADER + "\n2000,2,b\n");
+
+        String merged = this.merge(List.of(empty, headerOnly, a, b), false);
+
+        assertEquals(HEADER + "\n3000,3,a\n1000,1,a\n2000,2,b\n", merged);
+    }
+
+    @Test
+    public void orderedMergeFallsBackToConcatWithoutTimestampColumn() throws IOException {
+        String a = this.file("a.jtl", "elapsed,label\n3,a\n1,a\n");
+        String b = this.file("b.jtl", "elapsed,label\n2,b\n");
+
+        String merged = this.merge(List.of(a, b), true);
+
+        assertEquals("elapsed,label\n3,a\n1,a\n2,b\n", merged);
+    }
+
+    @Test
+    public void segmentsMergeOrderedAndConcat() throws IOException {
+        // 第一个agent上传了两段，第二段不带表头
+        List<String> first = List.of(this.gzip("0_0.gz", HEADER + "\n1000,1,a\n"), this.gzip("0_1.gz", "3000,3,a\n"));
+        List<String> second = List.of(this.gzip("1_0.gz", HEADER + "\n2000,2,b\n4000,4,b"));
+        List<String> headerOnly = List.of(this.gzip("2_0.gz", HEADER + "\n"));
+
+        String ordered = this.mergeSegments(List.of(first, headerOnly, second), true);
+        String concat = this.mergeSegments(List.of(first, headerOnly, second), false);
+
+        assertEquals(HEADER + "\n1000,1,a\n2000,2,b\n3000,3,a\n4000,4,b\n", ordered);
+        assertEquals(HEADER + "\n1000,1,a\n3000,3,a\n2000,2,b\n4000,4,b\n", concat);
+    }
+
+    private String merge(List<String> sources, boolean ordered) throws IOException {
+        Path target = dir.resolve("merged.jtl");
+        new JtlMerger(sources, target.toString(), ordered, false).merge();
+        return Files.readString(target, StandardCharsets.ISO_8859_1);
+    }
+
+    private String mergeSegments(List<List<String>> segments, boolean ordered) throws IOException {
+        Path target = dir.resolve(ordered ? "ordered.jtl" : "concat.jtl");
+        JtlMerger.ofSegments(segments, target.toString(), ordered, false).merge();
+        return Files.readString(target, StandardCharsets.ISO_8859_1);
+    }
+
+    private String file(String name, String content) throws IOException {
+        Path path = dir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+        return path.toString();
+    }
+
+    private String gzip(String name, String content) throws IOException {
+        Path path = dir.resolve(name);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return path.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.zhao.easyJmeter.common.jmeter;
+
+import com.zhao.easyJmeter.model.JFileDO;
+import com.zhao.easyJmeter.service.JFileService;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JtlSegmentManifestTest {
+
+    @Test
+    public void skipUnrecognizedNames() {
+        JtlSegmentManifest manifest = new JtlSegmentManifest("task1", List.of(
+                file(1, "10.0.0.1.jtlseg"),
+                file(2, "10.0.0.1_x.jtlseg"),
+                file(3, "10.0.0.1_0.jtl")));
+
+        assertTrue(manifest.isEmpty());
+    }
+
+    @Test
+    public void keepLatestUploadForDuplicateSequence() {
+        // 查询结果不保证按id排序
+        JtlSegmentManifest manifest = new JtlSegmentManifest("task1", List.of(
+                file(5, "10.0.0.1_1.jtlseg"),
+                file(1, "10.0.0.1_0.jtlseg"),
+                file(3, "10.0.0.1_1.jtlseg"),
+                file(2, "10.0.0.2_0.jtlseg")));
+
+        assertEquals(List.of(List.of("1", "5"), List.of("2")), manifest.download(downloader()));
+    }
+
+    @Test
+    public void validateRejectsGaps() {
+        JtlSegmentManifest manifest = new JtlSegmentManifest("task1", List.of(
+                file(1, "10.0.0.1_0.jtlseg"),
+                file(2, "10.0.0.1_2.jtlseg")));
+
+        assertThrows(RuntimeException.class, manifest::validate);
+    }
+
+    private static JFileDO file(int id, String name) {
+        JFileDO file = new JFileDO();
+        file.setId(id);
+        file.setName(name);
+        return file;
+    }
+
+    // 下载时返回文件id作为本地路径
+    private static JFileService downloader() {
+        return (JFileService) Proxy.newProxyInstance(JFileService.class.getClassLoader(), new Class<?>[]{JFileService.class},
+                (proxy, method, args) -> {
+                    assertEquals("downloadFile", method.getName());
+                    return String.valueOf(args[0]);
+                });
+    }
+}
@@ -0,0 +1,73 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedRealtimeBackendTest {
+
+    @Test
+    public void ringAccumulatesWithinBucket() {
+        EmbeddedRealtimeBackend.Ring ring = new EmbeddedRealtimeBackend.Ring(1000, 4);
+        ring.add(0, 1);
+        ring.add(999, 2);
+        ring.add(1000, 4);
+
+        Map<Long, Double> buckets = ring.sum(0, 1000, 1000);
+        assertEquals(2, buckets.size());
+        assertEquals(3D, buckets.get(0L));
+        assertEquals(4D, buckets.get(1000L));
+    }
+
+    @Test
+    public void ringWrapAroundOverwritesOldBucket() {
+        EmbeddedRealtimeBackend.Ring ring = new EmbeddedRealtimeBackend.Ring(1000, 4);
+        ring.add(0, 1);
+        ring.add(1000, 2);
+        // 与0落在同一槽位，覆盖旧的时间桶
+        ring.add(4000, 5);
+        // 槽位已被更新的时间桶占用，丢弃
+        ring.add(500, 7);
+
+        Map<Long, Double> buckets = ring.sum(0, 4000, 1000);
+        assertEquals(5, buckets.size());
+        assertEquals(0D, buckets.get(0L));
+        assertEquals(2D, buckets.get(1000L));
+        assertEquals(0D, buckets.get(2000L));
+        assertEquals(0D, buckets.get(3000L));
+        assertEquals(5D, buckets.get(4000L));
+    }
+
+    @Test
+    public void ringSumsIntoCoarserStep() {
+        EmbeddedRealtimeBackend.Ring ring = new EmbeddedRealtimeBackend.Ring(1000, 10);
+        ring.add(1000, 1);
+        ring.add(2500, 2);
+        ring.add(3000, 3);
+
+        Map<Long, Double> buckets = ring.sum(0, 3000, 2000);
+        assertEquals(2, buckets.size());
+        assertEquals(1D, buckets.get(0L));
+        assertEquals(5D, buckets.get(2000L));
+    }
+
+    @Test
+    public void tierPicksFinestCoveringTier() {
+        // 5s一档保留3小时
+        assertEquals(0, EmbeddedRealtimeBackend.tier(5, TimeUnit.HOURS.toMillis(1)));
+        assertEquals(0, EmbeddedRealtimeBackend.tier(60, TimeUnit.HOURS.toMillis(3)));
+        // 超出3小时落到60s一档
+        assertEquals(1, EmbeddedRealtimeBackend.tier(60, TimeUnit.HOURS.toMillis(4)));
+        // 超出60小时落到600s一档
+        assertEquals(2, EmbeddedRealtimeBackend.tier(600, TimeUnit.DAYS.toMillis(10)));
+    }
+
+    @Test
+    public void tierFallsBackToCoarsest() {
+        assertEquals(2, EmbeddedRealtimeBackend.tier(7, TimeUnit.HOURS.toMillis(1)));
+        assertEquals(2, EmbeddedRealtimeBackend.tier(600, TimeUnit.DAYS.toMillis(30)));
+    }
+}
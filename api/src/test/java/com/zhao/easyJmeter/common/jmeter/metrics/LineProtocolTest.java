@@ -0,0 +1,68 @@
+package com.zhao.easyJmeter.common.jmeter.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineProtocolTest {
+
+    private static final long NOW = 1700000000000L;
+
+    @Test
+    public void parseBackendListenerLine() {
+        List<LineProtocol.Point> points = LineProtocol.parse(
+                "jmeter,application=task1,transaction=all,statut=all count=10i,avg=1.5,hit=true 1700000000000000000", null, NOW);
+
+        assertEquals(1, points.size());
+        LineProtocol.Point point = points.get(0);
+        assertEquals("jmeter", point.getMeasurement());
+        assertEquals("task1", point.getTags().get("application"));
+        assertEquals("all", point.getTags().get("transaction"));
+        assertEquals("all", point.getTags().get("statut"));
+        assertEquals(10L, point.getFields().get("count"));
+        assertEquals(1.5, point.getFields().get("avg"));
+        assertEquals(true, point.getFields().get("hit"));
+        assertEquals(NOW, point.getTime());
+    }
+
+    @Test
+    public void parseEscapedTagsAndQuotedFields() {
+        List<LineProtocol.Point> points = LineProtocol.parse(
+                "my\\ events,application=task1,tag\\ key=a\\,b\\=c text=\"say \\\"hi\\\", ok\",path=\"C:\\\\temp\\n\" 1700000000000", "ms", 0);
+
+        assertEquals(1, points.size());
+        LineProtocol.Point point = points.get(0);
+        assertEquals("my events", point.getMeasurement());
+        assertEquals("a,b=c", point.getTags().get("tag key"));
+        assertEquals("say \"hi\", ok", point.getFields().get("text"));
+        // 字符串字段中除\"和\\外的反斜杠按原样保留
+        assertEquals("C:\\temp\\n", point.getFields().get("path"));
+        assertEquals(NOW, point.getTime());
+    }
+
+    @Test
+    public void convertPrecisionToMillis() {
+        assertEquals(NOW, time("1700000000000000000", null));
+        assertEquals(NOW, time("1700000000000000000", "ns"));
+        assertEquals(NOW, time("1700000000000000", "u"));
+        assertEquals(NOW, time("1700000000000", "ms"));
+        assertEquals(NOW, time("1700000000", "s"));
+        assertEquals(60_000L * 28333333, time("28333333", "m"));
+        assertEquals(3_600_000L * 472222, time("472222", "h"));
+    }
+
+    @Test
+    public void useNowWithoutTimestampAndSkipBlankAndComments() {
+        List<LineProtocol.Point> points = LineProtocol.parse("# comment\r\n\r\nevents,application=task1 text=\"started\"\r\n", "ms", NOW);
+
+        assertEquals(1, points.size());
+        assertEquals("started", points.get(0).getFields().get("text"));
+        assertEquals(NOW, points.get(0).getTime());
+    }
+
+    private static long time(String timestamp, String precision) {
+        return LineProtocol.parse("jmeter,application=task1 count=1i " + timestamp, precision, 0).get(0).getTime();
+    }
+}
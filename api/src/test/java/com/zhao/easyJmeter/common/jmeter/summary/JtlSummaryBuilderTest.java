@@ -0,0 +1,96 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JtlSummaryBuilderTest {
+
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,success,failureMessage,bytes,sentBytes,grpThreads";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void buildFromFixedJtl() throws IOException {
+        JtlSummary summary = new JtlSummaryBuilder(this.fixture(), 1000, false).build();
+
+        LabelSummary a = summary.getLabels().get("a");
+        assertEquals(100, a.getCount());
+        assertEquals(0, a.getErrors());
+        assertEquals(1, a.getMin());
+        assertEquals(100, a.getMax());
+        assertEquals(5050, a.getElapsedSum());
+        assertEquals(1000, a.getReceivedBytes());
+        assertEquals(500, a.getSentBytes());
+        assertEquals(50, a.getHistogram().getValueAtPercentile(50));
+        assertEquals(90, a.getHistogram().getValueAtPercentile(90));
+        assertEquals(99, a.getHistogram().getValueAtPercentile(99));
+        assertEquals(9, summary.getBuckets().get("a").get(1_000_000L).getCount());
+        // 线程名去掉编号后按线程组统计
+        assertArrayEquals(new long[]{18, 9}, summary.getThreads().get("Thread Group").get(1_000_000L));
+
+        LabelSummary b = summary.getLabels().get("b");
+        assertEquals(2, b.getCount());
+        assertEquals(2, b.getErrors());
+        assertEquals(1L, b.getErrorTypes().get("500/Internal Server Error"));
+        // 响应码为2xx时按断言失败归类
+        assertEquals(1L, b.getErrorTypes().get("assert x"));
+        assertEquals(2, summary.getLabels().size());
+    }
+
+    @Test
+    public void dashBoardDataFromSummary() throws IOException {
+        JtlSummary summary = new JtlSummaryBuilder(this.fixture(), 1000, false).build();
+
+        Map<String, List<JSONObject>> data = new SummaryReportBuilder(summary).getDashBoardData();
+
+        List<JSONObject> statistics = data.get("statisticsTable");
+        assertEquals(3, statistics.size());
+        JSONObject total = statistics.get(0);
+        assertEquals("Total", total.getString("label"));
+        assertEquals(102, total.getLongValue("samples"));
+        assertEquals(2, total.getLongValue("fail"));
+        JSONObject a = statistics.get(1);
+        assertEquals("a", a.getString("label"));
+        assertEquals(50.0, a.getDoubleValue("median"));
+        assertEquals(90.0, a.getDoubleValue("90th"));
+        assertEquals(99.0, a.getDoubleValue("99th"));
+        assertEquals(2, data.get("errorsTable").size());
+        // Total及有错误的b
+        assertEquals(2, data.get("top5ErrorsBySamplerTable").size());
+    }
+
+    @Test
+    public void emptyJtlBuildsEmptySummary() throws IOException {
+        Path path = dir.resolve("empty.jtl");
+        Files.write(path, new byte[0]);
+
+        JtlSummary summary = new JtlSummaryBuilder(path.toString(), 1000, false).build();
+
+        assertTrue(summary.getLabels().isEmpty());
+    }
+
+    // a：100个成功采样，响应时间1~100ms，每100ms一个；b：两个失败采样；最后一行不完整
+    private String fixture() throws IOException {
+        StringBuilder jtl = new StringBuilder(HEADER).append('\n');
+        for (int i = 1; i <= 100; i++) {
+            jtl.append(1_000_000 + i * 100).append(',').append(i).append(",a,200,OK,Thread Group 1-1,true,,10,5,2\n");
+        }
+        jtl.append("1005000,7,b,500,Internal Server Error,Thread Group 1-2,false,,10,5,2\n");
+        jtl.append("1005500,7,b,200,OK,Thread Group 1-2,false,assert x,10,5,2\n");
+        jtl.append("1020000,5");
+        Path path = dir.resolve("result.jtl");
+        Files.write(path, jtl.toString().getBytes(StandardCharsets.UTF_8));
+        return path.toString();
+    }
+}
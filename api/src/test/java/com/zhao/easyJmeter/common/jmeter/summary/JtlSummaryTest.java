@@ -0,0 +1,91 @@
+package com.zhao.easyJmeter.common.jmeter.summary;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JtlSummaryTest {
+
+    @Test
+    public void writeAndReadRoundTrip() throws IOException {
+        JtlSummary summary = new JtlSummary(1000);
+        for (int i = 1; i <= 100; i++) {
+            summary.add("登录", 10_000 + i * 50L, i, true, "200", null, "Thread Group", 4, 5, 10);
+        }
+        summary.add("登录", 20_000, 300, false, "500", "500/Internal Server Error", "Thread Group", 4, 5, 10);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        summary.write(out);
+        JtlSummary read = JtlSummary.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(1000, read.getGranularity());
+        LabelSummary label = read.getLabels().get("登录");
+        assertEquals(101, label.getCount());
+        assertEquals(1, label.getErrors());
+        assertEquals(5050 + 300, label.getElapsedSum());
+        assertEquals(1, label.getMin());
+        assertEquals(300, label.getMax());
+        assertEquals(505, label.getSentBytes());
+        assertEquals(1010, label.getReceivedBytes());
+        assertEquals(10_050, label.getFirstStart());
+        assertEquals(20_300, label.getLastEnd());
+        assertEquals(101, label.getHistogram().getTotalCount());
+        assertEquals(51, label.getHistogram().getValueAtPercentile(50));
+        assertEquals(1L, label.getErrorTypes().get("500/Internal Server Error"));
+        assertEquals(100L, label.getResponseCodes().get("200"));
+        assertEquals(1L, label.getResponseCodes().get("500"));
+
+        TreeMap<Long, BucketSummary> buckets = read.getBuckets().get("登录");
+        assertEquals(summary.getBuckets().get("登录").keySet(), buckets.keySet());
+        BucketSummary last = buckets.get(20_000L);
+        assertEquals(1, last.getCount());
+        assertEquals(1, last.getErrors());
+        assertEquals(0, last.getSuccessHistogram().getTotalCount());
+
+        long[] threads = read.getThreads().get("Thread Group").get(10_000L);
+        assertArrayEquals(summary.getThreads().get("Thread Group").get(10_000L), threads);
+    }
+
+    @Test
+    public void readRejectsOtherFiles() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(new byte[]{0, 0, 0, 0});
+        }
+        assertThrows(IOException.class, () -> JtlSummary.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void mergeCombinesHistogramsAndBuckets() {
+        JtlSummary first = new JtlSummary(1000);
+        JtlSummary second = new JtlSummary(1000);
+        // 两个agent各自记录一半的响应时间，合并后的百分位与整体一致
+        for (int i = 1; i <= 100; i++) {
+            (i % 2 == 0 ? first : second).add("a", 1000, i, true, "200", null, "Thread Group", 2, 0, 0);
+        }
+        second.add("b", 2000, 7, false, "500", "500", null, 0, 0, 0);
+
+        first.merge(second);
+
+        LabelSummary a = first.getLabels().get("a");
+        assertEquals(100, a.getCount());
+        assertEquals(1, a.getMin());
+        assertEquals(100, a.getMax());
+        assertEquals(50, a.getHistogram().getValueAtPercentile(50));
+        assertEquals(90, a.getHistogram().getValueAtPercentile(90));
+        assertEquals(99, a.getHistogram().getValueAtPercentile(99));
+        BucketSummary bucket = first.getBuckets().get("a").get(1000L);
+        assertEquals(100, bucket.getCount());
+        assertEquals(5050, bucket.getElapsedSum());
+        assertEquals(100, bucket.getSuccessHistogram().getTotalCount());
+        assertArrayEquals(new long[]{200, 100}, first.getThreads().get("Thread Group").get(1000L));
+        assertEquals(1, first.getLabels().get("b").getErrors());
+        assertEquals(1, first.getBuckets().get("b").get(2000L).getErrors());
+    }
+}
@@ -0,0 +1,70 @@
+package com.zhao.easyJmeter.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JFileServiceImplTest {
+
+    @Test
+    public void sliceRangesSkipHeader() {
+        byte[] csv = "h1,h2\na,1\nb,2\nc,3\nd,4\n".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(new long[]{6, 6, 8, 14, 8}, JFileServiceImpl.sliceRanges(reader(csv), csv.length, 2, true));
+        // 无表头时从文件开头切分
+        assertArrayEquals(new long[]{0, 0, 14, 14, 8}, JFileServiceImpl.sliceRanges(reader(csv), csv.length, 2, false));
+    }
+
+    @Test
+    public void sliceBoundaryAlignsToNextLineAcrossScanWindow() {
+        // 切分点落在一个超过扫描窗口长度的长行中间，需要多次按范围读取才能找到换行
+        int longLine = JFileServiceImpl.SCAN_SIZE * 3;
+        StringBuilder content = new StringBuilder("x\n");
+        for (int i = 0; i < longLine; i++) {
+            content.append('a');
+        }
+        content.append("\ny\n");
+        byte[] csv = content.toString().getBytes(StandardCharsets.UTF_8);
+        AtomicInteger reads = new AtomicInteger();
+
+        long[] slices = JFileServiceImpl.sliceRanges((offset, length) -> {
+            reads.incrementAndGet();
+            assertTrue(length <= JFileServiceImpl.SCAN_SIZE);
+            return new ByteArrayInputStream(csv, (int) offset, (int) length);
+        }, csv.length, 2, false);
+
+        long boundary = 2 + longLine + 1;
+        assertArrayEquals(new long[]{0, 0, boundary, boundary, 2}, slices);
+        assertTrue(reads.get() > 1);
+    }
+
+    @Test
+    public void everySliceUsesWholeBodyWhenRecordsAreFewerThanSlices() {
+        byte[] csv = "h\na\n".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(new long[]{2, 2, 2, 2, 2, 2, 2}, JFileServiceImpl.sliceRanges(reader(csv), csv.length, 3, true));
+    }
+
+    @Test
+    public void headerOnlyFileHasEmptySlices() {
+        byte[] csv = "h\n".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(new long[]{2, 2, 0, 2, 0}, JFileServiceImpl.sliceRanges(reader(csv), csv.length, 2, true));
+    }
+
+    @Test
+    public void nextLineStartReturnsSizeWithoutNewline() {
+        byte[] csv = "a,1\nb,2".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(4, JFileServiceImpl.nextLineStart(reader(csv), 0, csv.length));
+        assertEquals(csv.length, JFileServiceImpl.nextLineStart(reader(csv), 4, csv.length));
+    }
+
+    private static JFileServiceImpl.RangeReader reader(byte[] content) {
+        return (offset, length) -> new ByteArrayInputStream(content, (int) offset, (int) length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.zhao.easyJmeter.service.impl;
+
+import com.zhao.easyJmeter.dto.task.JmeterParamDTO;
+import org.influxdb.dto.QueryResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskInfluxdbServiceImplTest {
+
+    private static final List<String> COLUMNS = List.of("time", "application", "tags", "text");
+
+    @Test
+    public void pairEventsByGroupNewestFirst() {
+        QueryResult.Series first = series(
+                event("2024-01-01T10:00:00+08:00", "app1", "tagA", "t0 ended"),
+                event("2024-01-01T10:01:00+08:00", "app1", "tagA", "t1 started"),
+                event("2024-01-01T10:01:30+08:00", "app1", "tagB", "t2 started"),
+                event("2024-01-01T10:02:00+08:00", "app1", "tagA", "t1 ended"),
+                event("2024-01-01T10:02:30+08:00", "app1", "tagB", "t2 ended"),
+                event("2024-01-01T10:05:00+08:00", "app1", "tagA", "t4 started"));
+        // 另一个series中的记录乱序返回
+        QueryResult.Series second = series(
+                event("2024-01-01T10:04:00+08:00", "app2", "tagA", "t3 ended"),
+                event("2024-01-01T10:03:00+08:00", "app2", "tagA", "t3 started"));
+
+        List<JmeterParamDTO> events = TaskInfluxdbServiceImpl.pairEvents(List.of(result(first, second)));
+
+        assertEquals(3, events.size());
+        assertEvent(events.get(0), "app2", "tagA", "2024-01-01T10:03:00+08:00", "2024-01-01T10:04:00+08:00", "t3");
+        // 同一application不同tags分别配对，不会与tagA的开始事件交叉
+        assertEvent(events.get(1), "app1", "tagB", "2024-01-01T10:01:30+08:00", "2024-01-01T10:02:30+08:00", "t2");
+        assertEvent(events.get(2), "app1", "tagA", "2024-01-01T10:01:00+08:00", "2024-01-01T10:02:00+08:00", "t1");
+    }
+
+    @Test
+    public void endedPairsWithLatestPendingStarted() {
+        QueryResult.Series series = series(
+                event("2024-01-01T10:00:00+08:00", "app1", "tagA", "t1 started"),
+                event("2024-01-01T10:01:00+08:00", "app1", "tagA", "t2 started"),
+                event("2024-01-01T10:02:00+08:00", "app1", "tagA", "t2 ended"));
+
+        List<JmeterParamDTO> events = TaskInfluxdbServiceImpl.pairEvents(List.of(result(series)));
+
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), "app1", "tagA", "2024-01-01T10:01:00+08:00", "2024-01-01T10:02:00+08:00", "t2");
+    }
+
+    @Test
+    public void pairEventsWithoutSeries() {
+        assertTrue(TaskInfluxdbServiceImpl.pairEvents(List.of(new QueryResult.Result())).isEmpty());
+    }
+
+    private static void assertEvent(JmeterParamDTO event, String application, String tags, String startTime, String endTime, String text) {
+        assertEquals(application, event.getApplication());
+        assertEquals(tags, event.getTags());
+        assertEquals(startTime, event.getStartTime());
+        assertEquals(endTime, event.getEndTime());
+        assertEquals(text, event.getText());
+    }
+
+    private static List<Object> event(String time, String application, String tags, String text) {
+        return Arrays.asList(time, application, tags, text);
+    }
+
+    @SafeVarargs
+    private static QueryResult.Series series(List<Object>... values) {
+        QueryResult.Series series = new QueryResult.Series();
+        series.setName("events");
+        series.setColumns(COLUMNS);
+        series.setValues(new ArrayList<>(Arrays.asList(values)));
+        return series;
+    }
+
+    private static QueryResult.Result result(QueryResult.Series... series) {
+        QueryResult.Result result = new QueryResult.Result();
+        result.setSeries(Arrays.asList(series));
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * 按主题加入服务端推送房间：task:任务id、case:用例id、debug:调试id
+ * 同一房间按引用计数加入和退出；断线重连后服务端的房间已失效，自动重新加入
+ */
+const rooms = new Map()
+let boundSocket = null
+
+const bind = socketio => {
+  if (boundSocket === socketio) {
+    return
+  }
+  boundSocket = socketio
+  socketio.on('connect', () => {
+    rooms.forEach((count, room) => socketio.emit('roomJoin', room))
+  })
+}
+
+export const joinRoom = (socketio, room) => {
+  bind(socketio)
+  const count = rooms.get(room) || 0
+  rooms.set(room, count + 1)
+  if (count === 0) {
+    socketio.emit('roomJoin', room)
+  }
+}
+
+export const leaveRoom = (socketio, room) => {
+  const count = rooms.get(room) || 0
+  if (count > 1) {
+    rooms.set(room, count - 1)
+  } else if (count === 1) {
+    rooms.delete(room)
+    socketio.emit('roomLeave', room)
+  }
+}